@@ -0,0 +1,80 @@
+package mousio.etcd4j.jmh;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.responses.EtcdBatchResponse;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Writing 10k keys one blocking put at a time against a batch with a bounded
+ * number of puts in flight.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BulkPutBenchmark {
+  @Param({"10000"})
+  public int keys;
+
+  @Param({"1"})
+  public int latencyMs;
+
+  @Param({"16", "64"})
+  public int parallelism;
+
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+  private Map<String, String> values;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = new EtcdStandInServer().start().latency(latencyMs, TimeUnit.MILLISECONDS);
+    etcd = new EtcdClient(server.endpoint());
+    etcd.setRetryHandler(new RetryNTimes(20, 5));
+
+    values = new LinkedHashMap<>();
+    for (int i = 0; i < keys; i++) {
+      values.put("/bulk/key" + i, "value" + i);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    etcd.close();
+    server.close();
+  }
+
+  @Benchmark
+  public void sequential(Blackhole blackhole) throws Exception {
+    for (Map.Entry<String, String> entry : values.entrySet()) {
+      blackhole.consume(etcd.put(entry.getKey(), entry.getValue()).send().get());
+    }
+  }
+
+  @Benchmark
+  public void batch(Blackhole blackhole) throws Exception {
+    EtcdBatchResponse response = etcd.putAll(values).parallelism(parallelism).send().get();
+    response.throwFirstError();
+    blackhole.consume(response);
+  }
+}
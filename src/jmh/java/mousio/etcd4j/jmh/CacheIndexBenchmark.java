@@ -0,0 +1,99 @@
+package mousio.etcd4j.jmh;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.recipes.EtcdCacheIndex;
+import mousio.etcd4j.recipes.EtcdTreeCache;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+import mousio.etcd4j.support.EtcdStandInServer;
+import mousio.etcd4j.transport.EtcdNettyClient;
+import mousio.etcd4j.transport.EtcdNettyConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups of the cached instances in a zone, from a secondary index against a scan over all
+ * cached nodes which reads the zone from their Json values.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CacheIndexBenchmark {
+  @Param({"100000"})
+  public int entries;
+
+  @Param({"100", "10000"})
+  public int zones;
+
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+  private EtcdTreeCache cache;
+  private EtcdCacheIndex<String> byZone;
+  private EtcdCacheIndex.Extractor<String> zoneOf;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = new EtcdStandInServer().start();
+    etcd = new EtcdClient(new EtcdNettyClient(new EtcdNettyConfig(), server.endpoint()));
+    etcd.setRetryHandler(new RetryNTimes(20, 5));
+
+    Map<String, String> instances = new LinkedHashMap<>();
+    for (int i = 0; i < entries; i++) {
+      instances.put("/instances/i" + i, "{\"zone\":\"zone" + (i % zones) + "\",\"address\":\"10.0." + (i / 256 % 256) + "." + (i % 256) + "\"}");
+    }
+    etcd.putAll(instances).parallelism(64).send().get();
+
+    zoneOf = EtcdCacheIndex.jsonField("zone");
+    cache = new EtcdTreeCache(etcd, "/instances");
+    byZone = new EtcdCacheIndex<>(cache, zoneOf);
+    cache.start().get();
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    cache.close();
+    etcd.close();
+    server.close();
+  }
+
+  @Benchmark
+  public List<EtcdKeysResponse.EtcdNode> indexed() {
+    return new ArrayList<>(byZone.get(randomZone()));
+  }
+
+  @Benchmark
+  public List<EtcdKeysResponse.EtcdNode> scan() {
+    String zone = randomZone();
+    List<EtcdKeysResponse.EtcdNode> found = new ArrayList<>();
+    for (EtcdKeysResponse.EtcdNode node : cache.getNodes()) {
+      if (zone.equals(zoneOf.extract(node))) {
+        found.add(node);
+      }
+    }
+    return found;
+  }
+
+  private String randomZone() {
+    return "zone" + ThreadLocalRandom.current().nextInt(zones);
+  }
+}
@@ -0,0 +1,138 @@
+package mousio.etcd4j.jmh;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.EtcdUpdate;
+import mousio.etcd4j.responses.EtcdErrorCode;
+import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+import mousio.etcd4j.responses.EtcdResult;
+import mousio.etcd4j.support.EtcdStandInServer;
+import mousio.etcd4j.transport.EtcdNettyClient;
+import mousio.etcd4j.transport.EtcdNettyConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A contended compare-and-swap increment loop which retries on TestFailed, catching exceptions,
+ * checking results or with EtcdClient.update, and the decoding of an expected (stackless) etcd
+ * error against one which still fills in its stack trace.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CasRetryBenchmark {
+  private static final String KEY = "/counter";
+
+  private static final EtcdUpdate.ValueFunction INCREMENT = value -> Long.toString(Long.parseLong(value) + 1);
+
+  @State(Scope.Benchmark)
+  public static class Etcd {
+    @Param({"exceptions", "result", "update"})
+    public String loop;
+
+    EtcdStandInServer server;
+    EtcdClient etcd;
+
+    @Setup
+    public void setUp() throws Exception {
+      server = new EtcdStandInServer().start();
+      etcd = new EtcdClient(new EtcdNettyClient(new EtcdNettyConfig(), server.endpoint()));
+      etcd.setRetryHandler(new RetryNTimes(20, 5));
+      etcd.put(KEY, "0").send().get();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+      etcd.close();
+      server.close();
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class Bodies {
+    final ByteBuf testFailed = body(EtcdErrorCode.TestFailed);
+    final ByteBuf notFile = body(EtcdErrorCode.NotFile);
+
+    private static ByteBuf body(int errorCode) {
+      return Unpooled.copiedBuffer(("{\"errorCode\":" + errorCode
+        + ",\"message\":\"Compare failed\",\"cause\":\"[1 != 2]\",\"index\":42}").getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  @Benchmark
+  @Threads(4)
+  public long increment(Etcd state) throws Exception {
+    switch (state.loop) {
+      case "result":
+        return incrementWithResults(state.etcd);
+      case "update":
+        return incrementWithUpdate(state.etcd);
+      default:
+        return incrementWithExceptions(state.etcd);
+    }
+  }
+
+  @Benchmark
+  public EtcdException decodeExpected(Bodies bodies) throws Exception {
+    return EtcdException.DECODER.decode(null, bodies.testFailed.duplicate());
+  }
+
+  @Benchmark
+  public EtcdException decodeWithStackTrace(Bodies bodies) throws Exception {
+    return EtcdException.DECODER.decode(null, bodies.notFile.duplicate());
+  }
+
+  private static long incrementWithExceptions(EtcdClient etcd) throws Exception {
+    long retries = 0;
+    for (;;) {
+      EtcdKeysResponse.EtcdNode node = etcd.get(KEY).send().get().node;
+      try {
+        etcd.put(KEY, Long.toString(Long.parseLong(node.value) + 1)).prevIndex(node.modifiedIndex).send().get();
+        return retries;
+      } catch (EtcdException e) {
+        if (!e.isErrorCode(EtcdErrorCode.TestFailed)) {
+          throw e;
+        }
+        retries++;
+      }
+    }
+  }
+
+  private static long incrementWithUpdate(EtcdClient etcd) throws Exception {
+    return etcd.update(KEY, INCREMENT).send().get().node.modifiedIndex;
+  }
+
+  private static long incrementWithResults(EtcdClient etcd) throws Exception {
+    long retries = 0;
+    for (;;) {
+      EtcdKeysResponse.EtcdNode node = etcd.get(KEY).send().get().node;
+      EtcdResult<EtcdKeysResponse> result =
+        etcd.put(KEY, Long.toString(Long.parseLong(node.value) + 1)).prevIndex(node.modifiedIndex).send().result();
+      if (result.isSuccess()) {
+        return retries;
+      } else if (!result.isErrorCode(EtcdErrorCode.TestFailed)) {
+        throw new IllegalStateException(result.getError());
+      }
+      retries++;
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package mousio.etcd4j.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+import mousio.etcd4j.support.EtcdStandInServer;
+import mousio.etcd4j.transport.EtcdClientImpl;
+import mousio.etcd4j.transport.EtcdCoalescingClient;
+import mousio.etcd4j.transport.EtcdNettyClient;
+import mousio.etcd4j.transport.EtcdNettyConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A burst of identical GETs from many threads, as during a cache stampede,
+ * with and without request coalescing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CoalescingBenchmark {
+  private static final String KEY = "/config/x";
+
+  @Param({"false", "true"})
+  public boolean coalesce;
+
+  @Param({"200"})
+  public int burst;
+
+  @Param({"2"})
+  public int latencyMs;
+
+  private EtcdStandInServer server;
+  private EtcdCoalescingClient coalescingClient;
+  private EtcdClient etcd;
+  private ExecutorService threads;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = new EtcdStandInServer().start().latency(latencyMs, TimeUnit.MILLISECONDS);
+
+    EtcdClientImpl impl = new EtcdNettyClient(new EtcdNettyConfig(), server.endpoint());
+    if (coalesce) {
+      impl = coalescingClient = new EtcdCoalescingClient(impl);
+    }
+
+    etcd = new EtcdClient(impl);
+    etcd.setRetryHandler(new RetryNTimes(20, 5));
+    etcd.put(KEY, "value").send().get();
+
+    threads = Executors.newFixedThreadPool(burst);
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    if (coalescingClient != null) {
+      System.out.printf("%ncoalesce ratio: %.3f (%d of %d requests), server requests: %d%n",
+        coalescingClient.getCoalesceRatio(),
+        coalescingClient.getCoalescedCount(),
+        coalescingClient.getRequestCount(),
+        server.requestCount());
+    }
+
+    threads.shutdownNow();
+    etcd.close();
+    server.close();
+  }
+
+  @Benchmark
+  public void burst(Blackhole blackhole) throws Exception {
+    List<Callable<EtcdKeysResponse>> calls = new ArrayList<>(burst);
+    for (int i = 0; i < burst; i++) {
+      calls.add(() -> etcd.get(KEY).send().get());
+    }
+
+    for (Future<EtcdKeysResponse> future : threads.invokeAll(calls)) {
+      blackhole.consume(future.get());
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package mousio.etcd4j.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.EtcdUpdate;
+import mousio.etcd4j.recipes.EtcdIdSequence;
+import mousio.etcd4j.support.EtcdStandInServer;
+import mousio.etcd4j.transport.EtcdNettyClient;
+import mousio.etcd4j.transport.EtcdNettyConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Ids per second from a block reserving sequence against an atomic update of the key per id.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(4)
+public class IdSequenceBenchmark {
+  private static final EtcdUpdate.ValueFunction INCREMENT =
+    value -> value == null ? "1" : Long.toString(Long.parseLong(value) + 1);
+
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+  private EtcdIdSequence sequence;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = new EtcdStandInServer().start();
+    etcd = new EtcdClient(new EtcdNettyClient(new EtcdNettyConfig(), server.endpoint()));
+    etcd.setRetryHandler(new RetryNTimes(20, 5));
+    sequence = new EtcdIdSequence(etcd, "/sequences/blocks");
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    System.out.printf("%nblock size: %d, server requests: %d%n", sequence.getBlockSize(), server.requestCount());
+    etcd.close();
+    server.close();
+  }
+
+  @Benchmark
+  public long blockReservation() throws Exception {
+    return sequence.nextId();
+  }
+
+  @Benchmark
+  public long updatePerId() throws Exception {
+    return Long.parseLong(etcd.update("/sequences/updates", INCREMENT).send().get().node.value);
+  }
+}
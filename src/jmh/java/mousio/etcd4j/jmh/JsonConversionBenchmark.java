@@ -0,0 +1,186 @@
+package mousio.etcd4j.jmh;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.wnameless.json.flattener.FlattenMode;
+import com.github.wnameless.json.flattener.KeyTransformer;
+import com.github.wnameless.json.unflattener.JsonUnflattener;
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.EtcdUtil;
+import mousio.etcd4j.responses.EtcdKeysResponse.EtcdNode;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Converting a fetched node tree of a large document to Json, with the single pass
+ * converter of EtcdUtil against the flatten and unflatten conversion it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JsonConversionBenchmark {
+  private static final String PATH = "/document";
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  @Param({"10000", "50000"})
+  public int leaves;
+
+  private EtcdNode tree;
+
+  @Setup
+  public void setUp() throws Exception {
+    try (EtcdStandInServer server = new EtcdStandInServer().start();
+         EtcdClient etcd = new EtcdClient(server.endpoint())) {
+      etcd.setRetryHandler(new RetryNTimes(20, 5));
+      EtcdUtil.putAsJson(PATH, document(leaves), etcd);
+      tree = etcd.get(PATH).recursive().send().get().getNode();
+    }
+  }
+
+  @Benchmark
+  public JsonNode singlePass() {
+    return EtcdUtil.nodeToJson(tree);
+  }
+
+  @Benchmark
+  public JsonNode flattenUnflatten() throws IOException {
+    ObjectNode json = JsonNodeFactory.instance.objectNode();
+    for (EtcdNode node : tree.getNodes()) {
+      iterateOverNodes(json, node);
+    }
+
+    return dotNotationToStandardJson(json.at(PATH));
+  }
+
+  /**
+   * A document with services holding text, numbers, booleans and arrays, 10 leaves per service
+   */
+  private static JsonNode document(int leaves) {
+    ObjectNode root = JsonNodeFactory.instance.objectNode();
+    ObjectNode services = root.putObject("services");
+    for (int i = 0; i < leaves / 10; i++) {
+      ObjectNode service = services.putObject("service-" + i);
+      service.put("name", "service " + i);
+      service.put("port", 8000 + i);
+      service.put("weight", i / 7.0);
+      service.put("enabled", i % 2 == 0);
+      ArrayNode hosts = service.putArray("hosts");
+      for (int h = 0; h < 4; h++) {
+        hosts.add("10.0." + (i % 250) + "." + h);
+      }
+      ObjectNode limits = service.putObject("limits");
+      limits.put("connections", 100L * i);
+      limits.put("timeout", "30s");
+    }
+    return root;
+  }
+
+  // The conversion getAsJson used before, kept to compare with
+
+  private static JsonNode dotNotationToStandardJson(JsonNode etcdJson) throws IOException {
+    String unflattened = new JsonUnflattener(EtcdUtil.jsonToString(flattenJson(etcdJson, "")))
+      .withFlattenMode(FlattenMode.MONGODB)
+      .withKeyTransformer(new KeyTransformer() {
+        @Override
+        public String transform(String s) {
+          return s.replaceAll("__DOT__", "\\.");
+        }
+      })
+      .unflatten();
+    return MAPPER.readTree(unflattened);
+  }
+
+  private static void iterateOverNodes(ObjectNode json, EtcdNode node) {
+    if (node.isDir()) {
+      for (EtcdNode n : node.getNodes()) {
+        iterateOverNodes(json, n);
+      }
+    } else {
+      List<String> keyPath = new ArrayList<>();
+      for (String key : node.getKey().split("/")) {
+        if (!key.isEmpty()) {
+          keyPath.add(key);
+        }
+      }
+
+      ObjectNode jsonNodes = json;
+      Iterator<String> iterator = keyPath.iterator();
+      while (iterator.hasNext()) {
+        String key = iterator.next().replaceAll("\\.", "__DOT__");
+        if (jsonNodes.get(key) == null) {
+          if (iterator.hasNext()) {
+            jsonNodes = jsonNodes.putObject(key);
+          } else {
+            jsonNodes.put(key, node.getValue());
+          }
+        } else {
+          jsonNodes = (ObjectNode) jsonNodes.get(key);
+        }
+      }
+    }
+  }
+
+  private static ObjectNode flattenJson(JsonNode node, String currentPath) {
+    ObjectNode transformed = JsonNodeFactory.instance.objectNode();
+    Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+
+    while (fields.hasNext()) {
+      Map.Entry<String, JsonNode> next = fields.next();
+      String path = (currentPath + "." + next.getKey()).substring(1);
+      if (next.getValue().isValueNode()) {
+        String strValue = next.getValue().asText();
+        if (NumberUtils.isCreatable(strValue)) {
+          transformed.set(path, number(strValue));
+        } else if ("true".equalsIgnoreCase(strValue) || "false".equalsIgnoreCase(strValue)) {
+          transformed.put(path, Boolean.valueOf(strValue));
+        } else if ("[]".equals(strValue)) {
+          transformed.putArray(path);
+        } else {
+          transformed.set(path, next.getValue());
+        }
+      } else {
+        transformed.setAll(flattenJson(next.getValue(), currentPath + "." + next.getKey()));
+      }
+    }
+
+    return transformed;
+  }
+
+  private static JsonNode number(String value) {
+    try {
+      return JsonNodeFactory.instance.numberNode(Integer.valueOf(value));
+    } catch (NumberFormatException e) {}
+    try {
+      return JsonNodeFactory.instance.numberNode(Long.valueOf(value));
+    } catch (NumberFormatException e) {}
+    try {
+      return JsonNodeFactory.instance.numberNode(Float.valueOf(value));
+    } catch (NumberFormatException e) {}
+    return JsonNodeFactory.instance.numberNode(Double.valueOf(value));
+  }
+}
@@ -0,0 +1,121 @@
+package mousio.etcd4j.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.recipes.EtcdLeaderElection;
+import mousio.etcd4j.support.EtcdStandInServer;
+import mousio.etcd4j.transport.EtcdNettyClient;
+import mousio.etcd4j.transport.EtcdNettyConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Failover time of a leader election, from the leader resigning or dying until another candidate
+ * leads. A dead leader is one whose client is closed, its key has to expire. The steady state
+ * request rate of the candidates is printed on tear down.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LeaderElectionBenchmark {
+  private static final String KEY = "/election/leader";
+
+  @Param({"12"})
+  public int candidates;
+
+  @Param({"1"})
+  public int ttl;
+
+  private EtcdStandInServer server;
+  private List<EtcdClient> clients;
+  private List<EtcdLeaderElection> elections;
+  private EtcdLeaderElection leader;
+
+  private long steadyRequests;
+  private long steadyNanos;
+
+  @Setup(Level.Trial)
+  public void startServer() {
+    server = new EtcdStandInServer().start();
+  }
+
+  @TearDown(Level.Trial)
+  public void stopServer() {
+    System.out.printf("%nsteady state requests per second: %.2f%n",
+      steadyRequests / (steadyNanos / 1e9));
+    server.close();
+  }
+
+  @Setup(Level.Iteration)
+  public void elect() throws Exception {
+    server.clear();
+    clients = new ArrayList<>();
+    elections = new ArrayList<>();
+    for (int i = 0; i < candidates; i++) {
+      EtcdClient client = new EtcdClient(new EtcdNettyClient(new EtcdNettyConfig(), server.endpoint()));
+      client.setRetryHandler(new RetryNTimes(20, 5));
+      clients.add(client);
+      elections.add(new EtcdLeaderElection(client, KEY, "candidate" + i, ttl).start());
+    }
+
+    leader = awaitLeader(null);
+
+    // Measure the steady state while the followers wait
+    server.resetRequestCount();
+    long start = System.nanoTime();
+    Thread.sleep(2000);
+    steadyRequests += server.requestCount();
+    steadyNanos += System.nanoTime() - start;
+  }
+
+  @TearDown(Level.Iteration)
+  public void stop() throws Exception {
+    for (EtcdLeaderElection election : elections) {
+      election.close();
+    }
+    for (EtcdClient client : clients) {
+      client.close();
+    }
+  }
+
+  @Benchmark
+  public EtcdLeaderElection resign() throws Exception {
+    leader.close();
+    return awaitLeader(leader);
+  }
+
+  @Benchmark
+  public EtcdLeaderElection die() throws Exception {
+    clients.get(elections.indexOf(leader)).close();
+    return awaitLeader(leader);
+  }
+
+  private EtcdLeaderElection awaitLeader(EtcdLeaderElection previous) throws InterruptedException {
+    while (true) {
+      for (EtcdLeaderElection election : elections) {
+        if (election != previous && election.isLeader()) {
+          return election;
+        }
+      }
+      Thread.sleep(1);
+    }
+  }
+}
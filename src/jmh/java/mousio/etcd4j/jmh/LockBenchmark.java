@@ -0,0 +1,160 @@
+package mousio.etcd4j.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.recipes.EtcdLock;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+import mousio.etcd4j.support.EtcdStandInServer;
+import mousio.etcd4j.transport.EtcdNettyClient;
+import mousio.etcd4j.transport.EtcdNettyConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to pass a lock through a number of contenders which all ask for it at once, with every
+ * waiter watching its predecessor against every waiter watching the whole lock directory.
+ * Divide by the contenders for the latency of an acquisition, the requests per acquisition are
+ * printed on tear down.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class LockBenchmark {
+  @Param({"predecessor", "herd"})
+  public String lock;
+
+  @Param({"500"})
+  public int contenders;
+
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+  private EtcdLock etcdLock;
+
+  private final AtomicLong acquisitions = new AtomicLong();
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+  @Setup
+  public void setUp() throws Exception {
+    server = new EtcdStandInServer().start();
+    etcd = new EtcdClient(new EtcdNettyClient(new EtcdNettyConfig(), server.endpoint()));
+    etcd.setRetryHandler(new RetryNTimes(20, 5));
+    etcdLock = new EtcdLock(etcd, "/locks/predecessor");
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    System.out.printf("%nrequests per acquisition: %.1f%n", (double) server.requestCount() / acquisitions.get());
+    etcd.close();
+    server.close();
+  }
+
+  @Benchmark
+  public void passAround() throws Throwable {
+    CountDownLatch released = new CountDownLatch(contenders);
+    for (int i = 0; i < contenders; i++) {
+      if ("predecessor".equals(lock)) {
+        etcdLock.acquire().addListener(promise -> {
+          try {
+            if (promise.getException() != null) {
+              throw promise.getException();
+            }
+            acquisitions.incrementAndGet();
+            promise.getNow().release().addListener(delete -> released.countDown());
+          } catch (Throwable e) {
+            fail(e, released);
+          }
+        });
+      } else {
+        new HerdContender(released).start();
+      }
+    }
+
+    released.await();
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+  }
+
+  private void fail(Throwable e, CountDownLatch released) {
+    failure.compareAndSet(null, e);
+    released.countDown();
+  }
+
+  /**
+   * Waits for the lock by watching the whole directory, waking up on every change in it
+   */
+  private final class HerdContender {
+    private static final String DIR = "/locks/herd";
+
+    private final CountDownLatch released;
+    private String key;
+    private long createdIndex;
+
+    HerdContender(CountDownLatch released) {
+      this.released = released;
+    }
+
+    void start() throws IOException {
+      etcd.post(DIR, "").ttl(30).send().addListener(promise -> {
+        if (promise.getException() != null) {
+          fail(promise.getException(), released);
+          return;
+        }
+
+        key = promise.getNow().node.key;
+        createdIndex = promise.getNow().node.createdIndex;
+        check();
+      });
+    }
+
+    private void check() {
+      try {
+        etcd.get(DIR).sorted().send().addListener(promise -> {
+          if (promise.getException() != null) {
+            fail(promise.getException(), released);
+            return;
+          }
+
+          EtcdKeysResponse response = promise.getNow();
+          boolean oldest = true;
+          for (EtcdKeysResponse.EtcdNode node : response.node.nodes) {
+            oldest &= node.createdIndex >= createdIndex;
+          }
+
+          try {
+            if (oldest) {
+              acquisitions.incrementAndGet();
+              etcd.delete(key).send().addListener(delete -> released.countDown());
+            } else {
+              etcd.get(DIR).recursive().waitForChange(response.etcdIndex + 1).send()
+                .addListener(change -> check());
+            }
+          } catch (IOException e) {
+            fail(e, released);
+          }
+        });
+      } catch (IOException e) {
+        fail(e, released);
+      }
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package mousio.etcd4j.jmh;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+import mousio.client.ConnectionState;
+import mousio.client.promises.ResponsePromise;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Creating, listening to and completing a promise, the per request overhead of the promise.
+ * Run with -prof gc to see the allocations per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PromiseBenchmark {
+  private static final ConnectionState STATE = new ConnectionState(new URI[0], 0);
+
+  @Param({"0", "1", "3"})
+  public int listeners;
+
+  private final ResponsePromise.IsSimplePromiseResponseHandler<String> listener =
+    new ResponsePromise.IsSimplePromiseResponseHandler<String>() {
+      @Override
+      public void onResponse(ResponsePromise<String> response) {
+        response.getNow();
+      }
+    };
+
+  @Benchmark
+  public void createAndComplete(Blackhole blackhole) {
+    EtcdResponsePromise<String> promise = new EtcdResponsePromise<>(null, STATE, null);
+    Promise<String> nettyPromise = ImmediateEventExecutor.INSTANCE.newPromise();
+    promise.attachNettyPromise(nettyPromise);
+
+    for (int i = 0; i < listeners; i++) {
+      promise.addListener(listener);
+    }
+
+    nettyPromise.setSuccess("value");
+    blackhole.consume(promise.getNow());
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void createAndCompleteContended(Blackhole blackhole) {
+    createAndComplete(blackhole);
+  }
+}
@@ -0,0 +1,96 @@
+package mousio.etcd4j.jmh;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.EtcdReadPlanner;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading some keys of a directory with a GET per key against one recursive GET of the
+ * directory, to find the crossover point the request cost of the planner is based on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReadPlannerBenchmark {
+  private static final String DIR = "/bench/dir";
+
+  @Param({"10", "100", "1000", "10000"})
+  public int dirSize;
+
+  @Param({"2", "8", "32"})
+  public int wanted;
+
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+  private List<String> keys;
+  private EtcdReadPlanner alwaysDir;
+  private EtcdReadPlanner planner;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = new EtcdStandInServer().start();
+    etcd = new EtcdClient(server.endpoint());
+    etcd.setRetryHandler(new RetryNTimes(20, 5));
+
+    List<String> all = new ArrayList<>();
+    Map<String, String> values = new LinkedHashMap<>();
+    for (int i = 0; i < dirSize; i++) {
+      all.add(DIR + "/key" + i);
+      values.put(DIR + "/key" + i, "value" + i);
+    }
+    etcd.putAll(values).parallelism(64).send().get().throwFirstError();
+
+    keys = new ArrayList<>();
+    int step = Math.max(1, dirSize / wanted);
+    for (int i = 0; i < wanted && i * step < dirSize; i++) {
+      keys.add(all.get(i * step));
+    }
+
+    alwaysDir = new EtcdReadPlanner(Double.MAX_VALUE, 0, 10);
+    planner = new EtcdReadPlanner();
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    etcd.close();
+    server.close();
+  }
+
+  @Benchmark
+  public void pointGets(Blackhole blackhole) throws Exception {
+    blackhole.consume(etcd.batch().getAll(keys).send().get());
+  }
+
+  @Benchmark
+  public void dirRead(Blackhole blackhole) throws Exception {
+    blackhole.consume(etcd.batch().planner(alwaysDir).getAll(keys).send().get());
+  }
+
+  @Benchmark
+  public void planned(Blackhole blackhole) throws Exception {
+    blackhole.consume(etcd.batch().planner(planner).getAll(keys).send().get());
+  }
+}
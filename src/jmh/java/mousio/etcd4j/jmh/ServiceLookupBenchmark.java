@@ -0,0 +1,79 @@
+package mousio.etcd4j.jmh;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.recipes.EtcdServiceRegistry;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+import mousio.etcd4j.support.EtcdStandInServer;
+import mousio.etcd4j.transport.EtcdNettyClient;
+import mousio.etcd4j.transport.EtcdNettyConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups of a random instance of a service, from the watched snapshot of the registry against
+ * a GET of the directory of the service per lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(4)
+public class ServiceLookupBenchmark {
+  @Param({"10"})
+  public int instances;
+
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+  private EtcdServiceRegistry registry;
+  private EtcdServiceRegistry.Service service;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = new EtcdStandInServer().start();
+    etcd = new EtcdClient(new EtcdNettyClient(new EtcdNettyConfig(), server.endpoint()));
+    etcd.setRetryHandler(new RetryNTimes(20, 5));
+
+    registry = new EtcdServiceRegistry(etcd);
+    for (int i = 0; i < instances; i++) {
+      registry.register("api", "instance" + i, "10.0.0." + i + ":8080").get();
+    }
+    service = registry.discover("api").get();
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    registry.close();
+    etcd.close();
+    server.close();
+  }
+
+  @Benchmark
+  public EtcdServiceRegistry.Instance snapshot() {
+    List<EtcdServiceRegistry.Instance> current = service.getInstances();
+    return current.get(ThreadLocalRandom.current().nextInt(current.size()));
+  }
+
+  @Benchmark
+  public EtcdKeysResponse.EtcdNode getPerLookup() throws Exception {
+    List<EtcdKeysResponse.EtcdNode> nodes = etcd.getDir("/services/api").send().get().node.nodes;
+    return nodes.get(ThreadLocalRandom.current().nextInt(nodes.size()));
+  }
+}
@@ -0,0 +1,84 @@
+package mousio.etcd4j.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.recipes.EtcdStripedCounter;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+import mousio.etcd4j.support.EtcdStandInServer;
+import mousio.etcd4j.transport.EtcdNettyClient;
+import mousio.etcd4j.transport.EtcdNettyConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Increments of one counter by a number of concurrent writers, on a single key or striped.
+ * An operation is one increment of every writer, so increments per second are the operations
+ * per second times the writers; chart it against the writers param.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StripedCounterBenchmark {
+  @Param({"single", "striped"})
+  public String counter;
+
+  @Param({"1", "8", "32", "128"})
+  public int writers;
+
+  @Param({"1"})
+  public int latencyMs;
+
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+  private EtcdStripedCounter stripedCounter;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = new EtcdStandInServer().start().latency(latencyMs, TimeUnit.MILLISECONDS);
+
+    etcd = new EtcdClient(new EtcdNettyClient(new EtcdNettyConfig(), server.endpoint()));
+    etcd.setRetryHandler(new RetryNTimes(20, 5));
+
+    int maxStripes = "single".equals(counter) ? 1 : EtcdStripedCounter.DEFAULT_MAX_STRIPES;
+    stripedCounter = new EtcdStripedCounter(etcd, "/counter", 1, maxStripes, EtcdStripedCounter.DEFAULT_GROW_THRESHOLD);
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    System.out.printf("%nstripes: %d, conflicts: %s%n", stripedCounter.getStripes(),
+      etcd.getContentionStats().getAll());
+
+    etcd.close();
+    server.close();
+  }
+
+  @Benchmark
+  public void increment() throws Exception {
+    List<EtcdResponsePromise<EtcdKeysResponse>> promises = new ArrayList<>(writers);
+    for (int i = 0; i < writers; i++) {
+      promises.add(stripedCounter.increment());
+    }
+
+    for (EtcdResponsePromise<EtcdKeysResponse> promise : promises) {
+      promise.get();
+    }
+  }
+}
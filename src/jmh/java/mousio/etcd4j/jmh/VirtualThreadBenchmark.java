@@ -0,0 +1,103 @@
+package mousio.etcd4j.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.EtcdBlockingClient;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+import mousio.etcd4j.support.EtcdStandInServer;
+import mousio.etcd4j.transport.EtcdNettyClient;
+import mousio.etcd4j.transport.EtcdNettyConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Many concurrent blocking GETs, one virtual thread each, waiting with the blocking get of the
+ * promise or with the blocking client. Virtual threads need Java 21, on older versions a cached
+ * thread pool is used instead. Add -Djdk.tracePinnedThreads=short to the jvm args to see pinning.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VirtualThreadBenchmark {
+  private static final String KEY = "/config/x";
+
+  @Param({"promiseGet", "blockingClient"})
+  public String waitWith;
+
+  @Param({"1000"})
+  public int concurrency;
+
+  @Param({"5"})
+  public int latencyMs;
+
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+  private EtcdBlockingClient blocking;
+  private ExecutorService threads;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = new EtcdStandInServer().start().latency(latencyMs, TimeUnit.MILLISECONDS);
+
+    etcd = new EtcdClient(new EtcdNettyClient(new EtcdNettyConfig(), server.endpoint()));
+    etcd.setRetryHandler(new RetryNTimes(20, 5));
+    etcd.put(KEY, "value").send().get();
+    blocking = new EtcdBlockingClient(etcd);
+
+    threads = virtualThreads();
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    threads.shutdownNow();
+    etcd.close();
+    server.close();
+  }
+
+  @Benchmark
+  public void fanOut(Blackhole blackhole) throws Exception {
+    List<Callable<EtcdKeysResponse>> calls = new ArrayList<>(concurrency);
+    for (int i = 0; i < concurrency; i++) {
+      if ("blockingClient".equals(waitWith)) {
+        calls.add(() -> blocking.get(KEY));
+      } else {
+        calls.add(() -> etcd.get(KEY).send().get());
+      }
+    }
+
+    for (Future<EtcdKeysResponse> future : threads.invokeAll(calls)) {
+      blackhole.consume(future.get());
+    }
+  }
+
+  private static ExecutorService virtualThreads() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      System.out.println("No virtual threads on this Java version, using a cached thread pool");
+      return Executors.newCachedThreadPool();
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package mousio.etcd4j.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.recipes.EtcdWorkQueue;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+import mousio.etcd4j.support.EtcdStandInServer;
+import mousio.etcd4j.transport.EtcdNettyClient;
+import mousio.etcd4j.transport.EtcdNettyConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time for a number of workers to drain a queue of items, claiming one item per round against
+ * a batch per round. Items per second are the items divided by the time; chart it against the
+ * workers param.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WorkQueueBenchmark {
+  private static final String DIR = "/queues/bench";
+
+  @Param({"1", "16"})
+  public int batch;
+
+  @Param({"1", "4", "16"})
+  public int workers;
+
+  @Param({"500"})
+  public int items;
+
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    server = new EtcdStandInServer().start();
+    etcd = new EtcdClient(new EtcdNettyClient(new EtcdNettyConfig(), server.endpoint()));
+    etcd.setRetryHandler(new RetryNTimes(20, 5));
+  }
+
+  @Setup(Level.Iteration)
+  public void fill() throws Exception {
+    server.clear();
+    EtcdWorkQueue queue = new EtcdWorkQueue(etcd, DIR);
+    for (int i = 0; i < items; i++) {
+      queue.offer("item" + i).get();
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    etcd.close();
+    server.close();
+  }
+
+  @Benchmark
+  public int drain() throws Throwable {
+    AtomicInteger processed = new AtomicInteger();
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    List<Thread> threads = new ArrayList<>();
+    for (int w = 0; w < workers; w++) {
+      EtcdWorkQueue queue = new EtcdWorkQueue(etcd, DIR, EtcdWorkQueue.DEFAULT_VISIBILITY_TIMEOUT, 4 * batch * workers);
+      Thread thread = new Thread(() -> {
+        try {
+          while (processed.get() < items && failure.get() == null) {
+            List<EtcdResponsePromise<EtcdKeysResponse>> completes = new ArrayList<>();
+            for (EtcdWorkQueue.Item item : queue.claim(batch).get()) {
+              completes.add(item.complete());
+            }
+            for (EtcdResponsePromise<EtcdKeysResponse> complete : completes) {
+              complete.get();
+              processed.incrementAndGet();
+            }
+          }
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+    return processed.get();
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.client.promises;
+
+import io.netty.util.concurrent.BlockingOperationException;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Detects blocking gets on a thread of an event loop group.
+ *
+ * A blocking get on an event loop waits for a response which has to be read by an event
+ * loop, which deadlocks when it is the same loop and stalls all other connections of the loop
+ * otherwise. Use listeners to get responses on an event loop.
+ */
+public class BlockingGetDetector {
+  private static final Logger logger = LoggerFactory.getLogger(BlockingGetDetector.class);
+
+  /**
+   * What to do on a blocking get on an event loop
+   */
+  public enum Mode {
+    /** Do not check */
+    OFF,
+    /** Log a warning with the stack of the get and block anyway */
+    LOG,
+    /** Throw a BlockingOperationException */
+    FAIL
+  }
+
+  private final EventExecutorGroup group;
+  private final Mode mode;
+
+  /**
+   * Constructor
+   *
+   * @param group of event loops to detect blocking gets on
+   * @param mode  what to do on a blocking get
+   */
+  public BlockingGetDetector(EventExecutorGroup group, Mode mode) {
+    this.group = group;
+    this.mode = mode;
+  }
+
+  /**
+   * Check the current thread before blocking on a promise which is not done
+   *
+   * @throws BlockingOperationException if the current thread is an event loop and mode is FAIL
+   */
+  public void check() {
+    if (mode == Mode.OFF || !inEventLoop()) {
+      return;
+    }
+
+    String thread = Thread.currentThread().getName();
+    if (mode == Mode.FAIL) {
+      throw new BlockingOperationException("Blocking get on event loop " + thread + ", use a listener instead");
+    }
+
+    logger.warn("Blocking get on event loop {}, this may deadlock. Use a listener instead",
+      thread, new BlockingOperationException());
+  }
+
+  /**
+   * Get the mode
+   *
+   * @return what is done on a blocking get
+   */
+  public Mode getMode() {
+    return mode;
+  }
+
+  private boolean inEventLoop() {
+    for (EventExecutor executor : group) {
+      if (executor.inEventLoop()) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+}
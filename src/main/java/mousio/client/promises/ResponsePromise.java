@@ -23,27 +23,44 @@ import mousio.client.retry.RetryHandler;
 import mousio.client.retry.RetryPolicy;
 
 import java.io.IOException;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * A Response promise
  *
+ * The outcome is taken from the attached Netty promise. Listeners are kept in a lock-free
+ * stack and are notified once, in the order they were added, when the promise completes.
+ * Listeners run on the thread completing the promise, usually a Netty event loop, unless they
+ * were added with an executor or a callback executor was set.
+ *
  * @param <T> Type of object returned by promise
  */
 public class ResponsePromise<T> {
+  @SuppressWarnings("rawtypes")
+  private static final AtomicReferenceFieldUpdater<ResponsePromise, Listener> LISTENERS =
+    AtomicReferenceFieldUpdater.newUpdater(ResponsePromise.class, Listener.class, "listeners");
+
+  // Marks that the listeners were notified, listeners added from then on are notified directly
+  @SuppressWarnings("rawtypes")
+  private static final Listener COMPLETED = new Listener<>(null, null);
+
   private final RetryPolicy retryPolicy;
   private final ConnectionState connectionState;
   private final RetryHandler retryHandler;
-  protected Promise<T> promise;
+  protected volatile Promise<T> promise;
 
-  protected T response;
-  protected Throwable exception;
+  protected volatile T response;
+  protected volatile Throwable exception;
+  private volatile Throwable cancelCause;
 
-  private List<IsSimplePromiseResponseHandler<T>> handlers;
-  private final GenericFutureListener<Promise<T>> promiseHandler;
-  private final ConnectionFailHandler connectionFailHandler;
+  private volatile Listener<T> listeners;
+  private final Callbacks callbacks;
+
+  private volatile Executor callbackExecutor;
+  private volatile BlockingGetDetector blockingGetDetector;
 
   /**
    * Constructor
@@ -56,20 +73,7 @@ public class ResponsePromise<T> {
     this.connectionState = connectionState;
     this.retryHandler = retryHandler;
     this.retryPolicy = retryPolicy;
-
-    promiseHandler = new GenericFutureListener<Promise<T>>() {
-      @Override
-      public void operationComplete(Promise<T> future) throws Exception {
-        handlePromise(future);
-      }
-    };
-
-    this.connectionFailHandler = new ConnectionFailHandler() {
-      @Override
-      public void catchException(IOException exception) {
-        handleRetry(exception);
-      }
-    };
+    this.callbacks = new Callbacks();
   }
 
   /**
@@ -78,31 +82,47 @@ public class ResponsePromise<T> {
    * @param promise netty promise to set up response promise with
    */
   public void attachNettyPromise(Promise<T> promise) {
-    promise.addListener(promiseHandler);
+    promise.addListener(callbacks);
     Promise<T> oldPromise = this.promise;
 
     this.promise = promise;
 
     if (oldPromise != null) {
-      oldPromise.removeListener(promiseHandler);
+      oldPromise.removeListener(callbacks);
       oldPromise.cancel(true);
     }
   }
 
   /**
-   * Add a promise to do when Response comes in
+   * Add a promise to do when Response comes in. It runs on the callback executor if one
+   * was set.
    *
    * @param listener to add
    */
   public void addListener(IsSimplePromiseResponseHandler<T> listener) {
-    if (handlers == null) {
-      handlers = new LinkedList<>();
-    }
+    addListener(listener, callbackExecutor);
+  }
 
-    handlers.add(listener);
+  /**
+   * Add a promise to do when Response comes in
+   *
+   * @param listener to add
+   * @param executor to run the listener on, or null to run it on the thread completing the promise
+   */
+  @SuppressWarnings("unchecked")
+  public void addListener(IsSimplePromiseResponseHandler<T> listener, Executor executor) {
+    Listener<T> added = new Listener<>(listener, executor);
+    for (;;) {
+      Listener<T> head = listeners;
+      if (head == COMPLETED) {
+        notify(listener, executor);
+        return;
+      }
 
-    if (response != null || exception != null) {
-      listener.onResponse(this);
+      added.next = head;
+      if (LISTENERS.compareAndSet(this, head, added)) {
+        return;
+      }
     }
   }
 
@@ -112,8 +132,11 @@ public class ResponsePromise<T> {
    * @param listener to remove
    */
   public void removeListener(IsSimplePromiseResponseHandler<T> listener) {
-    if (handlers != null) {
-      handlers.remove(listener);
+    for (Listener<T> l = listeners; l != null && l != COMPLETED; l = l.next) {
+      if (l.handler == listener) {
+        l.handler = null;
+        return;
+      }
     }
   }
 
@@ -123,33 +146,106 @@ public class ResponsePromise<T> {
    * @param promise to handle
    */
   protected void handlePromise(Promise<T> promise) {
-    if (!promise.isSuccess()) {
-      this.setException(promise.cause());
+    if (!promise.isDone()) {
+      return;
+    }
+
+    if (promise.isSuccess()) {
+      complete(promise.getNow(), null);
     } else {
-      this.response = promise.getNow();
-      if (handlers != null) {
-        for (IsSimplePromiseResponseHandler<T> h : handlers) {
-          h.onResponse(this);
-        }
-      }
+      Throwable cause = cancelCause;
+      complete(null, promise.isCancelled() && cause != null ? cause : promise.cause());
     }
   }
 
   /**
-   * Sets exception
+   * Sets exception, failing the promise if it was not completed yet
    *
    * @param exception to set.
    */
   public void setException(Throwable exception) {
+    Promise<T> current = this.promise;
+    if (current != null) {
+      current.tryFailure(exception);
+      handlePromise(current);
+    } else {
+      complete(null, exception);
+    }
+  }
+
+  /**
+   * Publish the outcome and notify the listeners which were added before
+   *
+   * @param response  on success
+   * @param exception on failure
+   */
+  @SuppressWarnings("unchecked")
+  private void complete(T response, Throwable exception) {
+    if (this.listeners == COMPLETED) {
+      return;
+    }
+
+    this.response = response;
     this.exception = exception;
 
-    if (handlers != null) {
-      for (IsSimplePromiseResponseHandler<T> h : handlers) {
-        h.onResponse(this);
+    Listener<T> head = LISTENERS.getAndSet(this, COMPLETED);
+    if (head == COMPLETED) {
+      return;
+    }
+
+    // Listeners are stacked, reverse them to notify in the order they were added
+    Listener<T> ordered = null;
+    while (head != null) {
+      Listener<T> next = head.next;
+      head.next = ordered;
+      ordered = head;
+      head = next;
+    }
+
+    for (Listener<T> l = ordered; l != null; l = l.next) {
+      IsSimplePromiseResponseHandler<T> handler = l.handler;
+      if (handler != null) {
+        notify(handler, l.executor);
       }
     }
   }
 
+  private void notify(final IsSimplePromiseResponseHandler<T> handler, Executor executor) {
+    if (executor != null) {
+      try {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            handler.onResponse(ResponsePromise.this);
+          }
+        });
+        return;
+      } catch (RejectedExecutionException e) {
+        // Executor is shut down, the listener still has to be notified
+      }
+    }
+
+    handler.onResponse(this);
+  }
+
+  /**
+   * Set the executor to run listeners on which are added without executor
+   *
+   * @param callbackExecutor to run listeners on, or null to run them on the thread completing the promise
+   */
+  public void setCallbackExecutor(Executor callbackExecutor) {
+    this.callbackExecutor = callbackExecutor;
+  }
+
+  /**
+   * Set the detector of blocking gets on event loop threads
+   *
+   * @param blockingGetDetector to check with before blocking, or null to not check
+   */
+  public void setBlockingGetDetector(BlockingGetDetector blockingGetDetector) {
+    this.blockingGetDetector = blockingGetDetector;
+  }
+
   /**
    * Get the response. (Blocking)
    *
@@ -181,14 +277,20 @@ public class ResponsePromise<T> {
    * @throws TimeoutException on timeout
    */
   protected void waitForPromiseSuccess() throws IOException, TimeoutException {
-    while(!promise.isDone() && !promise.isCancelled()) {
-      Promise<T> listeningPromise = this.promise;
-      listeningPromise.awaitUninterruptibly();
-      if (listeningPromise == this.promise) {
-        this.handlePromise(promise);
-        break;
-      }
+    BlockingGetDetector detector = this.blockingGetDetector;
+    if (detector != null && !this.promise.isDone()) {
+      detector.check();
     }
+
+    Promise<T> listeningPromise;
+    do {
+      listeningPromise = this.promise;
+      listeningPromise.awaitUninterruptibly();
+      // A retry or redirect attaches a new promise and cancels the one waited on
+    } while (listeningPromise != this.promise);
+
+    // The listener on the promise may not have run yet
+    this.handlePromise(listeningPromise);
   }
 
   /**
@@ -217,7 +319,7 @@ public class ResponsePromise<T> {
    */
   public void handleRetry(Throwable cause) {
     try {
-      this.retryPolicy.retry(connectionState, retryHandler, connectionFailHandler);
+      this.retryPolicy.retry(connectionState, retryHandler, callbacks);
     } catch (RetryPolicy.RetryCancelled retryCancelled) {
       this.getNettyPromise().setFailure(cause);
     }
@@ -245,8 +347,8 @@ public class ResponsePromise<T> {
    * @param throwable the exception to be associated to this promise
    */
   public void cancel(Throwable throwable) {
+    this.cancelCause = throwable;
     this.promise.cancel(true);
-    this.exception = throwable;
   }
 
   /**
@@ -271,4 +373,35 @@ public class ResponsePromise<T> {
      */
     void onResponse(ResponsePromise<T> response);
   }
+
+  /**
+   * An added listener
+   *
+   * @param <T> Type contained
+   */
+  private static final class Listener<T> {
+    volatile IsSimplePromiseResponseHandler<T> handler;
+    final Executor executor;
+    Listener<T> next;
+
+    Listener(IsSimplePromiseResponseHandler<T> handler, Executor executor) {
+      this.handler = handler;
+      this.executor = executor;
+    }
+  }
+
+  /**
+   * Listens to the Netty promise and to failed retries, one instance per promise
+   */
+  private final class Callbacks implements GenericFutureListener<Promise<T>>, ConnectionFailHandler {
+    @Override
+    public void operationComplete(Promise<T> future) throws Exception {
+      handlePromise(future);
+    }
+
+    @Override
+    public void catchException(IOException exception) {
+      handleRetry(exception);
+    }
+  }
 }
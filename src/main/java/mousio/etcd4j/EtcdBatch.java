@@ -0,0 +1,479 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j;
+
+import io.netty.util.concurrent.GlobalEventExecutor;
+import mousio.client.promises.ResponsePromise;
+import mousio.etcd4j.promises.EtcdCompletablePromise;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.requests.EtcdKeyRequest;
+import mousio.etcd4j.responses.EtcdBatchResponse;
+import mousio.etcd4j.responses.EtcdErrorCode;
+import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A batch of key requests which are sent with a bounded number of requests in flight.
+ *
+ * A new request is sent as soon as one in flight completes. The promise of the batch
+ * completes when all requests completed and contains the responses and errors by key.
+ * With a deadline the promise completes at the latest when the deadline passes, requests
+ * which did not complete by then are cancelled and reported with a TimeoutException.
+ * With a read planner the GETs added with {@link #get(String)} may be answered by a
+ * recursive GET of their directory, see {@link EtcdReadPlanner}.
+ *
+ * <pre>
+ * EtcdBatchResponse response = etcd.putAll(values).parallelism(64).send().get();
+ * if (!response.isSuccess()) {
+ *   // handle response.getErrors()
+ * }
+ * </pre>
+ */
+public class EtcdBatch {
+  public static final int DEFAULT_PARALLELISM = 16;
+
+  private final EtcdClient client;
+  private final Map<String, Entry> entries;
+  private int parallelism;
+  private long deadlineNanos;
+  private EtcdReadPlanner planner;
+
+  private final AtomicBoolean sent;
+  private final AtomicBoolean completed;
+  private final AtomicInteger wip;
+  private final AtomicInteger inFlight;
+  private final AtomicInteger remaining;
+  private List<Entry> queue;
+  private int next;
+  private EtcdCompletablePromise<EtcdBatchResponse> promise;
+  private ScheduledFuture<?> deadlineTask;
+
+  /**
+   * Constructor
+   *
+   * @param client to create requests with
+   */
+  EtcdBatch(EtcdClient client) {
+    this.client = client;
+    this.entries = new LinkedHashMap<>();
+    this.parallelism = DEFAULT_PARALLELISM;
+    this.deadlineNanos = -1;
+    this.sent = new AtomicBoolean();
+    this.completed = new AtomicBoolean();
+    this.wip = new AtomicInteger();
+    this.inFlight = new AtomicInteger();
+    this.remaining = new AtomicInteger();
+  }
+
+  /**
+   * Add a put of a value on a key
+   *
+   * @param key   to put
+   * @param value to put on key
+   * @return this batch
+   */
+  public EtcdBatch put(String key, String value) {
+    return add(key, client.put(key, value));
+  }
+
+  /**
+   * Add a put for each entry of a map
+   *
+   * @param values by key to put
+   * @return this batch
+   */
+  public EtcdBatch putAll(Map<String, String> values) {
+    for (Map.Entry<String, String> entry : values.entrySet()) {
+      put(entry.getKey(), entry.getValue());
+    }
+
+    return this;
+  }
+
+  /**
+   * Add a get of a key
+   *
+   * @param key to get
+   * @return this batch
+   */
+  public EtcdBatch get(String key) {
+    return add(key, client.get(key), true);
+  }
+
+  /**
+   * Add a get for each key
+   *
+   * @param keys to get
+   * @return this batch
+   */
+  public EtcdBatch getAll(Collection<String> keys) {
+    for (String key : keys) {
+      get(key);
+    }
+
+    return this;
+  }
+
+  /**
+   * Add a delete of a key
+   *
+   * @param key to delete
+   * @return this batch
+   */
+  public EtcdBatch delete(String key) {
+    return add(key, client.delete(key));
+  }
+
+  /**
+   * Add a request, use this for requests with further options like ttl or prevIndex
+   *
+   * @param key     to identify the response with
+   * @param request to send
+   * @return this batch
+   */
+  public EtcdBatch add(String key, EtcdKeyRequest request) {
+    return add(key, request, false);
+  }
+
+  private EtcdBatch add(String key, EtcdKeyRequest request, boolean plannable) {
+    if (sent.get()) {
+      throw new IllegalStateException("Batch was already sent");
+    }
+    if (entries.containsKey(key)) {
+      throw new IllegalArgumentException("Batch already contains a request for key " + key);
+    }
+
+    entries.put(key, new Entry(key, request, plannable));
+    return this;
+  }
+
+  /**
+   * Set the max number of requests in flight. Default is 16.
+   *
+   * @param parallelism max number of requests in flight
+   * @return this batch
+   */
+  public EtcdBatch parallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism should be at least 1");
+    }
+
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  /**
+   * Complete the batch with the results so far when the deadline passes after sending.
+   * Requests which did not complete are cancelled and get a TimeoutException as error.
+   *
+   * @param timeout time from sending until the deadline
+   * @param unit    unit of timeout
+   * @return this batch
+   */
+  public EtcdBatch deadline(long timeout, TimeUnit unit) {
+    this.deadlineNanos = unit.toNanos(timeout);
+    return this;
+  }
+
+  /**
+   * Set the planner to read the keys added with {@link #get(String)} with. Directory reads
+   * return directories with their whole subtree instead of only their direct children.
+   *
+   * @param planner to plan reads with or null to read every key with its own request
+   * @return this batch
+   */
+  public EtcdBatch planner(EtcdReadPlanner planner) {
+    this.planner = planner;
+    return this;
+  }
+
+  /**
+   * Get the number of requests in this batch
+   *
+   * @return number of requests
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Send the requests
+   *
+   * @return promise which completes when all requests completed
+   */
+  public EtcdResponsePromise<EtcdBatchResponse> send() {
+    if (!sent.compareAndSet(false, true)) {
+      throw new IllegalStateException("Batch was already sent");
+    }
+
+    promise = new EtcdCompletablePromise<>();
+    queue = planner != null ? plan() : new ArrayList<>(entries.values());
+    remaining.set(queue.size());
+
+    if (queue.isEmpty()) {
+      complete();
+      return promise;
+    }
+
+    if (deadlineNanos >= 0) {
+      deadlineTask = GlobalEventExecutor.INSTANCE.schedule(new Runnable() {
+        @Override
+        public void run() {
+          complete();
+        }
+      }, deadlineNanos, TimeUnit.NANOSECONDS);
+    }
+
+    drain();
+
+    return promise;
+  }
+
+  /**
+   * Replace the GETs which are cheaper to answer from a read of their directory
+   *
+   * @return entries to send
+   */
+  private List<Entry> plan() {
+    List<String> keys = new ArrayList<>();
+    for (Entry entry : entries.values()) {
+      if (entry.plannable) {
+        keys.add(entry.key);
+      }
+    }
+
+    Map<String, List<String>> dirReads = planner.plan(keys).getDirReads();
+    if (dirReads.isEmpty()) {
+      return new ArrayList<>(entries.values());
+    }
+
+    List<Entry> planned = new ArrayList<>();
+    for (Map.Entry<String, List<String>> dirRead : dirReads.entrySet()) {
+      Entry dirEntry = new Entry(dirRead.getKey(), client.get(dirRead.getKey()).recursive(), false);
+      dirEntry.members = new ArrayList<>();
+      for (String key : dirRead.getValue()) {
+        Entry member = entries.get(key);
+        member.sentBy = dirEntry;
+        dirEntry.members.add(member);
+      }
+      planned.add(dirEntry);
+    }
+
+    for (Entry entry : entries.values()) {
+      if (entry.sentBy == entry) {
+        planned.add(entry);
+      }
+    }
+
+    return planned;
+  }
+
+  /**
+   * Send requests until the max number of requests is in flight.
+   *
+   * Only one thread sends at a time, completions on other threads while sending
+   * are picked up by the sending thread.
+   */
+  private void drain() {
+    if (wip.getAndIncrement() != 0) {
+      return;
+    }
+
+    do {
+      while (next < queue.size() && inFlight.get() < parallelism && !completed.get()) {
+        Entry entry = queue.get(next++);
+        inFlight.incrementAndGet();
+        entry.send();
+      }
+    } while (wip.decrementAndGet() != 0);
+  }
+
+  private void onDone() {
+    inFlight.decrementAndGet();
+    if (remaining.decrementAndGet() == 0) {
+      complete();
+    } else {
+      drain();
+    }
+  }
+
+  private void complete() {
+    if (!completed.compareAndSet(false, true)) {
+      return;
+    }
+
+    if (deadlineTask != null) {
+      deadlineTask.cancel(false);
+    }
+
+    Map<String, EtcdKeysResponse> responses = new LinkedHashMap<>();
+    Map<String, Throwable> errors = new LinkedHashMap<>();
+
+    for (Entry entry : entries.values()) {
+      EtcdKeysResponse response = entry.response;
+      Throwable exception = entry.exception;
+
+      if (response != null) {
+        responses.put(entry.key, response);
+      } else if (exception != null) {
+        errors.put(entry.key, exception);
+      } else {
+        // Only possible when the deadline passed
+        errors.put(entry.key, new TimeoutException("Deadline passed before response on " + entry.key));
+        entry.sentBy.cancel();
+      }
+    }
+
+    promise.complete(new EtcdBatchResponse(responses, errors));
+  }
+
+  /**
+   * Count the nodes below a node
+   *
+   * @param node to count nodes below
+   * @return number of nodes
+   */
+  private static int countNodes(EtcdKeysResponse.EtcdNode node) {
+    int count = 0;
+    for (EtcdKeysResponse.EtcdNode child : node.nodes) {
+      count += 1 + countNodes(child);
+    }
+
+    return count;
+  }
+
+  /**
+   * Find a node in the tree below a node
+   *
+   * @param node to search below
+   * @param key  normalized key of node to find
+   * @return node or null if not found
+   */
+  private static EtcdKeysResponse.EtcdNode findNode(EtcdKeysResponse.EtcdNode node, String key) {
+    while (node != null && !key.equals(node.key)) {
+      EtcdKeysResponse.EtcdNode found = null;
+      for (EtcdKeysResponse.EtcdNode child : node.nodes) {
+        if (key.equals(child.key) || (child.dir && key.startsWith(child.key + "/"))) {
+          found = child;
+          break;
+        }
+      }
+      node = found;
+    }
+
+    return node;
+  }
+
+  /**
+   * A request of the batch, or a directory read answering requests of the batch
+   */
+  private final class Entry implements ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse> {
+    final String key;
+    final EtcdKeyRequest request;
+    final boolean plannable;
+    final AtomicBoolean done;
+
+    Entry sentBy;
+    List<Entry> members;
+
+    volatile EtcdKeysResponse response;
+    volatile Throwable exception;
+
+    Entry(String key, EtcdKeyRequest request, boolean plannable) {
+      this.key = key;
+      this.request = request;
+      this.plannable = plannable;
+      this.done = new AtomicBoolean();
+      this.sentBy = this;
+    }
+
+    void send() {
+      try {
+        request.send().addListener(this);
+      } catch (IOException e) {
+        complete(null, e);
+      }
+    }
+
+    void cancel() {
+      EtcdResponsePromise<EtcdKeysResponse> promise = request.getPromise();
+      if (promise != null && promise.getNettyPromise() != null) {
+        promise.cancel();
+      }
+    }
+
+    @Override
+    public void onResponse(ResponsePromise<EtcdKeysResponse> promise) {
+      complete(promise.getNow(), promise.getException());
+    }
+
+    private void complete(EtcdKeysResponse response, Throwable exception) {
+      if ((response == null && exception == null) || !done.compareAndSet(false, true)) {
+        return;
+      }
+
+      if (members == null) {
+        this.response = response;
+        this.exception = exception;
+      } else {
+        if (response != null) {
+          planner.recordDirSize(key, countNodes(response.node));
+        }
+        for (Entry member : members) {
+          member.resolve(response, exception);
+        }
+      }
+
+      onDone();
+    }
+
+    /**
+     * Set the result of a key from the read of its directory
+     *
+     * @param dirResponse response of directory read
+     * @param dirException exception of directory read
+     */
+    private void resolve(EtcdKeysResponse dirResponse, Throwable dirException) {
+      String normalized = EtcdUtil.normalizeKey(key);
+
+      if (dirResponse != null) {
+        EtcdKeysResponse.EtcdNode node = findNode(dirResponse.node, normalized);
+        if (node != null) {
+          this.response = dirResponse.withNode(node);
+        } else {
+          this.exception = EtcdException.keyNotFound(normalized, dirResponse.etcdIndex);
+        }
+      } else if (dirException instanceof EtcdException
+          && ((EtcdException) dirException).isErrorCode(EtcdErrorCode.KeyNotFound)) {
+        this.exception = EtcdException.keyNotFound(normalized, ((EtcdException) dirException).index);
+      } else {
+        this.exception = dirException;
+      }
+    }
+  }
+}
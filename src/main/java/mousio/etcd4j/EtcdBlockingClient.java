@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j;
+
+import mousio.client.promises.ResponsePromise;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.requests.EtcdRequest;
+import mousio.etcd4j.responses.EtcdAuthenticationException;
+import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Blocking facade of the client for thread per request code, also on virtual threads.
+ *
+ * The blocking get of a promise waits on the monitor of the Netty promise and ignores
+ * interrupts. The calls of this facade wait on a latch which is counted down by a listener,
+ * so waiting parks the thread without holding a monitor and a virtual thread releases its
+ * carrier thread while waiting. Waits are interruptible: an interrupted or timed out call
+ * cancels its requests. Requests sent by {@link #sendAll(List)} never outlive the call.
+ *
+ * <pre>
+ * EtcdBlockingClient blocking = new EtcdBlockingClient(etcd);
+ * String value = blocking.get("/config/x").node.value;
+ * </pre>
+ */
+public class EtcdBlockingClient {
+  private final EtcdClient client;
+
+  /**
+   * Constructor
+   *
+   * @param client to create and send the requests with
+   */
+  public EtcdBlockingClient(EtcdClient client) {
+    this.client = client;
+  }
+
+  /**
+   * Get the client to create requests with
+   *
+   * @return the client
+   */
+  public EtcdClient getClient() {
+    return client;
+  }
+
+  /**
+   * Get a key
+   *
+   * @param key to get
+   * @return the response
+   * @throws InterruptedException        if interrupted while waiting, the request is cancelled
+   * @throws IOException                 on fail
+   * @throws EtcdException               on etcd fail
+   * @throws EtcdAuthenticationException on authentication failure
+   * @throws TimeoutException            on timeout of the request
+   */
+  public EtcdKeysResponse get(String key)
+      throws InterruptedException, IOException, EtcdException, EtcdAuthenticationException, TimeoutException {
+    return send(client.get(key));
+  }
+
+  /**
+   * Put a value on a key
+   *
+   * @param key   to put
+   * @param value to put
+   * @return the response
+   * @throws InterruptedException        if interrupted while waiting, the request is cancelled
+   * @throws IOException                 on fail
+   * @throws EtcdException               on etcd fail
+   * @throws EtcdAuthenticationException on authentication failure
+   * @throws TimeoutException            on timeout of the request
+   */
+  public EtcdKeysResponse put(String key, String value)
+      throws InterruptedException, IOException, EtcdException, EtcdAuthenticationException, TimeoutException {
+    return send(client.put(key, value));
+  }
+
+  /**
+   * Delete a key
+   *
+   * @param key to delete
+   * @return the response
+   * @throws InterruptedException        if interrupted while waiting, the request is cancelled
+   * @throws IOException                 on fail
+   * @throws EtcdException               on etcd fail
+   * @throws EtcdAuthenticationException on authentication failure
+   * @throws TimeoutException            on timeout of the request
+   */
+  public EtcdKeysResponse delete(String key)
+      throws InterruptedException, IOException, EtcdException, EtcdAuthenticationException, TimeoutException {
+    return send(client.delete(key));
+  }
+
+  /**
+   * Send a request and wait for the response
+   *
+   * @param request to send
+   * @param <R>     Type of response
+   * @return the response
+   * @throws InterruptedException        if interrupted while waiting, the request is cancelled
+   * @throws IOException                 on fail
+   * @throws EtcdException               on etcd fail
+   * @throws EtcdAuthenticationException on authentication failure
+   * @throws TimeoutException            on timeout of the request
+   */
+  public <R> R send(EtcdRequest<R> request)
+      throws InterruptedException, IOException, EtcdException, EtcdAuthenticationException, TimeoutException {
+    EtcdResponsePromise<R> promise = request.send();
+    Waiter<R> waiter = new Waiter<>(1);
+    promise.addListener(waiter);
+    try {
+      waiter.await();
+    } catch (InterruptedException e) {
+      promise.cancel();
+      throw e;
+    }
+
+    return promise.get();
+  }
+
+  /**
+   * Send a request and wait at most the given time for the response
+   *
+   * @param request to send
+   * @param timeout to wait
+   * @param unit    of timeout
+   * @param <R>     Type of response
+   * @return the response
+   * @throws InterruptedException        if interrupted while waiting, the request is cancelled
+   * @throws IOException                 on fail
+   * @throws EtcdException               on etcd fail
+   * @throws EtcdAuthenticationException on authentication failure
+   * @throws TimeoutException            on timeout, the request is cancelled
+   */
+  public <R> R send(EtcdRequest<R> request, long timeout, TimeUnit unit)
+      throws InterruptedException, IOException, EtcdException, EtcdAuthenticationException, TimeoutException {
+    EtcdResponsePromise<R> promise = request.send();
+    Waiter<R> waiter = new Waiter<>(1);
+    promise.addListener(waiter);
+    try {
+      if (!waiter.await(timeout, unit)) {
+        promise.cancel();
+        throw new TimeoutException("No response within " + timeout + " " + unit);
+      }
+    } catch (InterruptedException e) {
+      promise.cancel();
+      throw e;
+    }
+
+    return promise.get();
+  }
+
+  /**
+   * Send all requests at once and wait for all responses. When a request fails or the wait
+   * is interrupted the requests which did not complete yet are cancelled, so no request
+   * outlives the call. Use an {@link EtcdBatch} to bound the number of requests in flight.
+   *
+   * @param requests to send
+   * @param <R>      Type of response
+   * @return the responses in the order of the requests
+   * @throws InterruptedException        if interrupted while waiting, the requests are cancelled
+   * @throws IOException                 on fail of a request
+   * @throws EtcdException               on etcd fail of a request
+   * @throws EtcdAuthenticationException on authentication failure
+   * @throws TimeoutException            on timeout of a request
+   */
+  public <R> List<R> sendAll(List<? extends EtcdRequest<R>> requests)
+      throws InterruptedException, IOException, EtcdException, EtcdAuthenticationException, TimeoutException {
+    List<EtcdResponsePromise<R>> promises = new ArrayList<>(requests.size());
+    Waiter<R> waiter = new Waiter<>(requests.size());
+    try {
+      for (EtcdRequest<R> request : requests) {
+        EtcdResponsePromise<R> promise = request.send();
+        promises.add(promise);
+        promise.addListener(waiter);
+      }
+
+      waiter.await();
+    } catch (InterruptedException | IOException | RuntimeException e) {
+      cancelAll(promises);
+      throw e;
+    }
+
+    EtcdResponsePromise<R> failed = waiter.failed.get();
+    if (failed != null) {
+      cancelAll(promises);
+      failed.get();
+    }
+
+    List<R> responses = new ArrayList<>(promises.size());
+    for (EtcdResponsePromise<R> promise : promises) {
+      responses.add(promise.get());
+    }
+
+    return responses;
+  }
+
+  private static void cancelAll(List<? extends ResponsePromise<?>> promises) {
+    for (ResponsePromise<?> promise : promises) {
+      if (!promise.getNettyPromise().isDone()) {
+        promise.cancel();
+      }
+    }
+  }
+
+  /**
+   * Counts down on every completed promise and releases the waiting thread on the first failure
+   */
+  private static final class Waiter<T> extends CountDownLatch implements ResponsePromise.IsSimplePromiseResponseHandler<T> {
+    final AtomicReference<EtcdResponsePromise<T>> failed = new AtomicReference<>();
+
+    Waiter(int count) {
+      super(count);
+    }
+
+    @Override
+    public void onResponse(ResponsePromise<T> response) {
+      if (response.getException() != null && failed.compareAndSet(null, (EtcdResponsePromise<T>) response)) {
+        while (getCount() > 0) {
+          countDown();
+        }
+      } else {
+        countDown();
+      }
+    }
+  }
+}
@@ -33,6 +33,8 @@ import mousio.etcd4j.transport.EtcdNettyClient;
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.URI;
+import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -41,6 +43,8 @@ import java.util.concurrent.TimeoutException;
 public class EtcdClient implements Closeable {
   private final EtcdClientImpl client;
   private RetryPolicy retryHandler;
+  private EtcdReadPlanner readPlanner;
+  private final EtcdContentionStats contentionStats;
 
   /**
    * Constructor
@@ -107,6 +111,7 @@ public class EtcdClient implements Closeable {
   public EtcdClient(EtcdClientImpl etcdClientImpl) {
     this.client = etcdClientImpl;
     this.retryHandler = RetryWithExponentialBackOff.DEFAULT;
+    this.contentionStats = new EtcdContentionStats();
   }
 
   /**
@@ -213,6 +218,25 @@ public class EtcdClient implements Closeable {
     return new EtcdKeyPutRequest(client, key, retryHandler).value(value);
   }
 
+  /**
+   * Put all values on their keys in a batch with a bounded number of requests in flight
+   *
+   * @param values by key to put
+   * @return EtcdBatch
+   */
+  public EtcdBatch putAll(Map<String, String> values) {
+    return batch().putAll(values);
+  }
+
+  /**
+   * Create an empty batch of key requests
+   *
+   * @return EtcdBatch
+   */
+  public EtcdBatch batch() {
+    return new EtcdBatch(this);
+  }
+
   /**
   * Refresh a key with new ttl
   * (without notifying watchers when using etcd 2.3+)
@@ -276,6 +300,48 @@ public class EtcdClient implements Closeable {
     return new EtcdKeyGetRequest(client, key, retryHandler);
   }
 
+  /**
+   * Get many keys in a batch with a bounded number of requests in flight. With a read planner set,
+   * keys in the same directory may be read with one recursive GET of the directory, see
+   * {@link #setReadPlanner(EtcdReadPlanner)}.
+   *
+   * @param keys to get
+   * @return EtcdBatch
+   */
+  public EtcdBatch getMany(Collection<String> keys) {
+    return batch().planner(readPlanner).getAll(keys);
+  }
+
+  /**
+   * Atomically update the value of a key with a function of its current value
+   *
+   * @param key      to update
+   * @param function to compute the new value with
+   * @return EtcdUpdate
+   */
+  public EtcdUpdate update(String key, EtcdUpdate.ValueFunction function) {
+    return new EtcdUpdate(this, key, function, contentionStats);
+  }
+
+  /**
+   * Get the contention statistics of the updates of this client
+   *
+   * @return contention statistics by key
+   */
+  public EtcdContentionStats getContentionStats() {
+    return contentionStats;
+  }
+
+  /**
+   * Publish the changes on a key as a Reactive Streams publisher
+   *
+   * @param key to watch
+   * @return EtcdWatchPublisher
+   */
+  public EtcdWatchPublisher watch(String key) {
+    return new EtcdWatchPublisher(this, key);
+  }
+
   /**
    * Get directory
    *
@@ -302,6 +368,18 @@ public class EtcdClient implements Closeable {
     }
   }
 
+  /**
+   * Set the planner for reads of many keys. There is no planner by default, so every key is read
+   * with its own request.
+   *
+   * @param readPlanner to set or null to read every key with its own request
+   * @return this instance
+   */
+  public EtcdClient setReadPlanner(EtcdReadPlanner readPlanner) {
+    this.readPlanner = readPlanner;
+    return this;
+  }
+
   /**
    * Set the retry handler. Default is an exponential back-off with start of 20ms.
    *
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contention statistics by key of the updates of a client, see {@link EtcdClient#update(String, EtcdUpdate.ValueFunction)}.
+ *
+ * Statistics are kept for a bounded number of keys, when more keys are updated the statistics of
+ * the least recently updated key are forgotten first. Call {@link #reset()} to start counting
+ * anew, for example after reading the statistics of an interval.
+ */
+public class EtcdContentionStats {
+  public static final int DEFAULT_MAX_KEYS = 1000;
+
+  private final Map<String, KeyStats> keys;
+
+  /**
+   * Constructor
+   */
+  public EtcdContentionStats() {
+    this(DEFAULT_MAX_KEYS);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param maxKeys max number of keys to keep statistics of, the least recently updated are forgotten first
+   */
+  public EtcdContentionStats(final int maxKeys) {
+    // Access ordered, so the least recently updated key is forgotten first
+    this.keys = Collections.synchronizedMap(new LinkedHashMap<String, KeyStats>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, KeyStats> eldest) {
+        return size() > maxKeys;
+      }
+    });
+  }
+
+  /**
+   * Get the statistics of a key
+   *
+   * @param key to get statistics of
+   * @return statistics or null if the key was not updated since the last reset or was forgotten
+   */
+  public KeyStats get(String key) {
+    return keys.get(key);
+  }
+
+  /**
+   * Get the statistics of all keys
+   *
+   * @return snapshot of the statistics by key
+   */
+  public Map<String, KeyStats> getAll() {
+    synchronized (keys) {
+      return Collections.unmodifiableMap(new HashMap<>(keys));
+    }
+  }
+
+  /**
+   * Forget the statistics of all keys
+   */
+  public void reset() {
+    keys.clear();
+  }
+
+  KeyStats forKey(String key) {
+    synchronized (keys) {
+      KeyStats stats = keys.get(key);
+      if (stats == null) {
+        stats = new KeyStats();
+        keys.put(key, stats);
+      }
+      return stats;
+    }
+  }
+
+  /**
+   * Statistics of the updates of one key
+   */
+  public static final class KeyStats {
+    final AtomicLong updates = new AtomicLong();
+    final AtomicLong attempts = new AtomicLong();
+    final AtomicLong conflicts = new AtomicLong();
+    final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Get the number of successful updates
+     *
+     * @return successful updates
+     */
+    public long getUpdates() {
+      return updates.get();
+    }
+
+    /**
+     * Get the number of compare-and-swap writes
+     *
+     * @return writes including the ones which conflicted
+     */
+    public long getAttempts() {
+      return attempts.get();
+    }
+
+    /**
+     * Get the number of writes which conflicted with a write of another client
+     *
+     * @return conflicting writes
+     */
+    public long getConflicts() {
+      return conflicts.get();
+    }
+
+    /**
+     * Get the number of updates which failed, including the ones which ran out of attempts
+     *
+     * @return failed updates
+     */
+    public long getFailures() {
+      return failures.get();
+    }
+
+    /**
+     * Get the ratio of writes which conflicted
+     *
+     * @return conflicts divided by attempts
+     */
+    public double getConflictRate() {
+      long attempts = this.attempts.get();
+      return attempts == 0 ? 0.0 : (double) conflicts.get() / attempts;
+    }
+
+    @Override
+    public String toString() {
+      return "KeyStats{updates=" + updates + ", attempts=" + attempts
+        + ", conflicts=" + conflicts + ", failures=" + failures + "}";
+    }
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plans the reads of many keys as point GETs or as recursive GETs of their parent directory.
+ *
+ * Keys are grouped by parent directory. A group is read with one recursive GET of the
+ * directory when the estimated cost of that read is lower than the cost of a GET per key.
+ * The cost of a request is expressed in nodes: a read costs the request cost plus the number
+ * of nodes it returns. Directory sizes are taken from earlier directory reads, directories
+ * which were not read yet are estimated with a default size.
+ *
+ * Keys directly below the root and hidden keys, which are not listed in directories, are
+ * always read with point GETs.
+ */
+public class EtcdReadPlanner {
+  public static final double DEFAULT_REQUEST_COST = 25.0;
+  public static final int DEFAULT_DIR_SIZE = 32;
+  private static final int DEFAULT_MAX_DIRS = 10000;
+
+  private final double requestCost;
+  private final int defaultDirSize;
+  private final int maxDirs;
+  private final Map<String, Integer> dirSizes;
+
+  /**
+   * Constructor with default costs
+   */
+  public EtcdReadPlanner() {
+    this(DEFAULT_REQUEST_COST, DEFAULT_DIR_SIZE, DEFAULT_MAX_DIRS);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param requestCost    cost of a request in nodes returned
+   * @param defaultDirSize estimated size of directories which were not read yet
+   * @param maxDirs        max number of directory sizes to remember, the least recently used are forgotten first
+   */
+  public EtcdReadPlanner(double requestCost, int defaultDirSize, final int maxDirs) {
+    this.requestCost = requestCost;
+    this.defaultDirSize = defaultDirSize;
+    this.maxDirs = maxDirs;
+    // Access ordered, so the least recently used directory is forgotten first
+    this.dirSizes = Collections.synchronizedMap(new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+        return size() > maxDirs;
+      }
+    });
+  }
+
+  /**
+   * Plan the reads of keys
+   *
+   * @param keys to read
+   * @return plan with the keys to read with point GETs and the keys to read by directory
+   */
+  public Plan plan(Collection<String> keys) {
+    Map<String, List<String>> groups = new LinkedHashMap<>();
+    List<String> pointReads = new ArrayList<>();
+
+    for (String key : keys) {
+      String dir = parentOf(EtcdUtil.normalizeKey(key));
+      if (dir == null) {
+        pointReads.add(key);
+        continue;
+      }
+
+      List<String> group = groups.get(dir);
+      if (group == null) {
+        group = new ArrayList<>();
+        groups.put(dir, group);
+      }
+      group.add(key);
+    }
+
+    Map<String, List<String>> dirReads = new LinkedHashMap<>();
+    for (Map.Entry<String, List<String>> group : groups.entrySet()) {
+      if (shouldReadDir(group.getKey(), group.getValue().size())) {
+        dirReads.put(group.getKey(), group.getValue());
+      } else {
+        pointReads.addAll(group.getValue());
+      }
+    }
+
+    return new Plan(pointReads, dirReads);
+  }
+
+  /**
+   * Check if reading a directory is cheaper than reading the wanted keys in it one by one
+   *
+   * @param dir    to read
+   * @param wanted number of keys wanted from the directory
+   * @return true if the directory should be read
+   */
+  public boolean shouldReadDir(String dir, int wanted) {
+    if (wanted < 2) {
+      return false;
+    }
+
+    Integer size = dirSizes.get(EtcdUtil.normalizeKey(dir));
+    double dirCost = requestCost + (size != null ? size : defaultDirSize);
+    double pointCost = wanted * (requestCost + 1);
+
+    return dirCost < pointCost;
+  }
+
+  /**
+   * Remember the size of a directory, done after each directory read
+   *
+   * @param dir   which was read
+   * @param nodes number of nodes returned by a recursive read of the directory
+   */
+  public void recordDirSize(String dir, int nodes) {
+    dirSizes.put(EtcdUtil.normalizeKey(dir), nodes);
+  }
+
+  /**
+   * Get the remembered size of a directory
+   *
+   * @param dir to get size of
+   * @return number of nodes or null if the directory was not read yet
+   */
+  public Integer getDirSize(String dir) {
+    return dirSizes.get(EtcdUtil.normalizeKey(dir));
+  }
+
+  /**
+   * Get the directory to read a key from
+   *
+   * @param key normalized key
+   * @return parent directory or null if the key should be read with a point GET
+   */
+  private static String parentOf(String key) {
+    int slash = key.lastIndexOf('/');
+    if (slash <= 0 || key.startsWith("_", slash + 1)) {
+      return null;
+    }
+
+    return key.substring(0, slash);
+  }
+
+  /**
+   * A read plan
+   */
+  public static final class Plan {
+    private final List<String> pointReads;
+    private final Map<String, List<String>> dirReads;
+
+    Plan(List<String> pointReads, Map<String, List<String>> dirReads) {
+      this.pointReads = Collections.unmodifiableList(pointReads);
+      this.dirReads = Collections.unmodifiableMap(dirReads);
+    }
+
+    /**
+     * Get the keys to read with a GET per key
+     *
+     * @return keys
+     */
+    public List<String> getPointReads() {
+      return pointReads;
+    }
+
+    /**
+     * Get the keys to read with a recursive GET of their directory
+     *
+     * @return keys by directory
+     */
+    public Map<String, List<String>> getDirReads() {
+      return dirReads;
+    }
+
+    @Override
+    public String toString() {
+      return "Plan{" +
+        "pointReads=" + pointReads +
+        ", dirReads=" + dirReads +
+        '}';
+    }
+  }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j;
+
+import io.netty.util.concurrent.GlobalEventExecutor;
+import mousio.client.promises.ResponsePromise;
+import mousio.etcd4j.promises.EtcdCompletablePromise;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.requests.EtcdKeyPutRequest;
+import mousio.etcd4j.responses.EtcdErrorCode;
+import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An atomic read-modify-write of the value of a key.
+ *
+ * The new value is computed from the current value and written with a compare-and-swap on
+ * both the value and the modified index which were read. When another client wrote in between,
+ * etcd reports the current value and index in its TestFailed cause, so the update retries on
+ * those without reading the key again. Retries back off with an exponentially growing random
+ * delay, which spreads out the writers of a hot key. Conflicts are counted by key in the
+ * {@link EtcdContentionStats} of the client.
+ *
+ * <pre>
+ * EtcdKeysResponse response = etcd.update("/counter", new EtcdUpdate.ValueFunction() {
+ *   public String apply(String value) {
+ *     return value == null ? "1" : Long.toString(Long.parseLong(value) + 1);
+ *   }
+ * }).send().get();
+ * </pre>
+ */
+public class EtcdUpdate {
+  public static final int DEFAULT_MAX_ATTEMPTS = 64;
+  public static final long DEFAULT_BASE_DELAY_MICROS = 500;
+  public static final long DEFAULT_MAX_DELAY_MICROS = 100000;
+
+  /**
+   * Computes the new value of a key, may be called more than once for one update
+   */
+  public interface ValueFunction {
+    /**
+     * Compute the new value
+     *
+     * @param value current value or null if the key does not exist
+     * @return new value, not null
+     */
+    String apply(String value);
+  }
+
+  private final EtcdClient client;
+  private final String key;
+  private final ValueFunction function;
+  private final EtcdContentionStats.KeyStats stats;
+  private int maxAttempts;
+  private long baseDelayNanos;
+  private long maxDelayNanos;
+
+  private final AtomicBoolean sent;
+  private EtcdCompletablePromise<EtcdKeysResponse> promise;
+  private volatile int attempts;
+
+  /**
+   * Constructor
+   *
+   * @param client   to send the requests with
+   * @param key      to update
+   * @param function to compute the new value with
+   * @param stats    to count the attempts and conflicts in
+   */
+  EtcdUpdate(EtcdClient client, String key, ValueFunction function, EtcdContentionStats stats) {
+    this.client = client;
+    this.key = key;
+    this.function = function;
+    this.stats = stats.forKey(key);
+    this.maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    this.baseDelayNanos = TimeUnit.MICROSECONDS.toNanos(DEFAULT_BASE_DELAY_MICROS);
+    this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(DEFAULT_MAX_DELAY_MICROS);
+    this.sent = new AtomicBoolean();
+  }
+
+  /**
+   * Set the max number of writes before the update fails with the last conflict
+   *
+   * @param maxAttempts max writes
+   * @return this update
+   */
+  public EtcdUpdate maxAttempts(int maxAttempts) {
+    this.maxAttempts = maxAttempts;
+    return this;
+  }
+
+  /**
+   * Set the back-off between attempts. The delay before a retry is random, up to the base
+   * delay doubled for every conflict, at most the max delay.
+   *
+   * @param baseDelay delay bound of the first retry
+   * @param maxDelay  max delay bound
+   * @param unit      of the delays
+   * @return this update
+   */
+  public EtcdUpdate backOff(long baseDelay, long maxDelay, TimeUnit unit) {
+    this.baseDelayNanos = unit.toNanos(baseDelay);
+    this.maxDelayNanos = unit.toNanos(maxDelay);
+    return this;
+  }
+
+  /**
+   * Start the update
+   *
+   * @return promise with the response of the successful write
+   */
+  public EtcdResponsePromise<EtcdKeysResponse> send() {
+    if (!sent.compareAndSet(false, true)) {
+      throw new IllegalStateException("Update was already sent");
+    }
+
+    promise = new EtcdCompletablePromise<>();
+    read();
+    return promise;
+  }
+
+  /**
+   * Get the number of writes of this update so far, one more than the number of conflicts
+   * when it succeeded
+   *
+   * @return number of writes
+   */
+  public int getAttempts() {
+    return attempts;
+  }
+
+  private void read() {
+    try {
+      client.get(key).send().addListener(new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+        @Override
+        public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+          Throwable exception = response.getException();
+          if (exception == null) {
+            EtcdKeysResponse.EtcdNode node = response.getNow().node;
+            if (node.dir) {
+              fail(new IllegalStateException("Cannot update " + key + ", it is a directory"));
+            } else {
+              write(node.value, node.modifiedIndex);
+            }
+          } else if (isErrorCode(exception, EtcdErrorCode.KeyNotFound)) {
+            write(null, -1);
+          } else {
+            fail(exception);
+          }
+        }
+      });
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  private void write(final String value, final long index) {
+    final String next;
+    try {
+      next = function.apply(value);
+      if (next == null) {
+        throw new NullPointerException("New value of " + key + " should not be null");
+      }
+    } catch (RuntimeException e) {
+      fail(e);
+      return;
+    }
+
+    EtcdKeyPutRequest put = client.put(key, next);
+    if (value == null) {
+      put.prevExist(false);
+    } else {
+      put.prevValue(value).prevIndex(index);
+    }
+
+    attempts++;
+    stats.attempts.incrementAndGet();
+    try {
+      put.send().addListener(new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+        @Override
+        public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+          Throwable exception = response.getException();
+          if (exception == null) {
+            stats.updates.incrementAndGet();
+            promise.complete(response.getNow());
+          } else if (isErrorCode(exception, EtcdErrorCode.TestFailed)) {
+            EtcdException e = (EtcdException) exception;
+            retry(e, parseCurrent(e.etcdCause, value, index));
+          } else if (isErrorCode(exception, EtcdErrorCode.KeyNotFound)) {
+            retry((EtcdException) exception, new Current(null, -1));
+          } else if (isErrorCode(exception, EtcdErrorCode.NodeExist)) {
+            retry((EtcdException) exception, null);
+          } else {
+            fail(exception);
+          }
+        }
+      });
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  /**
+   * Retry after a conflict
+   *
+   * @param conflict the write failed with
+   * @param current  value and index to retry on, or null to read them first
+   */
+  private void retry(EtcdException conflict, final Current current) {
+    stats.conflicts.incrementAndGet();
+    if (attempts >= maxAttempts) {
+      fail(conflict);
+      return;
+    }
+
+    long bound = baseDelayNanos << Math.min(attempts - 1, 30);
+    if (bound <= 0 || bound > maxDelayNanos) {
+      bound = maxDelayNanos;
+    }
+    long delay = bound > 0 ? ThreadLocalRandom.current().nextLong(bound) : 0;
+
+    GlobalEventExecutor.INSTANCE.schedule(new Runnable() {
+      @Override
+      public void run() {
+        if (current != null) {
+          write(current.value, current.index);
+        } else {
+          read();
+        }
+      }
+    }, delay, TimeUnit.NANOSECONDS);
+  }
+
+  private void fail(Throwable cause) {
+    stats.failures.incrementAndGet();
+    promise.fail(cause);
+  }
+
+  private static boolean isErrorCode(Throwable exception, int code) {
+    return exception instanceof EtcdException && ((EtcdException) exception).isErrorCode(code);
+  }
+
+  /**
+   * Get the current value and index from the cause of a failed compare-and-swap on value and
+   * index, which is "[prevValue != value] [prevIndex != index]" or, when only the index
+   * differs, "[prevIndex != index]"
+   *
+   * @param cause     of TestFailed
+   * @param prevValue value compared with
+   * @param prevIndex index compared with
+   * @return current value and index or null if the cause could not be parsed
+   */
+  static Current parseCurrent(String cause, String prevValue, long prevIndex) {
+    if (cause == null || prevValue == null || !cause.endsWith("]")) {
+      return null;
+    }
+
+    String indexPrefix = "[" + prevIndex + " != ";
+    int indexStart = cause.lastIndexOf(indexPrefix);
+    if (indexStart < 0) {
+      return null;
+    }
+
+    long index;
+    try {
+      index = Long.parseLong(cause.substring(indexStart + indexPrefix.length(), cause.length() - 1));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+
+    if (indexStart == 0) {
+      // Value did not change
+      return new Current(prevValue, index);
+    }
+
+    String valuePrefix = "[" + prevValue + " != ";
+    int valueEnd = indexStart - 2;
+    if (!cause.startsWith(valuePrefix) || valueEnd < valuePrefix.length()
+        || !cause.startsWith("] ", valueEnd)) {
+      return null;
+    }
+
+    return new Current(cause.substring(valuePrefix.length(), valueEnd), index);
+  }
+
+  /**
+   * A value and its modified index
+   */
+  static final class Current {
+    final String value;
+    final long index;
+
+    Current(String value, long index) {
+      this.value = value;
+      this.index = index;
+    }
+  }
+}
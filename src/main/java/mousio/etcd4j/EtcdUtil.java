@@ -16,11 +16,19 @@
 package mousio.etcd4j;
 
 import java.io.IOException;
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.TimeoutException;
 import javax.xml.bind.DatatypeConverter;
 
@@ -28,12 +36,11 @@ import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.github.wnameless.json.flattener.FlattenMode;
 import com.github.wnameless.json.flattener.JsonFlattener;
-import com.github.wnameless.json.flattener.KeyTransformer;
-import com.github.wnameless.json.unflattener.JsonUnflattener;
 import io.netty.handler.codec.http.HttpHeaders;
 import mousio.etcd4j.requests.EtcdKeyGetRequest;
 import mousio.etcd4j.responses.EtcdAuthenticationException;
@@ -41,7 +48,6 @@ import mousio.etcd4j.responses.EtcdErrorCode;
 import mousio.etcd4j.responses.EtcdException;
 import mousio.etcd4j.responses.EtcdKeysResponse;
 import mousio.etcd4j.responses.EtcdKeysResponse.EtcdNode;
-import org.apache.commons.lang3.math.NumberUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -101,6 +107,21 @@ public class EtcdUtil {
     return DatatypeConverter.parseDateTime(date).getTime();
   }
 
+  /**
+   * Normalizes a key to the form etcd reports keys in
+   * @param key key to normalize
+   * @return key with a leading and without a trailing slash
+   */
+  public static String normalizeKey(String key) {
+    int end = key.length();
+    while (end > 0 && key.charAt(end - 1) == '/') {
+      end--;
+    }
+
+    String normalized = key.substring(0, end);
+    return normalized.startsWith("/") ? normalized : "/" + normalized;
+  }
+
   /**
    * Gets the content of the key recursively as a JsonObject
    * @param path root path (i.e. /path1/path2)
@@ -117,17 +138,11 @@ public class EtcdUtil {
     EtcdKeyGetRequest etcdKeyGetRequest = etcdClient.get(path).recursive();
     EtcdKeysResponse dataTree = etcdKeyGetRequest.send().get();
 
-    ObjectNode jNode = JsonNodeFactory.instance.objectNode();
-
-    if (dataTree.getNode().getNodes().isEmpty()) {
-      iterateOverNodes(jNode, dataTree.getNode());
+    if (dataTree.getNode().isDir()) {
+      return nodeToJson(dataTree.getNode());
     } else {
-      for (EtcdNode node : dataTree.getNode().getNodes()) {
-        iterateOverNodes(jNode, node);
-      }
+      return JsonNodeFactory.instance.textNode(dataTree.getNode().getValue());
     }
-
-    return dotNotationToStandardJson(jNode.at(path));
   }
 
   /**
@@ -143,10 +158,7 @@ public class EtcdUtil {
   public static void putAsJson(String path, JsonNode data, EtcdClient etcdClient)
           throws IOException, EtcdAuthenticationException, TimeoutException, EtcdException {
 
-    Map<String, Object> flattened = new JsonFlattener(EtcdUtil.jsonToString(data))
-            .withFlattenMode(FlattenMode.MONGODB)
-            .withSeparator('/')
-            .flattenAsMap();
+    Map<String, String> flattened = flattenToKeys(path, data);
 
     // clean previous data and replace it with new json structure
     try {
@@ -158,139 +170,339 @@ public class EtcdUtil {
       }
     }
 
-    // iterate over every flattened key and build the structure in etcd
-    for (Map.Entry<String, Object> entry : flattened.entrySet()) {
-      etcdClient.put(path + "/" + entry.getKey(), String.valueOf(entry.getValue())).send().get();
-    }
+    // build the structure in etcd, with several puts in flight at a time
+    etcdClient.putAll(flattened).send().get().throwFirstError();
   }
 
   /**
-   * Transforms etcd format (in dot notation) to a standard Json (with arrays and primitive types)
-   * @param etcdJson from etcd
-   * @return standardized Json
+   * Puts the content of the Json recursively from the specified <i>path</i>, writing only what changed.
+   *
+   * The current content is read once and compared to the Json. Keys which are not in the Json
+   * anymore are deleted first, after that changed and new keys are put. Writes are conditional on
+   * the content which was read, a concurrent change makes the sync fail with an EtcdException
+   * (TestFailed, NodeExist or DirNotEmpty) instead of being overwritten. Directories which are not
+   * wanted anymore are emptied key by key and then deleted deepest first without recursion, so a
+   * key another writer added to them since the read is kept.
+   *
+   * @param path root path (i.e. /path1/path2)
+   * @param data JsonNode
+   * @param etcdClient EtcdClient
+   * @return number of writes sent
    * @throws IOException
+   * @throws EtcdAuthenticationException
+   * @throws TimeoutException
+   * @throws EtcdException
    */
-  private static JsonNode dotNotationToStandardJson(JsonNode etcdJson) throws IOException {
-    if (!etcdJson.isValueNode()) {
-      String unflattened = new JsonUnflattener(jsonToString(flattenJson(etcdJson, "")))
-              .withFlattenMode(FlattenMode.MONGODB)
-              .withKeyTransformer(new KeyTransformer() {
-                @Override
-                public String transform(String s) {
-                  return s.replaceAll("__DOT__", "\\.");
-                }
-              })
-              .unflatten();
-      return mapper.readTree(unflattened);
-    } else {
-      return etcdJson;
+  public static int syncAsJson(String path, JsonNode data, EtcdClient etcdClient)
+          throws IOException, EtcdAuthenticationException, TimeoutException, EtcdException {
+
+    String root = normalizeKey(path);
+    Map<String, String> wanted = flattenToKeys(root, data);
+
+    // directories which hold wanted keys
+    Set<String> wantedDirs = new HashSet<>();
+    for (String key : wanted.keySet()) {
+      for (int slash = key.lastIndexOf('/'); slash > 0; slash = key.lastIndexOf('/', slash - 1)) {
+        if (!wantedDirs.add(key.substring(0, slash))) {
+          break;
+        }
+      }
     }
+
+    Map<String, EtcdNode> current = new HashMap<>();
+    EtcdBatch deletes = etcdClient.batch();
+    TreeMap<Integer, List<String>> dirDeletes = new TreeMap<>(Collections.<Integer>reverseOrder());
+    try {
+      collectDeletes(etcdClient.get(root).recursive().send().get().getNode(), wanted, wantedDirs, current,
+          deletes, dirDeletes, etcdClient);
+    } catch (EtcdException e) {
+      if (EtcdErrorCode.KeyNotFound != e.errorCode) {
+        throw e;
+      }
+    }
+
+    EtcdBatch puts = etcdClient.batch();
+    for (Map.Entry<String, String> entry : wanted.entrySet()) {
+      EtcdNode node = current.get(entry.getKey());
+      if (node == null) {
+        puts.add(entry.getKey(), etcdClient.put(entry.getKey(), entry.getValue()).prevExist(false));
+      } else if (!entry.getValue().equals(node.getValue())) {
+        puts.add(entry.getKey(), etcdClient.put(entry.getKey(), entry.getValue()).prevIndex(node.getModifiedIndex()));
+      }
+    }
+
+    int writes = deletes.size() + puts.size();
+    if (deletes.size() > 0) {
+      deletes.send().get().throwFirstError();
+    }
+    // emptied directories, deepest first so every directory is empty when it is deleted
+    for (List<String> dirs : dirDeletes.values()) {
+      EtcdBatch batch = etcdClient.batch();
+      for (String dir : dirs) {
+        batch.add(dir, etcdClient.deleteDir(dir));
+      }
+      batch.send().get().throwFirstError();
+      writes += dirs.size();
+    }
+    if (puts.size() > 0) {
+      puts.send().get().throwFirstError();
+    }
+
+    return writes;
   }
 
   /**
-   * Iterates recursively over every node path, translating the structure of the node to a JSON structure on the parameter <i>json</i>
-   * @param json JSON object to complete using the node information
-   * @param node Etcd node information (recursively obtained)
+   * Collects the deletes needed to remove the nodes which are not wanted anymore
+   * @param node current node
+   * @param wanted wanted values by key
+   * @param wantedDirs directories which hold wanted keys
+   * @param current current wanted leaf nodes by key, to compare values with
+   * @param deletes batch to add deletes of keys to
+   * @param dirDeletes directories to delete once emptied, by depth
+   * @param etcdClient EtcdClient
    */
-  private static void iterateOverNodes(ObjectNode json, EtcdNode node) {
+  private static void collectDeletes(EtcdNode node, Map<String, String> wanted, Set<String> wantedDirs,
+          Map<String, EtcdNode> current, EtcdBatch deletes, Map<Integer, List<String>> dirDeletes,
+          EtcdClient etcdClient) {
     if (node.isDir()) {
-      for(EtcdNode n: node.getNodes())
-        iterateOverNodes(json, n);
+      if (node.getNodes() != null) {
+        for (EtcdNode n : node.getNodes()) {
+          collectDeletes(n, wanted, wantedDirs, current, deletes, dirDeletes, etcdClient);
+        }
+      }
+      if (!wantedDirs.contains(node.getKey())) {
+        int depth = node.getKey().split("/").length;
+        List<String> dirs = dirDeletes.get(depth);
+        if (dirs == null) {
+          dirs = new ArrayList<>();
+          dirDeletes.put(depth, dirs);
+        }
+        dirs.add(node.getKey());
+      }
+    } else if (wanted.containsKey(node.getKey())) {
+      current.put(node.getKey(), node);
     } else {
-      List<String> keyPath = new ArrayList<>();
+      deletes.add(node.getKey(), etcdClient.delete(node.getKey()).prevIndex(node.getModifiedIndex()));
+    }
+  }
+
+  /**
+   * Flattens the Json into the etcd keys and values to put
+   * @param path root path (i.e. /path1/path2)
+   * @param data JsonNode
+   * @return values by key
+   */
+  private static Map<String, String> flattenToKeys(String path, JsonNode data) {
+    Map<String, Object> flattened = new JsonFlattener(EtcdUtil.jsonToString(data))
+            .withFlattenMode(FlattenMode.MONGODB)
+            .withSeparator('/')
+            .flattenAsMap();
+
+    Map<String, String> values = new LinkedHashMap<>();
+    for (Map.Entry<String, Object> entry : flattened.entrySet()) {
+      values.put(path + "/" + entry.getKey(), String.valueOf(entry.getValue()));
+    }
+
+    return values;
+  }
+
+  /**
+   * Transforms an etcd node tree into Json in a single pass.
+   * Directories become objects, or arrays when their keys are the indexes 0 to n-1. Values are
+   * typed back into numbers, booleans and empty arrays, other values stay text.
+   * @param node etcd node (recursively obtained)
+   * @return JsonNode
+   */
+  public static JsonNode nodeToJson(EtcdNode node) {
+    if (!node.isDir()) {
+      return valueToJson(node.getValue());
+    }
+
+    List<EtcdNode> children = node.getNodes();
+    List<String> names = new ArrayList<>(children.size());
+    for (EtcdNode child : children) {
+      names.add(childName(child));
+    }
 
-      for (String key: node.getKey().split("/")) {
-        if (!key.isEmpty())
-          keyPath.add(key);
+    int[] positions = arrayPositions(names);
+    if (positions != null) {
+      ArrayNode array = JsonNodeFactory.instance.arrayNode();
+      for (int position : positions) {
+        array.add(nodeToJson(children.get(position)));
       }
+      return array;
+    }
 
-      ObjectNode jsonNodes = json;
-      Iterator<String> iterator = keyPath.iterator();
-
-      while (iterator.hasNext()) {
-        String key = iterator.next();
-        key = key.replaceAll("\\.", "__DOT__");
-        if (jsonNodes.get(key)==null) {
-          if (iterator.hasNext()) {
-            jsonNodes = jsonNodes.putObject(key);
-          } else {
-            jsonNodes = jsonNodes.put(key, node.getValue());
-          }
-        } else {
-          jsonNodes = (ObjectNode) jsonNodes.get(key);
-        }
+    ObjectNode object = JsonNodeFactory.instance.objectNode();
+    for (int i = 0; i < children.size(); i++) {
+      object.set(names.get(i), nodeToJson(children.get(i)));
+    }
+    return object;
+  }
+
+  /**
+   * Transforms a Json tree laid out as etcd keys, with an object per directory and the stored
+   * values as leaves, into Json by the same rules as {@link #nodeToJson(EtcdNode)}.
+   * Objects become arrays when their fields are the indexes 0 to n-1 and "[]" values become empty
+   * arrays. Other values are kept as they are, so a mapper binds text to the type of its field.
+   * @param tree Json tree
+   * @return JsonNode
+   */
+  public static JsonNode nodeToJson(JsonNode tree) {
+    if (!tree.isObject()) {
+      return tree.isTextual() && arrayType(tree.asText()) ? JsonNodeFactory.instance.arrayNode() : tree;
+    }
+
+    List<String> names = new ArrayList<>(tree.size());
+    for (Iterator<String> it = tree.fieldNames(); it.hasNext(); ) {
+      names.add(it.next());
+    }
+
+    int[] positions = arrayPositions(names);
+    if (positions != null) {
+      ArrayNode array = JsonNodeFactory.instance.arrayNode();
+      for (int position : positions) {
+        array.add(nodeToJson(tree.get(names.get(position))));
       }
+      return array;
     }
+
+    ObjectNode object = JsonNodeFactory.instance.objectNode();
+    for (String name : names) {
+      object.set(name, nodeToJson(tree.get(name)));
+    }
+    return object;
   }
 
   /**
-   * Recursively, flatten all json keys and transform data types
-   * @param node original json
-   * @param currentPath auxiliary variable used for recursion, initially empty string
-   * @return flattened json using dot notation
+   * Transforms a stored value into a typed Json value
+   * @param value stored value
+   * @return JsonNode
    */
-  @SuppressWarnings("unchecked")
-  private static ObjectNode flattenJson(JsonNode node, String currentPath) {
-    ObjectNode transformed = JsonNodeFactory.instance.objectNode();
-    Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
-
-    while (fields.hasNext()) {
-      Map.Entry<String, JsonNode> next = fields.next();
-      if (next.getValue().isValueNode()) {
-        String path = currentPath + "." + next.getKey();
-        String strValue = next.getValue().asText();
-        if (NumberUtils.isCreatable(strValue)) {
-          Class numberType = numberType(strValue);
-          if (numberType.isAssignableFrom(Integer.class)) {
-            transformed.put(path.substring(1), Integer.valueOf(strValue));
-          } else if (numberType.isAssignableFrom(Long.class)) {
-            transformed.put(path.substring(1), Long.valueOf(strValue));
-          } else if (numberType.isAssignableFrom(Float.class)) {
-            transformed.put(path.substring(1), Float.valueOf(strValue));
-          } else if (numberType.isAssignableFrom(Double.class)) {
-            transformed.put(path.substring(1), Double.valueOf(strValue));
-          }
-        } else if (booleanType(strValue)) {
-          transformed.put(path.substring(1), Boolean.valueOf(strValue));
-        } else if (arrayType(strValue)) {
-          transformed.putArray(path.substring(1));
-        } else {
-          transformed.set(path.substring(1), next.getValue());
-        }
-      } else {
-        transformed.setAll(flattenJson(next.getValue(), currentPath + "." + next.getKey()));
+  private static JsonNode valueToJson(String value) {
+    if (value == null) {
+      return JsonNodeFactory.instance.nullNode();
+    } else if (booleanType(value)) {
+      return JsonNodeFactory.instance.booleanNode(Boolean.parseBoolean(value));
+    } else if (arrayType(value)) {
+      return JsonNodeFactory.instance.arrayNode();
+    }
+
+    JsonNode number = numberToJson(value);
+    return number != null ? number : JsonNodeFactory.instance.textNode(value);
+  }
+
+  /**
+   * Parses a value in the Json number format
+   * @param value stored value
+   * @return number node or null if the value is not a number
+   */
+  private static JsonNode numberToJson(String value) {
+    int length = value.length();
+    int i = 0;
+    if (i < length && value.charAt(i) == '-') {
+      i++;
+    }
+
+    int digits = skipDigits(value, i);
+    if (digits == i || (value.charAt(i) == '0' && digits > i + 1)) {
+      return null;
+    }
+
+    boolean integral = true;
+    i = digits;
+    if (i < length && value.charAt(i) == '.') {
+      digits = skipDigits(value, i + 1);
+      if (digits == i + 1) {
+        return null;
+      }
+      integral = false;
+      i = digits;
+    }
+    if (i < length && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+      i++;
+      if (i < length && (value.charAt(i) == '+' || value.charAt(i) == '-')) {
+        i++;
+      }
+      digits = skipDigits(value, i);
+      if (digits == i) {
+        return null;
       }
+      integral = false;
+      i = digits;
+    }
+    if (i != length) {
+      return null;
     }
 
-    return transformed;
+    if (!integral) {
+      double number = Double.parseDouble(value);
+      return Double.isInfinite(number) ? null : JsonNodeFactory.instance.numberNode(number);
+    } else if (length <= 18) {
+      long number = Long.parseLong(value);
+      return number == (int) number
+          ? JsonNodeFactory.instance.numberNode((int) number)
+          : JsonNodeFactory.instance.numberNode(number);
+    } else {
+      return JsonNodeFactory.instance.numberNode(new BigInteger(value));
+    }
+  }
+
+  private static int skipDigits(String value, int from) {
+    int i = from;
+    while (i < value.length() && value.charAt(i) >= '0' && value.charAt(i) <= '9') {
+      i++;
+    }
+    return i;
   }
 
   /**
-   * Returns the type of Number (if applicable) in class form
-   * @param value Number to check
-   * @return Number class type
-   * @throws NumberFormatException
+   * Gets the array index a key name stands for
+   * @param name key name
+   * @return index or -1 if the name is not an index
    */
-  private static Class numberType(String value) throws NumberFormatException {
-    try {
-      Integer.valueOf(value);
-      return Integer.class;
-    } catch (NumberFormatException e) {}
-    try {
-      Long.valueOf(value);
-      return Long.class;
-    } catch (NumberFormatException e) {}
-    try {
-      Float.valueOf(value);
-      return Float.class;
-    } catch (NumberFormatException e) {}
-    try {
-      Double.valueOf(value);
-      return Double.class;
-    } catch (NumberFormatException e) {}
+  private static int arrayIndex(String name) {
+    int length = name.length();
+    if (length == 0 || length > 9 || (name.charAt(0) == '0' && length > 1)) {
+      return -1;
+    }
+
+    int index = 0;
+    for (int i = 0; i < length; i++) {
+      char c = name.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      index = index * 10 + (c - '0');
+    }
+    return index;
+  }
+
+  /**
+   * Gets the positions of names which are the array indexes 0 to n-1
+   * @param names key names of a directory
+   * @return position of the name of every index, or null if the names are not the indexes of an array
+   */
+  private static int[] arrayPositions(List<String> names) {
+    if (names.isEmpty()) {
+      return null;
+    }
+
+    int[] positions = new int[names.size()];
+    Arrays.fill(positions, -1);
+    for (int i = 0; i < names.size(); i++) {
+      int index = arrayIndex(names.get(i));
+      if (index < 0 || index >= positions.length || positions[index] >= 0) {
+        return null;
+      }
+      positions[index] = i;
+    }
+    return positions;
+  }
 
-    // no compatible number
-    throw new NumberFormatException();
+  private static String childName(EtcdNode node) {
+    String key = node.getKey();
+    return key.substring(key.lastIndexOf('/') + 1);
   }
 
   /**
@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j;
+
+import mousio.client.promises.ResponsePromise;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.requests.EtcdKeyGetRequest;
+import mousio.etcd4j.responses.EtcdErrorCode;
+import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Reactive Streams publisher of the changes on a key or, recursively, below it.
+ *
+ * Every subscriber gets its own chain of watch requests which continues at the index after
+ * the last change it received, so no change is missed between two watches. No watch is sent
+ * before the subscriber requested changes. What happens when the subscriber is slower than
+ * the changes depends on the overflow strategy:
+ * <ul>
+ * <li>{@link Overflow#BUFFER} only sends the next watch when there is demand, etcd keeps the
+ * changes in the meantime. When the subscriber falls more than the etcd event history (1000
+ * events) behind it gets an EtcdException with EventIndexCleared.</li>
+ * <li>{@link Overflow#DROP} keeps watching and buffers up to the buffer size of changes, newer
+ * changes are dropped while the buffer is full.</li>
+ * <li>{@link Overflow#LATEST} keeps watching and buffers up to the buffer size of changes, the
+ * oldest change is dropped for a newer one while the buffer is full.</li>
+ * </ul>
+ * With DROP and LATEST a cleared event history is skipped instead of reported.
+ *
+ * Changes are delivered on the thread completing the watch, so subscribers should not block.
+ *
+ * <pre>
+ * etcd.watch("/config").recursive().fromIndex(index + 1).subscribe(subscriber);
+ * </pre>
+ */
+public class EtcdWatchPublisher implements Publisher<EtcdKeysResponse> {
+  public static final int DEFAULT_BUFFER_SIZE = 128;
+
+  /**
+   * What to do with changes when the subscriber does not keep up
+   */
+  public enum Overflow {
+    BUFFER, DROP, LATEST
+  }
+
+  private final EtcdClient client;
+  private final String key;
+  private boolean recursive;
+  private long fromIndex;
+  private Overflow overflow;
+  private int bufferSize;
+
+  /**
+   * Constructor
+   *
+   * @param client to send the watches with
+   * @param key    to watch
+   */
+  EtcdWatchPublisher(EtcdClient client, String key) {
+    this.client = client;
+    this.key = key;
+    this.fromIndex = -1;
+    this.overflow = Overflow.BUFFER;
+    this.bufferSize = DEFAULT_BUFFER_SIZE;
+  }
+
+  /**
+   * Watch for changes on all keys below the key
+   *
+   * @return this publisher
+   */
+  public EtcdWatchPublisher recursive() {
+    this.recursive = true;
+    return this;
+  }
+
+  /**
+   * Start with the changes from an index, by default the current etcd index is read when the
+   * subscriber first requests changes and only changes after it are published
+   *
+   * @param index of first change to publish
+   * @return this publisher
+   */
+  public EtcdWatchPublisher fromIndex(long index) {
+    this.fromIndex = index;
+    return this;
+  }
+
+  /**
+   * Set the overflow strategy, default is {@link Overflow#BUFFER}
+   *
+   * @param overflow   strategy for a subscriber which does not keep up
+   * @param bufferSize max number of changes to buffer with DROP and LATEST
+   * @return this publisher
+   */
+  public EtcdWatchPublisher onOverflow(Overflow overflow, int bufferSize) {
+    if (bufferSize < 1) {
+      throw new IllegalArgumentException("Buffer size should be at least 1");
+    }
+
+    this.overflow = overflow;
+    this.bufferSize = bufferSize;
+    return this;
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super EtcdKeysResponse> subscriber) {
+    if (subscriber == null) {
+      throw new NullPointerException("Subscriber should not be null");
+    }
+
+    WatchSubscription subscription = new WatchSubscription(subscriber);
+    subscriber.onSubscribe(subscription);
+  }
+
+  /**
+   * The chain of watches of a single subscriber
+   */
+  private final class WatchSubscription implements Subscription,
+      ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse> {
+    private final Subscriber<? super EtcdKeysResponse> subscriber;
+    private final Overflow overflow;
+    private final int bufferSize;
+    private final ArrayDeque<EtcdKeysResponse> buffer;
+
+    private final AtomicLong requested;
+    private final AtomicInteger wip;
+
+    private volatile boolean started;
+    private volatile boolean cancelled;
+    private volatile boolean watching;
+    private volatile Throwable error;
+    private volatile EtcdResponsePromise<EtcdKeysResponse> current;
+    private long nextIndex;
+    private boolean terminated;
+
+    WatchSubscription(Subscriber<? super EtcdKeysResponse> subscriber) {
+      this.subscriber = subscriber;
+      this.overflow = EtcdWatchPublisher.this.overflow;
+      this.bufferSize = EtcdWatchPublisher.this.bufferSize;
+      this.buffer = new ArrayDeque<>();
+      this.requested = new AtomicLong();
+      this.wip = new AtomicInteger();
+      this.nextIndex = fromIndex;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        error = new IllegalArgumentException("Requested " + n + " changes, should be positive");
+        cancelWatch();
+      } else {
+        long r;
+        long u;
+        do {
+          r = requested.get();
+          u = r + n < 0 ? Long.MAX_VALUE : r + n;
+        } while (!requested.compareAndSet(r, u));
+        started = true;
+      }
+
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      cancelWatch();
+    }
+
+    @Override
+    public void onResponse(ResponsePromise<EtcdKeysResponse> promise) {
+      current = null;
+      Throwable exception = promise.getException();
+      if (cancelled) {
+        watching = false;
+        return;
+      }
+
+      if (exception == null) {
+        EtcdKeysResponse response = promise.getNow();
+        if (response.node != null && response.node.modifiedIndex != null) {
+          nextIndex = response.node.modifiedIndex + 1;
+        }
+        offer(response);
+      } else if (exception instanceof EtcdException
+          && ((EtcdException) exception).isErrorCode(EtcdErrorCode.EventIndexCleared)
+          && overflow != Overflow.BUFFER
+          && ((EtcdException) exception).index != null) {
+        nextIndex = ((EtcdException) exception).index + 1;
+      } else if (!isTimeout(exception)) {
+        error = exception;
+      }
+
+      watching = false;
+      drain();
+    }
+
+    private void offer(EtcdKeysResponse response) {
+      synchronized (buffer) {
+        if (overflow == Overflow.BUFFER || buffer.size() < bufferSize) {
+          buffer.addLast(response);
+        } else if (overflow == Overflow.LATEST) {
+          buffer.pollFirst();
+          buffer.addLast(response);
+        }
+      }
+    }
+
+    private EtcdKeysResponse poll() {
+      synchronized (buffer) {
+        return buffer.pollFirst();
+      }
+    }
+
+    private int buffered() {
+      synchronized (buffer) {
+        return buffer.size();
+      }
+    }
+
+    /**
+     * Emit buffered changes while there is demand and send the next watch. Only one thread
+     * drains at a time, calls while draining make the draining thread loop once more.
+     */
+    private void drain() {
+      if (wip.getAndIncrement() != 0) {
+        return;
+      }
+
+      int missed = 1;
+      do {
+        if (cancelled || terminated) {
+          return;
+        }
+
+        long r = requested.get();
+        long emitted = 0;
+        while (emitted != r) {
+          EtcdKeysResponse next = poll();
+          if (next == null) {
+            break;
+          }
+
+          subscriber.onNext(next);
+          emitted++;
+          if (cancelled) {
+            return;
+          }
+        }
+
+        if (emitted != 0 && r != Long.MAX_VALUE) {
+          requested.addAndGet(-emitted);
+        }
+
+        Throwable e = error;
+        if (e != null && (buffered() == 0 || e instanceof IllegalArgumentException)) {
+          terminated = true;
+          cancelWatch();
+          subscriber.onError(e);
+          return;
+        }
+
+        if (e == null && !watching && shouldWatch()) {
+          watching = true;
+          watch();
+        }
+
+        missed = wip.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private boolean shouldWatch() {
+      if (!started) {
+        return false;
+      }
+
+      if (overflow == Overflow.BUFFER) {
+        return requested.get() > buffered();
+      }
+
+      return true;
+    }
+
+    private void watch() {
+      if (nextIndex < 0) {
+        watchFromCurrentIndex();
+        return;
+      }
+
+      EtcdKeyGetRequest request = client.get(key).waitForChange(nextIndex);
+      if (recursive) {
+        request.recursive();
+      }
+
+      try {
+        EtcdResponsePromise<EtcdKeysResponse> promise = request.send();
+        current = promise;
+        promise.addListener(this);
+        if (cancelled) {
+          promise.cancel();
+        }
+      } catch (IOException e) {
+        error = e;
+        watching = false;
+        // Called while draining, make the drain loop once more to report the error
+        wip.incrementAndGet();
+      }
+    }
+
+    /**
+     * Read the current etcd index and start watching after it, so every watch has an index and
+     * a watch which times out continues where it started
+     */
+    private void watchFromCurrentIndex() {
+      try {
+        EtcdResponsePromise<EtcdKeysResponse> promise = client.get(key).send();
+        current = promise;
+        promise.addListener(new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+          @Override
+          public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+            current = null;
+            Throwable exception = response.getException();
+            Long index = null;
+            if (exception == null) {
+              index = response.getNow().etcdIndex;
+            } else if (exception instanceof EtcdException) {
+              index = ((EtcdException) exception).index;
+            }
+
+            if (index != null) {
+              nextIndex = index + 1;
+            } else if (!isTimeout(exception)) {
+              error = exception != null ? exception : new IllegalStateException("No etcd index in response");
+            }
+
+            // The next drain sends the watch, or reads the index again after a timeout
+            watching = false;
+            if (!cancelled) {
+              drain();
+            }
+          }
+        });
+        if (cancelled) {
+          promise.cancel();
+        }
+      } catch (IOException e) {
+        error = e;
+        watching = false;
+        // Called while draining, make the drain loop once more to report the error
+        wip.incrementAndGet();
+      }
+    }
+
+    private void cancelWatch() {
+      EtcdResponsePromise<EtcdKeysResponse> promise = current;
+      if (promise != null) {
+        promise.cancel();
+      }
+    }
+  }
+
+  private static boolean isTimeout(Throwable exception) {
+    return exception instanceof TimeoutException
+        || exception instanceof io.netty.handler.timeout.TimeoutException;
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j.promises;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import mousio.client.ConnectionState;
+
+import java.net.URI;
+
+/**
+ * A promise which is not bound to a connection but completed by the client itself,
+ * for example for responses shared between requests or answered locally.
+ *
+ * @param <T> Type of response contained
+ */
+public class EtcdCompletablePromise<T> extends EtcdResponsePromise<T> {
+
+  /**
+   * Constructor which notifies listeners on the global event executor
+   */
+  public EtcdCompletablePromise() {
+    this(GlobalEventExecutor.INSTANCE);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param executor to notify listeners on
+   */
+  public EtcdCompletablePromise(EventExecutor executor) {
+    super(null, new ConnectionState(new URI[0], 0), null);
+    attachNettyPromise(executor.<T>newPromise());
+  }
+
+  /**
+   * Complete the promise with a response
+   *
+   * @param response to complete with
+   * @return true if this call completed the promise
+   */
+  public boolean complete(T response) {
+    return this.promise.trySuccess(response);
+  }
+
+  /**
+   * Complete the promise with a failure
+   *
+   * @param cause of the failure
+   * @return true if this call completed the promise
+   */
+  public boolean fail(Throwable cause) {
+    return this.promise.tryFailure(cause);
+  }
+
+  /**
+   * There is no connection to retry so the promise fails directly
+   *
+   * @param cause of last connect fail
+   */
+  @Override
+  public void handleRetry(Throwable cause) {
+    fail(cause);
+  }
+}
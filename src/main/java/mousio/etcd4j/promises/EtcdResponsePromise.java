@@ -21,6 +21,7 @@ import mousio.client.retry.RetryHandler;
 import mousio.client.retry.RetryPolicy;
 import mousio.etcd4j.responses.EtcdAuthenticationException;
 import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.responses.EtcdResult;
 
 import java.io.IOException;
 import java.util.concurrent.TimeoutException;
@@ -73,4 +74,21 @@ public class EtcdResponsePromise<T> extends ResponsePromise<T> {
       }
     }
   }
+
+  /**
+   * Get the response or failure as a result. (Blocking)
+   *
+   * Never throws on a failed request, the failure and its etcd error code are in the result.
+   *
+   * @return the result
+   */
+  public EtcdResult<T> result() {
+    try {
+      waitForPromiseSuccess();
+    } catch (IOException | TimeoutException e) {
+      return EtcdResult.failure(e);
+    }
+
+    return EtcdResult.of(this);
+  }
 }
\ No newline at end of file
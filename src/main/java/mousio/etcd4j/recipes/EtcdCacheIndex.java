@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j.recipes;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A secondary index over the nodes of a tree cache.
+ *
+ * An extractor derives the index value of every node, for example a field of its Json value, and
+ * the index maps every value to the nodes which have it. The index is kept up to date as a
+ * listener of the cache, so each change only moves the changed key between two values and a
+ * lookup is a hash lookup instead of a scan over all cached nodes. Several indexes can be kept on
+ * the same cache.
+ *
+ * <pre>
+ * EtcdTreeCache cache = new EtcdTreeCache(etcd, "/instances");
+ * EtcdCacheIndex&lt;String&gt; byZone = new EtcdCacheIndex&lt;&gt;(cache, EtcdCacheIndex.jsonField("zone"));
+ * cache.start().get();
+ * Collection&lt;EtcdKeysResponse.EtcdNode&gt; instances = byZone.get("eu-west-1a");
+ * </pre>
+ *
+ * @param <V> Type of the index values
+ */
+public class EtcdCacheIndex<V> implements Closeable {
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  private final EtcdTreeCache cache;
+  private final Extractor<V> extractor;
+  private final ConcurrentMap<V, ConcurrentMap<String, EtcdKeysResponse.EtcdNode>> entries;
+  private final ConcurrentMap<String, V> values;
+  private final EtcdTreeCache.Listener listener;
+
+  /**
+   * Constructor. Nodes already in the cache are indexed at once.
+   *
+   * @param cache     to index
+   * @param extractor to get the index value of a node with
+   */
+  public EtcdCacheIndex(EtcdTreeCache cache, Extractor<V> extractor) {
+    this.cache = cache;
+    this.extractor = extractor;
+    this.entries = new ConcurrentHashMap<>();
+    this.values = new ConcurrentHashMap<>();
+
+    this.listener = new EtcdTreeCache.Listener() {
+      @Override
+      public void onChange(String key, EtcdKeysResponse.EtcdNode node, EtcdKeysResponse.EtcdNode prevNode) {
+        update(key, node);
+      }
+    };
+
+    cache.addListener(listener);
+    for (EtcdKeysResponse.EtcdNode node : cache.getNodes()) {
+      // Read again under the lock so a change applied meanwhile is not overwritten
+      synchronized (this) {
+        update(node.key, cache.get(node.key));
+      }
+    }
+  }
+
+  /**
+   * Get the nodes with an index value
+   *
+   * @param value to look up
+   * @return live and unmodifiable view of the nodes, empty if no node has the value
+   */
+  public Collection<EtcdKeysResponse.EtcdNode> get(V value) {
+    Map<String, EtcdKeysResponse.EtcdNode> nodes = entries.get(value);
+    return nodes == null
+      ? Collections.<EtcdKeysResponse.EtcdNode>emptyList()
+      : Collections.unmodifiableCollection(nodes.values());
+  }
+
+  /**
+   * Get the keys with an index value
+   *
+   * @param value to look up
+   * @return live and unmodifiable view of the keys, empty if no node has the value
+   */
+  public Set<String> getKeys(V value) {
+    Map<String, EtcdKeysResponse.EtcdNode> nodes = entries.get(value);
+    return nodes == null
+      ? Collections.<String>emptySet()
+      : Collections.unmodifiableSet(nodes.keySet());
+  }
+
+  /**
+   * Get the number of nodes with an index value
+   *
+   * @param value to look up
+   * @return number of nodes
+   */
+  public int count(V value) {
+    Map<String, EtcdKeysResponse.EtcdNode> nodes = entries.get(value);
+    return nodes == null ? 0 : nodes.size();
+  }
+
+  /**
+   * Get the index value of a key
+   *
+   * @param key to get value of
+   * @return index value, or null if the key is not indexed
+   */
+  public V getValue(String key) {
+    return values.get(key);
+  }
+
+  /**
+   * Get all index values which at least one node has
+   *
+   * @return live and unmodifiable view of the values
+   */
+  public Set<V> getValues() {
+    return Collections.unmodifiableSet(entries.keySet());
+  }
+
+  /**
+   * Get the number of indexed keys
+   *
+   * @return number of keys with an index value
+   */
+  public int size() {
+    return values.size();
+  }
+
+  /**
+   * Stop following the cache and drop the index
+   */
+  @Override
+  public synchronized void close() {
+    cache.removeListener(listener);
+    entries.clear();
+    values.clear();
+  }
+
+  /**
+   * Move a key to the index value of its new node
+   *
+   * @param key  which changed
+   * @param node new node, null if the key was removed
+   */
+  private synchronized void update(String key, EtcdKeysResponse.EtcdNode node) {
+    V value = node == null ? null : extractor.extract(node);
+    V previous = value == null ? values.remove(key) : values.put(key, value);
+
+    if (previous != null && !previous.equals(value)) {
+      Map<String, EtcdKeysResponse.EtcdNode> nodes = entries.get(previous);
+      if (nodes != null) {
+        nodes.remove(key);
+        if (nodes.isEmpty()) {
+          entries.remove(previous);
+        }
+      }
+    }
+
+    if (value != null) {
+      ConcurrentMap<String, EtcdKeysResponse.EtcdNode> nodes = entries.get(value);
+      if (nodes == null) {
+        nodes = new ConcurrentHashMap<>();
+        entries.put(value, nodes);
+      }
+      nodes.put(key, node);
+    }
+  }
+
+  /**
+   * Get an extractor which indexes nodes on a field of their Json value. Nodes of which the
+   * value is not Json or which do not have the field as a text, number or boolean are not indexed.
+   *
+   * @param field name of the field, with dots between the names of nested fields
+   * @return extractor of the field as text
+   */
+  public static Extractor<String> jsonField(String field) {
+    final JsonPointer pointer = JsonPointer.compile("/" + field.replace('.', '/'));
+    return new Extractor<String>() {
+      @Override
+      public String extract(EtcdKeysResponse.EtcdNode node) {
+        if (node.value == null) {
+          return null;
+        }
+
+        try {
+          JsonNode tree = mapper.readTree(node.value);
+          JsonNode value = tree == null ? null : tree.at(pointer);
+          return value != null && value.isValueNode() && !value.isNull() ? value.asText() : null;
+        } catch (IOException e) {
+          return null;
+        }
+      }
+    };
+  }
+
+  /**
+   * Derives the index value of a node
+   *
+   * @param <V> Type of the index values
+   */
+  public interface Extractor<V> {
+    /**
+     * Get the index value of a node
+     *
+     * @param node to get value of
+     * @return index value, or null to leave the node out of the index
+     */
+    V extract(EtcdKeysResponse.EtcdNode node);
+  }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j.recipes;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import mousio.client.promises.ResponsePromise;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.EtcdUtil;
+import mousio.etcd4j.promises.EtcdCompletablePromise;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Binds the keys below a prefix onto an object of a type, and binds it again on every change.
+ *
+ * The keys are laid out as {@link mousio.etcd4j.EtcdUtil#putAsJson} stores Json: directories are
+ * objects, or arrays when their keys are the indexes 0 to n-1, and values are converted to the
+ * type of the field they bind to. An {@link EtcdTreeCache} reads the prefix once and applies
+ * the changes of its watch to a Json tree, a change is bound from that tree without reading the
+ * prefix again.
+ *
+ * Every bind creates a new object which replaces the current one at once. Readers get the
+ * current object with a volatile read and should treat it as immutable. A change which does not
+ * bind, for example a value which does not convert to its field, keeps the current object and is
+ * reported by {@link #getBindError()}.
+ *
+ * <pre>
+ * EtcdConfigBinder&lt;AppConfig&gt; config = new EtcdConfigBinder&lt;&gt;(etcd, "/config/app", AppConfig.class);
+ * config.start().get();
+ * int timeout = config.get().timeout;
+ * </pre>
+ *
+ * @param <T> Type of the bound object
+ */
+public class EtcdConfigBinder<T> implements Closeable {
+  private final String prefix;
+  private final Class<T> type;
+  private final ObjectMapper mapper;
+  private final EtcdTreeCache cache;
+  private final List<Listener<T>> listeners;
+
+  private final ObjectNode tree;
+  private final Set<String> changed;
+  private boolean loaded;
+
+  private volatile T current;
+  private volatile Exception bindError;
+
+  /**
+   * Constructor
+   *
+   * @param client to read and watch with
+   * @param prefix to bind
+   * @param type   to bind to, unknown properties are ignored
+   */
+  public EtcdConfigBinder(EtcdClient client, String prefix, Class<T> type) {
+    this(client, prefix, type, new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false));
+  }
+
+  /**
+   * Constructor
+   *
+   * @param client to read and watch with
+   * @param prefix to bind
+   * @param type   to bind to
+   * @param mapper to bind with
+   */
+  public EtcdConfigBinder(EtcdClient client, String prefix, Class<T> type, ObjectMapper mapper) {
+    this.cache = new EtcdTreeCache(client, prefix);
+    this.prefix = cache.getDir();
+    this.type = type;
+    this.mapper = mapper;
+    this.listeners = new CopyOnWriteArrayList<>();
+    this.tree = JsonNodeFactory.instance.objectNode();
+    this.changed = new LinkedHashSet<>();
+
+    this.cache.addListener(new EtcdTreeCache.Listener() {
+      @Override
+      public void onChange(String key, EtcdKeysResponse.EtcdNode node, EtcdKeysResponse.EtcdNode prevNode) {
+        changed(key, node);
+      }
+    });
+  }
+
+  /**
+   * Add a listener to binds of changes
+   *
+   * @param listener to add
+   * @return this binder
+   */
+  public EtcdConfigBinder<T> addListener(Listener<T> listener) {
+    listeners.add(listener);
+    return this;
+  }
+
+  /**
+   * Remove a listener
+   *
+   * @param listener to remove
+   */
+  public void removeListener(Listener<T> listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Read the prefix, bind it and start following its changes
+   *
+   * @return promise of the first bound object, fails if the prefix could not be read or bound
+   */
+  public EtcdResponsePromise<T> start() {
+    final EtcdCompletablePromise<T> promise = new EtcdCompletablePromise<>();
+    cache.start().addListener(new ResponsePromise.IsSimplePromiseResponseHandler<EtcdTreeCache>() {
+      @Override
+      public void onResponse(ResponsePromise<EtcdTreeCache> response) {
+        if (response.getException() != null) {
+          promise.fail(response.getException());
+          return;
+        }
+
+        synchronized (EtcdConfigBinder.this) {
+          loaded = true;
+          changed.clear();
+          if (bind() != null) {
+            promise.fail(bindError);
+          } else {
+            promise.complete(current);
+          }
+        }
+      }
+    });
+    return promise;
+  }
+
+  /**
+   * Get the current bound object
+   *
+   * @return object, null before the first bind
+   */
+  public T get() {
+    return current;
+  }
+
+  /**
+   * Get the error of the last bind
+   *
+   * @return error, or null if the last bind succeeded
+   */
+  public Exception getBindError() {
+    return bindError;
+  }
+
+  /**
+   * Stop following changes, the current object stays
+   */
+  @Override
+  public void close() {
+    cache.close();
+  }
+
+  private synchronized void changed(String key, EtcdKeysResponse.EtcdNode node) {
+    List<String> path = pathOf(key);
+    if (path.isEmpty()) {
+      return;
+    }
+
+    if (node != null) {
+      set(path, node.value);
+    } else {
+      remove(path);
+    }
+
+    changed.add(join(path));
+    if (loaded) {
+      T previous = current;
+      if (bind() == null) {
+        Set<String> fields = Collections.unmodifiableSet(new LinkedHashSet<>(changed));
+        changed.clear();
+        for (Listener<T> listener : listeners) {
+          listener.onChange(current, previous, fields);
+        }
+      }
+    }
+  }
+
+  /**
+   * Bind the tree onto a new object and make it the current one
+   *
+   * @return error, or null if bound
+   */
+  private Exception bind() {
+    try {
+      current = mapper.treeToValue(EtcdUtil.nodeToJson(tree), type);
+      bindError = null;
+    } catch (Exception e) {
+      bindError = e;
+    }
+    return bindError;
+  }
+
+  private void set(List<String> path, String value) {
+    ObjectNode parent = tree;
+    for (int i = 0; i < path.size() - 1; i++) {
+      JsonNode child = parent.get(path.get(i));
+      if (!(child instanceof ObjectNode)) {
+        child = parent.putObject(path.get(i));
+      }
+      parent = (ObjectNode) child;
+    }
+    parent.put(path.get(path.size() - 1), value);
+  }
+
+  private void remove(List<String> path) {
+    ObjectNode[] parents = new ObjectNode[path.size()];
+    parents[0] = tree;
+    for (int i = 0; i < path.size() - 1; i++) {
+      JsonNode child = parents[i].get(path.get(i));
+      if (!(child instanceof ObjectNode)) {
+        return;
+      }
+      parents[i + 1] = (ObjectNode) child;
+    }
+
+    parents[path.size() - 1].remove(path.get(path.size() - 1));
+    // Directories without keys left are gone too
+    for (int i = path.size() - 1; i > 0 && parents[i].size() == 0; i--) {
+      parents[i - 1].remove(path.get(i - 1));
+    }
+  }
+
+  private List<String> pathOf(String key) {
+    if (!key.startsWith(prefix + "/")) {
+      return Collections.emptyList();
+    }
+
+    List<String> path = new ArrayList<>();
+    for (String name : key.substring(prefix.length() + 1).split("/")) {
+      if (!name.isEmpty()) {
+        path.add(name);
+      }
+    }
+    return path;
+  }
+
+  private static String join(List<String> path) {
+    StringBuilder builder = new StringBuilder();
+    for (String name : path) {
+      if (builder.length() > 0) {
+        builder.append('.');
+      }
+      builder.append(name);
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Listener to changes of a bound object
+   *
+   * @param <T> Type of the bound object
+   */
+  public interface Listener<T> {
+    /**
+     * Called after a change was bound
+     *
+     * @param config   bound object
+     * @param previous object before the change
+     * @param fields   paths of the changed fields, dot separated
+     */
+    void onChange(T config, T previous, Set<String> fields);
+  }
+}
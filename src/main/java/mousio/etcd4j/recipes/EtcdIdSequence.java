@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j.recipes;
+
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.EtcdUpdate;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.responses.EtcdAuthenticationException;
+import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A sequence of unique ids which reserves blocks of ids with one atomic update of its key.
+ *
+ * The key holds the next id which is not reserved. Ids of the current block are handed out
+ * locally with an atomic increment. When half of a block is handed out the next block is
+ * reserved in the background, so a block is only waited for when ids are taken faster than
+ * a block can be reserved. Blocks are sized to last about the target time at the rate ids
+ * were taken from the last block.
+ *
+ * Ids are unique over all sequences on the same key and increase within one sequence.
+ * Ids of a block which is not used up, for example when the process stops, are never handed
+ * out, so the sequence has gaps.
+ *
+ * <pre>
+ * EtcdIdSequence ids = new EtcdIdSequence(etcd, "/sequences/orders");
+ * long id = ids.nextId();
+ * </pre>
+ */
+public class EtcdIdSequence {
+  public static final long FIRST_ID = 1;
+  public static final long DEFAULT_MIN_BLOCK_SIZE = 16;
+  public static final long DEFAULT_MAX_BLOCK_SIZE = 1 << 20;
+  public static final long DEFAULT_TARGET_BLOCK_MILLIS = 1000;
+
+  private static final Block EMPTY = new Block(0, 0);
+
+  private final EtcdClient client;
+  private final String key;
+  private final long minBlockSize;
+  private final long maxBlockSize;
+  private final long targetBlockNanos;
+
+  private volatile Block current;
+  private final AtomicReference<Reservation> next;
+
+  /**
+   * Constructor
+   *
+   * @param client to reserve blocks with
+   * @param key    of the sequence
+   */
+  public EtcdIdSequence(EtcdClient client, String key) {
+    this(client, key, DEFAULT_MIN_BLOCK_SIZE, DEFAULT_MAX_BLOCK_SIZE,
+      DEFAULT_TARGET_BLOCK_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param client       to reserve blocks with
+   * @param key          of the sequence
+   * @param minBlockSize min number of ids to reserve at once, also the size of the first block
+   * @param maxBlockSize max number of ids to reserve at once
+   * @param targetTime   time a block should last
+   * @param unit         of target time
+   */
+  public EtcdIdSequence(EtcdClient client, String key, long minBlockSize, long maxBlockSize,
+                        long targetTime, TimeUnit unit) {
+    if (minBlockSize < 2 || maxBlockSize < minBlockSize) {
+      throw new IllegalArgumentException("Block size should be at least 2 and min should not exceed max");
+    }
+
+    this.client = client;
+    this.key = key;
+    this.minBlockSize = minBlockSize;
+    this.maxBlockSize = maxBlockSize;
+    this.targetBlockNanos = unit.toNanos(targetTime);
+    this.current = EMPTY;
+    this.next = new AtomicReference<>();
+  }
+
+  /**
+   * Get the next id. Only blocks when the next block was not reserved yet.
+   *
+   * @return unique id
+   * @throws IOException                 on fail to reserve a block
+   * @throws EtcdException               on etcd fail to reserve a block
+   * @throws EtcdAuthenticationException on authentication failure
+   * @throws TimeoutException            on timeout of reserving a block
+   */
+  public long nextId() throws IOException, EtcdException, EtcdAuthenticationException, TimeoutException {
+    for (;;) {
+      Block block = current;
+      long id = block.next.getAndIncrement();
+      if (id < block.end) {
+        if (id == block.prefetchAt) {
+          prefetch(block);
+        }
+        return id;
+      }
+
+      advance(block);
+    }
+  }
+
+  /**
+   * Get the size of the current block
+   *
+   * @return number of ids in the current block, 0 before the first id was taken
+   */
+  public long getBlockSize() {
+    return current.end - current.start;
+  }
+
+  private void prefetch(Block block) {
+    Reservation reservation = new Reservation(sizeAfter(block));
+    if (next.compareAndSet(null, reservation)) {
+      reservation.send();
+    }
+  }
+
+  private synchronized void advance(Block exhausted)
+      throws IOException, EtcdException, EtcdAuthenticationException, TimeoutException {
+    if (current != exhausted) {
+      return;
+    }
+
+    Reservation reservation = next.get();
+    if (reservation == null) {
+      Reservation created = new Reservation(sizeAfter(exhausted));
+      reservation = next.compareAndSet(null, created) ? created : next.get();
+    }
+
+    try {
+      current = reservation.await();
+    } finally {
+      next.compareAndSet(reservation, null);
+    }
+  }
+
+  /**
+   * Size the block after a block to last the target time at the rate ids are taken from it
+   *
+   * @param block to size next block after
+   * @return size of next block
+   */
+  private long sizeAfter(Block block) {
+    if (block == EMPTY) {
+      return minBlockSize;
+    }
+
+    long size = block.end - block.start;
+    long taken = Math.min(block.next.get(), block.end) - block.start;
+    long elapsed = System.nanoTime() - block.createdNanos;
+
+    long wanted = elapsed <= 0 ? size * 4 : (long) ((double) taken * targetBlockNanos / elapsed);
+    wanted = Math.max(size / 2, Math.min(size * 4, wanted));
+    return Math.max(minBlockSize, Math.min(maxBlockSize, wanted));
+  }
+
+  /**
+   * A range of reserved ids
+   */
+  private static final class Block {
+    final long start;
+    final long end;
+    final long prefetchAt;
+    final long createdNanos;
+    final AtomicLong next;
+
+    Block(long start, long end) {
+      this.start = start;
+      this.end = end;
+      this.prefetchAt = start + (end - start) / 2;
+      this.createdNanos = System.nanoTime();
+      this.next = new AtomicLong(start);
+    }
+  }
+
+  /**
+   * The update reserving the next block
+   */
+  private final class Reservation implements EtcdUpdate.ValueFunction {
+    final long size;
+    private EtcdResponsePromise<EtcdKeysResponse> promise;
+
+    Reservation(long size) {
+      this.size = size;
+    }
+
+    @Override
+    public String apply(String value) {
+      return Long.toString((value == null ? FIRST_ID : Long.parseLong(value)) + size);
+    }
+
+    synchronized EtcdResponsePromise<EtcdKeysResponse> send() {
+      if (promise == null) {
+        promise = client.update(key, this).send();
+      }
+      return promise;
+    }
+
+    Block await() throws IOException, EtcdException, EtcdAuthenticationException, TimeoutException {
+      // Sends if the thread which prefetches did not send yet
+      long end = Long.parseLong(send().get().node.value);
+      return new Block(end - size, end);
+    }
+  }
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j.recipes;
+
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reconciles the keys below a directory with a reconciler, like a Kubernetes informer and
+ * controller.
+ *
+ * The directory is listed once and then watched by an {@link EtcdTreeCache}, which is the local
+ * index the reconciler reads from. Every key which is added, changed or removed is put on a work
+ * queue, where a key is at most once no matter how often it changed, and is never reconciled by
+ * two workers at the same time. A number of workers take keys off the queue and reconcile them
+ * with their current node from the cache, so reconciling does not send requests to etcd. A key
+ * whose reconcile failed is put back after a delay which doubles with every failure of the key,
+ * and which is at least the delay of a rate limit on all retries. A periodic resync puts all
+ * keys on the queue again, from the cache.
+ *
+ * Starting on thousands of keys costs one recursive GET, and the workers bound the reconciles
+ * running at once. After a watch which could not be continued, the directory is read again and
+ * only the keys which differ from the cache are reconciled.
+ *
+ * <pre>
+ * EtcdInformer informer = new EtcdInformer(etcd, "/deployments", new EtcdInformer.Reconciler() {
+ *   public void reconcile(String key, EtcdKeysResponse.EtcdNode node) throws Exception {
+ *     apply(key, node);
+ *   }
+ * })
+ *   .workers(8)
+ *   .resync(10, TimeUnit.MINUTES);
+ * informer.start().get();
+ * </pre>
+ */
+public class EtcdInformer implements Closeable {
+  public static final int DEFAULT_WORKERS = 4;
+
+  private static final Logger logger = LoggerFactory.getLogger(EtcdInformer.class);
+
+  private final EtcdTreeCache cache;
+  private final Reconciler reconciler;
+
+  private final ArrayDeque<String> queue;
+  private final Set<String> dirty;
+  private final Set<String> processing;
+  private final Map<String, Integer> failures;
+
+  private final AtomicLong reconcileCount;
+  private final AtomicLong failureCount;
+
+  private int workers;
+  private long resyncNanos;
+  private long baseDelayNanos;
+  private long maxDelayNanos;
+  private double retriesPerSecond;
+  private int retryBurst;
+
+  private double tokens;
+  private long tokensAt;
+
+  private final List<Thread> threads;
+  private volatile ScheduledFuture<?> resync;
+  private volatile boolean closed;
+
+  /**
+   * Constructor
+   *
+   * @param client     to list and watch with
+   * @param dir        to reconcile the keys of
+   * @param reconciler to reconcile keys with
+   */
+  public EtcdInformer(EtcdClient client, String dir, Reconciler reconciler) {
+    this.cache = new EtcdTreeCache(client, dir);
+    this.reconciler = reconciler;
+    this.queue = new ArrayDeque<>();
+    this.dirty = new HashSet<>();
+    this.processing = new HashSet<>();
+    this.failures = new HashMap<>();
+    this.reconcileCount = new AtomicLong();
+    this.failureCount = new AtomicLong();
+    this.threads = new ArrayList<>();
+
+    this.workers = DEFAULT_WORKERS;
+    this.baseDelayNanos = TimeUnit.MILLISECONDS.toNanos(5);
+    this.maxDelayNanos = TimeUnit.SECONDS.toNanos(300);
+    this.retriesPerSecond = 10;
+    this.retryBurst = 100;
+
+    this.cache.addListener(new EtcdTreeCache.Listener() {
+      @Override
+      public void onChange(String key, EtcdKeysResponse.EtcdNode node, EtcdKeysResponse.EtcdNode prevNode) {
+        enqueue(key);
+      }
+    });
+  }
+
+  /**
+   * Set the number of workers, default is {@link #DEFAULT_WORKERS}
+   *
+   * @param workers number of keys reconciled at the same time
+   * @return this informer
+   */
+  public EtcdInformer workers(int workers) {
+    if (workers < 1) {
+      throw new IllegalArgumentException("Workers should be at least 1");
+    }
+    this.workers = workers;
+    return this;
+  }
+
+  /**
+   * Set the period to reconcile all keys again, by default there is no resync
+   *
+   * @param period between resyncs
+   * @param unit   of period
+   * @return this informer
+   */
+  public EtcdInformer resync(long period, TimeUnit unit) {
+    this.resyncNanos = unit.toNanos(period);
+    return this;
+  }
+
+  /**
+   * Set the back-off of a key whose reconcile failed, by default from 5 milliseconds to 5 minutes.
+   * The delay is the base delay doubled for every failure of the key in a row, at most the max delay.
+   *
+   * @param baseDelay delay after the first failure
+   * @param maxDelay  max delay
+   * @param unit      of the delays
+   * @return this informer
+   */
+  public EtcdInformer backOff(long baseDelay, long maxDelay, TimeUnit unit) {
+    this.baseDelayNanos = unit.toNanos(baseDelay);
+    this.maxDelayNanos = unit.toNanos(maxDelay);
+    return this;
+  }
+
+  /**
+   * Set the rate limit of retries over all keys, by default 10 per second with a burst of 100
+   *
+   * @param perSecond retries per second
+   * @param burst     retries which can go at once
+   * @return this informer
+   */
+  public EtcdInformer retryRate(double perSecond, int burst) {
+    if (perSecond <= 0 || burst < 1) {
+      throw new IllegalArgumentException("Retry rate should be positive and burst at least 1");
+    }
+    this.retriesPerSecond = perSecond;
+    this.retryBurst = burst;
+    return this;
+  }
+
+  /**
+   * List the directory and start reconciling
+   *
+   * @return promise which completes once the directory is listed
+   */
+  public synchronized EtcdResponsePromise<EtcdTreeCache> start() {
+    if (closed) {
+      throw new IllegalStateException("Informer is closed");
+    }
+
+    if (threads.isEmpty()) {
+      tokens = retryBurst;
+      tokensAt = System.nanoTime();
+      for (int i = 0; i < workers; i++) {
+        Thread thread = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            work();
+          }
+        }, "etcd4j-informer-" + i);
+        thread.setDaemon(true);
+        thread.start();
+        threads.add(thread);
+      }
+
+      if (resyncNanos > 0) {
+        resync = GlobalEventExecutor.INSTANCE.scheduleAtFixedRate(new Runnable() {
+          @Override
+          public void run() {
+            for (EtcdKeysResponse.EtcdNode node : cache.getNodes()) {
+              enqueue(node.key);
+            }
+          }
+        }, resyncNanos, resyncNanos, TimeUnit.NANOSECONDS);
+      }
+    }
+
+    return cache.start();
+  }
+
+  /**
+   * Get the local index of the keys
+   *
+   * @return cache of the directory
+   */
+  public EtcdTreeCache getCache() {
+    return cache;
+  }
+
+  /**
+   * Put a key on the work queue, unless it is on it already
+   *
+   * @param key to reconcile
+   */
+  public void enqueue(String key) {
+    synchronized (queue) {
+      if (closed || !dirty.add(key)) {
+        return;
+      }
+      // A key being reconciled is queued again once it is done
+      if (!processing.contains(key)) {
+        queue.addLast(key);
+        queue.notify();
+      }
+    }
+  }
+
+  /**
+   * Get the number of keys waiting to be reconciled
+   *
+   * @return queue length
+   */
+  public int getQueueLength() {
+    synchronized (queue) {
+      return queue.size();
+    }
+  }
+
+  /**
+   * Get the number of reconciles which succeeded
+   *
+   * @return number of reconciles
+   */
+  public long getReconcileCount() {
+    return reconcileCount.get();
+  }
+
+  /**
+   * Get the number of reconciles which failed
+   *
+   * @return number of failures
+   */
+  public long getFailureCount() {
+    return failureCount.get();
+  }
+
+  /**
+   * Stop watching and reconciling, reconciles running are finished
+   */
+  @Override
+  public void close() {
+    closed = true;
+    cache.close();
+
+    ScheduledFuture<?> current = resync;
+    if (current != null) {
+      current.cancel(false);
+    }
+
+    synchronized (queue) {
+      queue.clear();
+      dirty.clear();
+      queue.notifyAll();
+    }
+  }
+
+  private void work() {
+    while (true) {
+      String key;
+      synchronized (queue) {
+        while (queue.isEmpty() && !closed) {
+          try {
+            queue.wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        if (closed) {
+          return;
+        }
+
+        key = queue.pollFirst();
+        dirty.remove(key);
+        processing.add(key);
+      }
+
+      boolean failed = false;
+      try {
+        reconciler.reconcile(key, cache.get(key));
+        reconcileCount.incrementAndGet();
+      } catch (Exception e) {
+        failed = true;
+        failureCount.incrementAndGet();
+        logger.debug("Reconcile of {} failed", key, e);
+      }
+
+      done(key, failed);
+    }
+  }
+
+  private void done(final String key, boolean failed) {
+    long delay = 0;
+    synchronized (queue) {
+      processing.remove(key);
+      if (!failed) {
+        failures.remove(key);
+      } else {
+        Integer previous = failures.get(key);
+        int count = previous == null ? 1 : previous + 1;
+        failures.put(key, count);
+        delay = Math.max(backOff(count), rateLimit());
+      }
+
+      if (dirty.contains(key)) {
+        // Changed while being reconciled, the change is reconciled right away
+        queue.addLast(key);
+        queue.notify();
+        return;
+      }
+    }
+
+    if (failed) {
+      GlobalEventExecutor.INSTANCE.schedule(new Runnable() {
+        @Override
+        public void run() {
+          enqueue(key);
+        }
+      }, delay, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private long backOff(int failures) {
+    long delay = baseDelayNanos;
+    for (int i = 1; i < failures && delay < maxDelayNanos; i++) {
+      delay *= 2;
+    }
+    return Math.min(delay, maxDelayNanos);
+  }
+
+  /**
+   * Take a token of the retry rate limit
+   *
+   * @return time until the token is there
+   */
+  private long rateLimit() {
+    long now = System.nanoTime();
+    tokens = Math.min(retryBurst, tokens + (now - tokensAt) * retriesPerSecond / 1e9);
+    tokensAt = now;
+    tokens -= 1;
+    return tokens >= 0 ? 0 : (long) (-tokens / retriesPerSecond * 1e9);
+  }
+
+  /**
+   * Reconciles a key with whatever the key stands for
+   */
+  public interface Reconciler {
+    /**
+     * Reconcile a key. Throw to have it reconciled again after a back-off.
+     *
+     * @param key  to reconcile
+     * @param node current node of the key, null if it was removed
+     * @throws Exception on fail to reconcile
+     */
+    void reconcile(String key, EtcdKeysResponse.EtcdNode node) throws Exception;
+  }
+}
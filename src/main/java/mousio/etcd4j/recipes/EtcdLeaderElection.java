@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j.recipes;
+
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+import mousio.client.promises.ResponsePromise;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.responses.EtcdErrorCode;
+import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.responses.EtcdKeyAction;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Leader election on a single key with a TTL.
+ *
+ * A candidate runs for leader by creating the key with its id as value, the create only
+ * succeeds if there is no leader. The leader refreshes the TTL of the key, on the condition it
+ * still holds its id. The other candidates watch the key and run again as soon as it is deleted
+ * or expires, a refresh does not wake them so a steady state costs only the refreshes of the
+ * leader.
+ *
+ * Leadership is answered locally: a leader counts itself leader until the TTL of its last
+ * successful create or refresh, measured from sending it, has passed.
+ *
+ * <pre>
+ * EtcdLeaderElection election = new EtcdLeaderElection(etcd, "/services/scheduler/leader", instanceId, 10);
+ * election.start();
+ * ...
+ * if (election.isLeader()) {
+ *   ...
+ * }
+ * </pre>
+ */
+public class EtcdLeaderElection implements Closeable {
+  public static final int DEFAULT_TTL = 10;
+
+  private final EtcdClient client;
+  private final String key;
+  private final String candidate;
+  private final int ttl;
+  private final Listener listener;
+  private final Runnable campaignTask;
+  private final Runnable refreshTask;
+
+  private volatile boolean leader;
+  private volatile long leaseDeadline;
+  private volatile boolean started;
+  private volatile boolean closed;
+  private volatile ScheduledFuture<?> scheduled;
+  private volatile EtcdResponsePromise<EtcdKeysResponse> watch;
+
+  /**
+   * Constructor
+   *
+   * @param client    to run with
+   * @param key       of the leader
+   * @param candidate id of this candidate, the value of the key while it leads
+   * @param ttl       of the key in seconds, the max time to take over from a leader which died
+   */
+  public EtcdLeaderElection(EtcdClient client, String key, String candidate, int ttl) {
+    this(client, key, candidate, ttl, null);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param client    to run with
+   * @param key       of the leader
+   * @param candidate id of this candidate, the value of the key while it leads
+   * @param ttl       of the key in seconds, the max time to take over from a leader which died
+   * @param listener  to notify of leadership changes of this candidate, may be null
+   */
+  public EtcdLeaderElection(EtcdClient client, String key, String candidate, int ttl, Listener listener) {
+    if (ttl < 1) {
+      throw new IllegalArgumentException("TTL should be at least 1 second");
+    }
+
+    this.client = client;
+    this.key = key;
+    this.candidate = candidate;
+    this.ttl = ttl;
+    this.listener = listener;
+
+    this.campaignTask = new Runnable() {
+      @Override
+      public void run() {
+        campaign();
+      }
+    };
+    this.refreshTask = new Runnable() {
+      @Override
+      public void run() {
+        refresh();
+      }
+    };
+  }
+
+  /**
+   * Start running for leader
+   *
+   * @return this election
+   */
+  public EtcdLeaderElection start() {
+    if (closed) {
+      throw new IllegalStateException("Election is closed");
+    }
+    if (!started) {
+      started = true;
+      campaign();
+    }
+    return this;
+  }
+
+  /**
+   * Whether this candidate is the leader, without a request to etcd
+   *
+   * @return true if this candidate leads and its lease did not run out
+   */
+  public boolean isLeader() {
+    return leader && leaseDeadline - System.nanoTime() > 0;
+  }
+
+  /**
+   * Get the id of this candidate
+   *
+   * @return candidate id
+   */
+  public String getCandidate() {
+    return candidate;
+  }
+
+  /**
+   * Stop running for leader, and give up the lead if this candidate has it
+   */
+  @Override
+  public void close() {
+    closed = true;
+    ScheduledFuture<?> current = scheduled;
+    if (current != null) {
+      current.cancel(false);
+    }
+    EtcdResponsePromise<EtcdKeysResponse> currentWatch = watch;
+    if (currentWatch != null) {
+      currentWatch.cancel();
+    }
+
+    if (leader) {
+      resign();
+    }
+  }
+
+  /**
+   * Create the key, or watch it when there is a leader
+   */
+  private void campaign() {
+    if (closed) {
+      return;
+    }
+
+    final long sentAt = System.nanoTime();
+    try {
+      client.put(key, candidate).prevExist(false).ttl(ttl).send()
+        .addListener(new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+          @Override
+          public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+            Throwable exception = response.getException();
+            if (exception == null) {
+              elected(sentAt);
+            } else if (exception instanceof EtcdException
+                && ((EtcdException) exception).isErrorCode(EtcdErrorCode.NodeExist)
+                && ((EtcdException) exception).index != null) {
+              follow(((EtcdException) exception).index + 1);
+            } else {
+              schedule(campaignTask);
+            }
+          }
+        });
+    } catch (IOException e) {
+      schedule(campaignTask);
+    }
+  }
+
+  private void elected(long sentAt) {
+    leaseDeadline = sentAt + TimeUnit.SECONDS.toNanos(ttl);
+    if (closed) {
+      // Closed while running
+      resign();
+      return;
+    }
+
+    setLeader(true);
+    schedule(refreshTask);
+  }
+
+  private void refresh() {
+    if (closed) {
+      return;
+    }
+
+    final long sentAt = System.nanoTime();
+    try {
+      client.refresh(key, ttl).prevValue(candidate).send()
+        .addListener(new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+          @Override
+          public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+            Throwable exception = response.getException();
+            if (exception == null) {
+              leaseDeadline = sentAt + TimeUnit.SECONDS.toNanos(ttl);
+              schedule(refreshTask);
+            } else if (exception instanceof EtcdException
+                && (((EtcdException) exception).isErrorCode(EtcdErrorCode.KeyNotFound)
+                || ((EtcdException) exception).isErrorCode(EtcdErrorCode.TestFailed))) {
+              // Expired, or taken over after it expired
+              setLeader(false);
+              campaign();
+            } else {
+              refreshFailed();
+            }
+          }
+        });
+    } catch (IOException e) {
+      refreshFailed();
+    }
+  }
+
+  private void refreshFailed() {
+    if (leaseDeadline - System.nanoTime() > 0) {
+      schedule(refreshTask);
+    } else {
+      setLeader(false);
+      campaign();
+    }
+  }
+
+  /**
+   * Watch the key of the leader and run again once it is gone
+   *
+   * @param waitIndex to watch from
+   */
+  private void follow(long waitIndex) {
+    if (closed) {
+      return;
+    }
+
+    try {
+      EtcdResponsePromise<EtcdKeysResponse> current = client.get(key).waitForChange(waitIndex).send();
+      watch = current;
+      if (closed) {
+        current.cancel();
+        return;
+      }
+
+      current.addListener(new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+        @Override
+        public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+          watch = null;
+          Throwable exception = response.getException();
+          if (exception == null) {
+            EtcdKeysResponse change = response.getNow();
+            if (change.action == EtcdKeyAction.delete
+                || change.action == EtcdKeyAction.expire
+                || change.action == EtcdKeyAction.compareAndDelete) {
+              campaign();
+            } else {
+              follow(change.node.modifiedIndex + 1);
+            }
+          } else if (exception instanceof EtcdException) {
+            // Missed changes, look again
+            campaign();
+          } else {
+            schedule(campaignTask);
+          }
+        }
+      });
+    } catch (IOException e) {
+      schedule(campaignTask);
+    }
+  }
+
+  private void resign() {
+    setLeader(false);
+    try {
+      client.delete(key).prevValue(candidate).send();
+    } catch (IOException | RuntimeException e) {
+      // Also when the client is closed already, the key expires after its TTL
+    }
+  }
+
+  /**
+   * Schedule a refresh, or a new run after a failure, at a third of the TTL
+   *
+   * @param task to schedule
+   */
+  private void schedule(Runnable task) {
+    if (closed) {
+      return;
+    }
+
+    scheduled = GlobalEventExecutor.INSTANCE.schedule(task, TimeUnit.SECONDS.toMillis(ttl) / 3, TimeUnit.MILLISECONDS);
+  }
+
+  private synchronized void setLeader(boolean leader) {
+    if (this.leader == leader) {
+      return;
+    }
+
+    this.leader = leader;
+    if (listener != null) {
+      listener.onLeadershipChange(leader);
+    }
+  }
+
+  /**
+   * Listener to leadership changes of a candidate
+   */
+  public interface Listener {
+    /**
+     * Called when the candidate became leader or lost the lead
+     *
+     * @param leader true if the candidate leads now
+     */
+    void onLeadershipChange(boolean leader);
+  }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j.recipes;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import mousio.client.promises.ResponsePromise;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.requests.EtcdKeyPutRequest;
+import mousio.etcd4j.responses.EtcdErrorCode;
+import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a set of keys with a TTL alive by refreshing them.
+ *
+ * Refreshes are scheduled on a timing wheel, every key at a random offset within its refresh
+ * interval so the refreshes of keys added together do not burst. A key is refreshed a number
+ * of times per TTL, by default three, so a failed refresh is retried before the key expires.
+ * At most a max number of refreshes is in flight, due refreshes beyond it wait a tick. A key
+ * which expired anyway is created again with its original value.
+ *
+ * The refresh lag, the time from a refresh being due until it completed, is kept as a
+ * measure of how close keys come to expiring.
+ *
+ * <pre>
+ * EtcdLeaseKeeper keeper = new EtcdLeaseKeeper(etcd);
+ * keeper.keep("/services/api/instance-1", address, 30);
+ * </pre>
+ */
+public class EtcdLeaseKeeper implements Closeable {
+  public static final int DEFAULT_REFRESHES_PER_TTL = 3;
+  public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+  private static final long TICK_MILLIS = 10;
+
+  private final EtcdClient client;
+  private final Timer timer;
+  private final boolean ownsTimer;
+  private final int refreshesPerTtl;
+  private final int maxInFlight;
+
+  private final ConcurrentMap<String, Lease> leases;
+  private final AtomicInteger inFlight;
+  private volatile boolean closed;
+
+  private final AtomicLong refreshCount;
+  private final AtomicLong failureCount;
+  private final AtomicLong recreateCount;
+  private final AtomicLong totalLagNanos;
+  private final AtomicLong maxLagNanos;
+
+  /**
+   * Constructor
+   *
+   * @param client to refresh the keys with
+   */
+  public EtcdLeaseKeeper(EtcdClient client) {
+    this(client, newTimer(), true, DEFAULT_REFRESHES_PER_TTL, DEFAULT_MAX_IN_FLIGHT);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param client          to refresh the keys with
+   * @param timer           to schedule the refreshes on, not stopped on close
+   * @param refreshesPerTtl number of refreshes per TTL of a key
+   * @param maxInFlight     max number of refreshes in flight
+   */
+  public EtcdLeaseKeeper(EtcdClient client, Timer timer, int refreshesPerTtl, int maxInFlight) {
+    this(client, timer, false, refreshesPerTtl, maxInFlight);
+  }
+
+  private EtcdLeaseKeeper(EtcdClient client, Timer timer, boolean ownsTimer, int refreshesPerTtl, int maxInFlight) {
+    if (refreshesPerTtl < 1 || maxInFlight < 1) {
+      throw new IllegalArgumentException("Refreshes per TTL and max in flight should be at least 1");
+    }
+
+    this.client = client;
+    this.timer = timer;
+    this.ownsTimer = ownsTimer;
+    this.refreshesPerTtl = refreshesPerTtl;
+    this.maxInFlight = maxInFlight;
+    this.leases = new ConcurrentHashMap<>();
+    this.inFlight = new AtomicInteger();
+    this.refreshCount = new AtomicLong();
+    this.failureCount = new AtomicLong();
+    this.recreateCount = new AtomicLong();
+    this.totalLagNanos = new AtomicLong();
+    this.maxLagNanos = new AtomicLong();
+  }
+
+  /**
+   * Put a value with a TTL on a key and keep it alive until it is released
+   *
+   * @param key   to keep
+   * @param value of key, also used to create the key again when it expired
+   * @param ttl   in seconds
+   * @return promise of the put of the key
+   * @throws IOException on fail to send the put
+   */
+  public EtcdResponsePromise<EtcdKeysResponse> keep(String key, String value, int ttl) throws IOException {
+    if (closed) {
+      throw new IllegalStateException("Lease keeper is closed");
+    }
+    if (ttl < 1) {
+      throw new IllegalArgumentException("TTL should be at least 1 second");
+    }
+
+    Lease lease = new Lease(key, value, ttl);
+    Lease previous = leases.put(key, lease);
+    if (previous != null) {
+      previous.cancel();
+    }
+
+    EtcdResponsePromise<EtcdKeysResponse> promise = client.put(key, value).ttl(ttl).send();
+    long interval = lease.intervalNanos();
+    lease.schedule(ThreadLocalRandom.current().nextLong(interval / 2, interval));
+    return promise;
+  }
+
+  /**
+   * Stop refreshing a key and delete it
+   *
+   * @param key to release
+   * @return promise of the delete, or null if the key was not kept
+   * @throws IOException on fail to send the delete
+   */
+  public EtcdResponsePromise<EtcdKeysResponse> release(String key) throws IOException {
+    Lease lease = leases.remove(key);
+    if (lease == null) {
+      return null;
+    }
+
+    lease.cancel();
+    return client.delete(key).send();
+  }
+
+  /**
+   * Get the keys being kept
+   *
+   * @return keys
+   */
+  public Set<String> getKeys() {
+    return leases.keySet();
+  }
+
+  /**
+   * Get the number of successful refreshes
+   *
+   * @return number of refreshes
+   */
+  public long getRefreshCount() {
+    return refreshCount.get();
+  }
+
+  /**
+   * Get the number of failed refreshes
+   *
+   * @return number of failures
+   */
+  public long getFailureCount() {
+    return failureCount.get();
+  }
+
+  /**
+   * Get the number of keys which had expired and were created again
+   *
+   * @return number of recreated keys
+   */
+  public long getRecreateCount() {
+    return recreateCount.get();
+  }
+
+  /**
+   * Get the mean time from a refresh being due until it completed
+   *
+   * @param unit of lag
+   * @return mean refresh lag
+   */
+  public long getMeanLag(TimeUnit unit) {
+    long count = refreshCount.get() + failureCount.get();
+    return count == 0 ? 0 : unit.convert(totalLagNanos.get() / count, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Get the max time from a refresh being due until it completed
+   *
+   * @param unit of lag
+   * @return max refresh lag
+   */
+  public long getMaxLag(TimeUnit unit) {
+    return unit.convert(maxLagNanos.get(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Stop refreshing all keys. The keys are not deleted, they expire after their TTL.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    for (Lease lease : leases.values()) {
+      lease.cancel();
+    }
+    leases.clear();
+
+    if (ownsTimer) {
+      timer.stop();
+    }
+  }
+
+  private void recordLag(long dueNanos) {
+    long lag = System.nanoTime() - dueNanos;
+    totalLagNanos.addAndGet(lag);
+
+    long max;
+    while (lag > (max = maxLagNanos.get())) {
+      if (maxLagNanos.compareAndSet(max, lag)) {
+        break;
+      }
+    }
+  }
+
+  private static Timer newTimer() {
+    return new HashedWheelTimer(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "etcd4j-lease-keeper");
+        thread.setDaemon(true);
+        return thread;
+      }
+    }, TICK_MILLIS, TimeUnit.MILLISECONDS, 512);
+  }
+
+  /**
+   * A kept key and its next refresh
+   */
+  private final class Lease implements TimerTask, ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse> {
+    final String key;
+    final String value;
+    final int ttl;
+
+    volatile Timeout timeout;
+    volatile long dueNanos;
+    volatile boolean cancelled;
+    volatile boolean recreating;
+
+    Lease(String key, String value, int ttl) {
+      this.key = key;
+      this.value = value;
+      this.ttl = ttl;
+    }
+
+    long intervalNanos() {
+      return TimeUnit.SECONDS.toNanos(ttl) / refreshesPerTtl;
+    }
+
+    void schedule(long delayNanos) {
+      if (cancelled || closed) {
+        return;
+      }
+
+      dueNanos = System.nanoTime() + delayNanos;
+      timeout = timer.newTimeout(this, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void cancel() {
+      cancelled = true;
+      Timeout current = timeout;
+      if (current != null) {
+        current.cancel();
+      }
+    }
+
+    @Override
+    public void run(Timeout timeout) {
+      if (cancelled) {
+        return;
+      }
+
+      if (inFlight.incrementAndGet() > maxInFlight) {
+        inFlight.decrementAndGet();
+        // Keep the due time, the wait counts as lag
+        this.timeout = timer.newTimeout(this, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        return;
+      }
+
+      EtcdKeyPutRequest request = recreating
+        ? client.put(key, value).ttl(ttl)
+        : client.refresh(key, ttl);
+      try {
+        request.send().addListener(this);
+      } catch (IOException e) {
+        inFlight.decrementAndGet();
+        failureCount.incrementAndGet();
+        schedule(intervalNanos() / 2);
+      }
+    }
+
+    @Override
+    public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+      inFlight.decrementAndGet();
+      recordLag(dueNanos);
+
+      Throwable exception = response.getException();
+      if (exception == null) {
+        refreshCount.incrementAndGet();
+        if (recreating) {
+          recreating = false;
+          recreateCount.incrementAndGet();
+        }
+        schedule(jitter(intervalNanos()));
+      } else if (!recreating && exception instanceof EtcdException
+          && ((EtcdException) exception).isErrorCode(EtcdErrorCode.KeyNotFound)) {
+        // Expired, create it again right away
+        failureCount.incrementAndGet();
+        recreating = true;
+        schedule(0);
+      } else {
+        failureCount.incrementAndGet();
+        schedule(intervalNanos() / 2);
+      }
+    }
+
+    private long jitter(long interval) {
+      long spread = interval / 10;
+      return spread > 0 ? interval - spread + ThreadLocalRandom.current().nextLong(2 * spread) : interval;
+    }
+  }
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j.recipes;
+
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+import mousio.client.promises.ResponsePromise;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.promises.EtcdCompletablePromise;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.responses.EtcdErrorCode;
+import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A distributed lock on a directory of in-order keys.
+ *
+ * Every acquisition posts an in-order key with a TTL in the directory and holds the lock once
+ * its key is the oldest one. A waiter only watches the key just before its own, so a release
+ * wakes a single waiter instead of all of them, and an acquisition takes a constant number of
+ * requests however many contenders there are. The key of an acquisition is refreshed while
+ * it waits and while it holds the lock, if the process dies the key expires after its TTL.
+ *
+ * <pre>
+ * EtcdLock lock = new EtcdLock(etcd, "/locks/jobs");
+ * EtcdLock.Holder holder = lock.acquire().get();
+ * try {
+ *   ...
+ * } finally {
+ *   holder.release();
+ * }
+ * </pre>
+ *
+ * Cancelling the promise of a pending acquisition removes its key from the queue.
+ */
+public class EtcdLock {
+  public static final int DEFAULT_TTL = 30;
+
+  private final EtcdClient client;
+  private final String dir;
+  private final int ttl;
+
+  /**
+   * Constructor
+   *
+   * @param client to lock with
+   * @param dir    directory of the lock
+   */
+  public EtcdLock(EtcdClient client, String dir) {
+    this(client, dir, DEFAULT_TTL);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param client to lock with
+   * @param dir    directory of the lock
+   * @param ttl    of the keys in the directory in seconds
+   */
+  public EtcdLock(EtcdClient client, String dir, int ttl) {
+    if (ttl < 1) {
+      throw new IllegalArgumentException("TTL should be at least 1 second");
+    }
+
+    this.client = client;
+    this.dir = dir;
+    this.ttl = ttl;
+  }
+
+  /**
+   * Acquire the lock
+   *
+   * @return promise which completes when the lock is held
+   * @throws IOException on fail to send the request for a key
+   */
+  public EtcdResponsePromise<Holder> acquire() throws IOException {
+    return acquire("");
+  }
+
+  /**
+   * Acquire the lock
+   *
+   * @param owner value of the key of this acquisition, to tell who holds the lock
+   * @return promise which completes when the lock is held
+   * @throws IOException on fail to send the request for a key
+   */
+  public EtcdResponsePromise<Holder> acquire(String owner) throws IOException {
+    Holder holder = new Holder();
+    holder.start(owner);
+    return holder.promise;
+  }
+
+  /**
+   * Get the current holder of the lock
+   *
+   * @return promise of the owner, which is free if nobody holds the lock
+   * @throws IOException on fail to send the request
+   */
+  public EtcdResponsePromise<Owner> getOwner() throws IOException {
+    final EtcdCompletablePromise<Owner> promise = new EtcdCompletablePromise<>();
+    client.get(dir).sorted().send().addListener(new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+      @Override
+      public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+        Throwable exception = response.getException();
+        if (exception == null) {
+          List<EtcdKeysResponse.EtcdNode> nodes = response.getNow().node.nodes;
+          promise.complete(new Owner(oldest(nodes)));
+        } else if (exception instanceof EtcdException
+            && ((EtcdException) exception).isErrorCode(EtcdErrorCode.KeyNotFound)) {
+          promise.complete(new Owner(null));
+        } else {
+          promise.fail(exception);
+        }
+      }
+    });
+    return promise;
+  }
+
+  private static EtcdKeysResponse.EtcdNode oldest(List<EtcdKeysResponse.EtcdNode> nodes) {
+    EtcdKeysResponse.EtcdNode oldest = null;
+    if (nodes != null) {
+      for (EtcdKeysResponse.EtcdNode node : nodes) {
+        if (!node.dir && (oldest == null || node.createdIndex < oldest.createdIndex)) {
+          oldest = node;
+        }
+      }
+    }
+    return oldest;
+  }
+
+  private static boolean isTimeout(Throwable exception) {
+    return exception instanceof TimeoutException
+        || exception instanceof io.netty.handler.timeout.TimeoutException;
+  }
+
+  /**
+   * An acquisition of the lock, holding it once its promise completed
+   */
+  public final class Holder {
+    private final EtcdCompletablePromise<Holder> promise;
+
+    private volatile String key;
+    private volatile long createdIndex;
+    private volatile boolean acquired;
+    private volatile boolean released;
+    private volatile boolean lost;
+    private volatile ScheduledFuture<?> refresh;
+    private volatile EtcdResponsePromise<EtcdKeysResponse> watch;
+
+    Holder() {
+      this.promise = new EtcdCompletablePromise<>();
+    }
+
+    /**
+     * Get the in-order key of this acquisition
+     *
+     * @return key
+     */
+    public String getKey() {
+      return key;
+    }
+
+    /**
+     * Whether the lock is held. It is lost when the key expired because it could not be
+     * refreshed in time.
+     *
+     * @return true if the lock is acquired and not released or lost
+     */
+    public boolean isHeld() {
+      return acquired && !released && !lost;
+    }
+
+    /**
+     * Release the lock, or give up waiting for it
+     *
+     * @return promise of the delete of the key, or null if it was already released
+     * @throws IOException on fail to send the delete
+     */
+    public synchronized EtcdResponsePromise<EtcdKeysResponse> release() throws IOException {
+      if (released) {
+        return null;
+      }
+
+      released = true;
+      stopRefresh();
+      EtcdResponsePromise<EtcdKeysResponse> current = watch;
+      if (current != null) {
+        current.cancel();
+      }
+
+      // Without a key yet the key is deleted once it is created
+      return key == null ? null : client.delete(key).send();
+    }
+
+    void start(String owner) throws IOException {
+      promise.addListener(new ResponsePromise.IsSimplePromiseResponseHandler<Holder>() {
+        @Override
+        public void onResponse(ResponsePromise<Holder> response) {
+          if (response.getException() != null) {
+            abandon();
+          }
+        }
+      });
+
+      client.post(dir, owner).ttl(ttl).send().addListener(new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+        @Override
+        public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+          Throwable exception = response.getException();
+          if (exception != null) {
+            promise.fail(exception);
+            return;
+          }
+
+          EtcdKeysResponse.EtcdNode node = response.getNow().node;
+          createdIndex = node.createdIndex;
+          key = node.key;
+          if (released) {
+            // Released while the key was being created
+            deleteQuietly(node.key);
+            return;
+          }
+
+          scheduleRefresh();
+          check();
+        }
+      });
+    }
+
+    /**
+     * Look up the key before this one and wait for it to go, or take the lock if there is none
+     */
+    private void check() {
+      if (released) {
+        return;
+      }
+
+      try {
+        client.get(dir).sorted().send().addListener(new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+          @Override
+          public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+            Throwable exception = response.getException();
+            if (exception != null) {
+              promise.fail(exception);
+            } else {
+              onListed(response.getNow());
+            }
+          }
+        });
+      } catch (IOException e) {
+        promise.fail(e);
+      }
+    }
+
+    private void onListed(EtcdKeysResponse response) {
+      EtcdKeysResponse.EtcdNode predecessor = null;
+      boolean found = false;
+      if (response.node.nodes != null) {
+        for (EtcdKeysResponse.EtcdNode node : response.node.nodes) {
+          if (node.key.equals(key)) {
+            found = true;
+          } else if (!node.dir && node.createdIndex < createdIndex
+              && (predecessor == null || node.createdIndex > predecessor.createdIndex)) {
+            predecessor = node;
+          }
+        }
+      }
+
+      if (!found) {
+        lost = true;
+        promise.fail(new IllegalStateException("Key " + key + " expired before the lock was acquired"));
+      } else if (predecessor == null) {
+        acquired = true;
+        promise.complete(this);
+      } else {
+        long waitIndex = response.etcdIndex != null ? response.etcdIndex + 1 : predecessor.modifiedIndex + 1;
+        awaitChange(predecessor.key, waitIndex);
+      }
+    }
+
+    private void awaitChange(String predecessor, long waitIndex) {
+      try {
+        EtcdResponsePromise<EtcdKeysResponse> current = client.get(predecessor).waitForChange(waitIndex).send();
+        watch = current;
+        if (released) {
+          current.cancel();
+          return;
+        }
+
+        current.addListener(new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+          @Override
+          public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+            watch = null;
+            Throwable exception = response.getException();
+            if (exception == null || isTimeout(exception) || (exception instanceof EtcdException
+                && ((EtcdException) exception).isErrorCode(EtcdErrorCode.EventIndexCleared))) {
+              // Any change of the predecessor or a missed one, look again
+              check();
+            } else if (!released) {
+              promise.fail(exception);
+            }
+          }
+        });
+      } catch (IOException e) {
+        promise.fail(e);
+      }
+    }
+
+    private void scheduleRefresh() {
+      if (released || lost) {
+        return;
+      }
+
+      refresh = GlobalEventExecutor.INSTANCE.schedule(new Runnable() {
+        @Override
+        public void run() {
+          refresh();
+        }
+      }, TimeUnit.SECONDS.toMillis(ttl) / 3, TimeUnit.MILLISECONDS);
+    }
+
+    private void refresh() {
+      if (released) {
+        return;
+      }
+
+      try {
+        client.refresh(key, ttl).send().addListener(new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+          @Override
+          public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+            Throwable exception = response.getException();
+            if (exception instanceof EtcdException
+                && ((EtcdException) exception).isErrorCode(EtcdErrorCode.KeyNotFound)) {
+              lost = true;
+              promise.fail(exception);
+            } else {
+              scheduleRefresh();
+            }
+          }
+        });
+      } catch (IOException e) {
+        scheduleRefresh();
+      }
+    }
+
+    private void stopRefresh() {
+      ScheduledFuture<?> current = refresh;
+      if (current != null) {
+        current.cancel(false);
+      }
+    }
+
+    private void deleteQuietly(String key) {
+      try {
+        client.delete(key).send();
+      } catch (IOException e) {
+        // The key expires after its TTL
+      }
+    }
+
+    private void abandon() {
+      try {
+        release();
+      } catch (IOException e) {
+        // The key expires after its TTL
+      }
+    }
+  }
+
+  /**
+   * The holder of the lock at the time it was read
+   */
+  public static final class Owner {
+    private final EtcdKeysResponse.EtcdNode node;
+
+    Owner(EtcdKeysResponse.EtcdNode node) {
+      this.node = node;
+    }
+
+    /**
+     * Check if nobody held the lock
+     *
+     * @return true if the lock was free
+     */
+    public boolean isFree() {
+      return node == null;
+    }
+
+    /**
+     * Get the key of the holder
+     *
+     * @return oldest key in the directory of the lock, null if the lock was free
+     */
+    public String getKey() {
+      return node == null ? null : node.key;
+    }
+
+    /**
+     * Get the owner given on acquire by the holder
+     *
+     * @return owner, null if the lock was free
+     */
+    public String getValue() {
+      return node == null ? null : node.value;
+    }
+  }
+}
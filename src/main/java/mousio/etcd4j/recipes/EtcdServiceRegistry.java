@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j.recipes;
+
+import mousio.client.promises.ResponsePromise;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.promises.EtcdCompletablePromise;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A registry of service instances, one key with a TTL per instance below
+ * <code>/services/&lt;name&gt;/</code> with the address of the instance as value.
+ *
+ * Instances registered through the registry are kept alive by an {@link EtcdLeaseKeeper}. The
+ * instances of a discovered service are kept in a local snapshot, updated by an
+ * {@link EtcdTreeCache} on the directory of the service. A lookup is a read of the current
+ * snapshot without a request or a lock.
+ *
+ * <pre>
+ * EtcdServiceRegistry registry = new EtcdServiceRegistry(etcd);
+ * registry.register("api", "instance-1", "10.0.0.1:8080");
+ *
+ * EtcdServiceRegistry.Service api = registry.discover("api").get();
+ * List&lt;EtcdServiceRegistry.Instance&gt; instances = api.getInstances();
+ * </pre>
+ */
+public class EtcdServiceRegistry implements Closeable {
+  public static final String DEFAULT_ROOT = "/services";
+  public static final int DEFAULT_TTL = 10;
+
+  private final EtcdClient client;
+  private final String root;
+  private final int ttl;
+  private final EtcdLeaseKeeper keeper;
+  private final ConcurrentMap<String, Service> services;
+
+  /**
+   * Constructor
+   *
+   * @param client to register and discover with
+   */
+  public EtcdServiceRegistry(EtcdClient client) {
+    this(client, DEFAULT_ROOT, DEFAULT_TTL);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param client to register and discover with
+   * @param root   directory of the services
+   * @param ttl    of the keys of registered instances in seconds
+   */
+  public EtcdServiceRegistry(EtcdClient client, String root, int ttl) {
+    this.client = client;
+    this.root = root.endsWith("/") ? root.substring(0, root.length() - 1) : root;
+    this.ttl = ttl;
+    this.keeper = new EtcdLeaseKeeper(client);
+    this.services = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Register an instance of a service and keep it registered until it is deregistered
+   *
+   * @param service  name of service
+   * @param instance id of instance
+   * @param address  of instance
+   * @return promise of the put of the key of the instance
+   * @throws IOException on fail to send the put
+   */
+  public EtcdResponsePromise<EtcdKeysResponse> register(String service, String instance, String address) throws IOException {
+    return keeper.keep(keyOf(service, instance), address, ttl);
+  }
+
+  /**
+   * Deregister an instance of a service
+   *
+   * @param service  name of service
+   * @param instance id of instance
+   * @return promise of the delete of the key of the instance, or null if it was not registered
+   * through this registry
+   * @throws IOException on fail to send the delete
+   */
+  public EtcdResponsePromise<EtcdKeysResponse> deregister(String service, String instance) throws IOException {
+    return keeper.release(keyOf(service, instance));
+  }
+
+  /**
+   * Discover the instances of a service and keep them up to date
+   *
+   * @param service name of service
+   * @return promise which completes once the instances are read. When it fails, discovering the
+   * service again waits for the next read.
+   */
+  public EtcdResponsePromise<Service> discover(String service) {
+    Service discovered = services.get(service);
+    if (discovered == null) {
+      Service created = new Service(service);
+      discovered = services.putIfAbsent(service, created);
+      if (discovered == null) {
+        discovered = created;
+      }
+    }
+    return discovered.start();
+  }
+
+  /**
+   * Get the instances of a service. The first lookup of a service which was not discovered
+   * starts discovering it and returns no instances.
+   *
+   * @param service name of service
+   * @return instances
+   */
+  public List<Instance> getInstances(String service) {
+    Service discovered = services.get(service);
+    if (discovered == null) {
+      discover(service);
+      return Collections.emptyList();
+    }
+    return discovered.getInstances();
+  }
+
+  /**
+   * Deregister all instances registered through this registry and stop discovering
+   */
+  @Override
+  public void close() {
+    for (String key : new ArrayList<>(keeper.getKeys())) {
+      try {
+        keeper.release(key);
+      } catch (IOException e) {
+        // The key expires after its TTL
+      }
+    }
+    keeper.close();
+
+    for (Service service : services.values()) {
+      service.cache.close();
+    }
+  }
+
+  private String keyOf(String service, String instance) {
+    return root + "/" + service + "/" + instance;
+  }
+
+  /**
+   * A discovered service
+   */
+  public final class Service implements EtcdTreeCache.Listener {
+    private final String name;
+    private final String dir;
+    private final EtcdTreeCache cache;
+    private final List<Listener> listeners;
+
+    private volatile List<Instance> instances;
+    private EtcdCompletablePromise<Service> started;
+
+    Service(String name) {
+      this.name = name;
+      this.dir = root + "/" + name;
+      this.cache = new EtcdTreeCache(client, dir).addListener(this);
+      this.listeners = new CopyOnWriteArrayList<>();
+      this.instances = Collections.emptyList();
+    }
+
+    synchronized EtcdResponsePromise<Service> start() {
+      if (started == null) {
+        final EtcdCompletablePromise<Service> promise = new EtcdCompletablePromise<>();
+        started = promise;
+        cache.start().addListener(new ResponsePromise.IsSimplePromiseResponseHandler<EtcdTreeCache>() {
+          @Override
+          public void onResponse(ResponsePromise<EtcdTreeCache> response) {
+            if (response.getException() == null) {
+              promise.complete(Service.this);
+            } else {
+              // Let the next start wait for the next read of the cache
+              synchronized (Service.this) {
+                if (started == promise) {
+                  started = null;
+                }
+              }
+              promise.fail(response.getException());
+            }
+          }
+        });
+      }
+      return started;
+    }
+
+    /**
+     * Get the name of the service
+     *
+     * @return name
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Get the current instances of the service
+     *
+     * @return unmodifiable snapshot of the instances
+     */
+    public List<Instance> getInstances() {
+      return instances;
+    }
+
+    /**
+     * Add a listener to instances being registered, changed or deregistered
+     *
+     * @param listener to add
+     */
+    public void addListener(Listener listener) {
+      listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener
+     *
+     * @param listener to remove
+     */
+    public void removeListener(Listener listener) {
+      listeners.remove(listener);
+    }
+
+    @Override
+    public void onChange(String key, EtcdKeysResponse.EtcdNode node, EtcdKeysResponse.EtcdNode prevNode) {
+      String id = key.substring(dir.length() + 1);
+      if (id.indexOf('/') >= 0) {
+        // Not an instance but a key below one
+        return;
+      }
+
+      Instance current = node == null ? null : new Instance(name, id, node.value);
+      Instance previous = prevNode == null ? null : new Instance(name, id, prevNode.value);
+
+      // Changes come one at a time, replace the snapshot with a copy
+      List<Instance> copy = new ArrayList<>(instances.size() + 1);
+      for (Instance instance : instances) {
+        if (!instance.id.equals(id)) {
+          copy.add(instance);
+        }
+      }
+      if (current != null) {
+        copy.add(current);
+      }
+      instances = Collections.unmodifiableList(copy);
+
+      for (Listener listener : listeners) {
+        listener.onMembershipChange(this, current, previous);
+      }
+    }
+  }
+
+  /**
+   * An instance of a service
+   */
+  public static final class Instance {
+    private final String service;
+    private final String id;
+    private final String address;
+
+    Instance(String service, String id, String address) {
+      this.service = service;
+      this.id = id;
+      this.address = address;
+    }
+
+    public String getService() {
+      return service;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public String getAddress() {
+      return address;
+    }
+
+    @Override
+    public String toString() {
+      return service + "/" + id + "@" + address;
+    }
+  }
+
+  /**
+   * Listener to the membership of a service
+   */
+  public interface Listener {
+    /**
+     * Called when an instance was registered, changed or deregistered
+     *
+     * @param service  of instance
+     * @param instance as registered now, null if it was deregistered
+     * @param previous as registered before, null if it was not registered
+     */
+    void onMembershipChange(Service service, Instance instance, Instance previous);
+  }
+}
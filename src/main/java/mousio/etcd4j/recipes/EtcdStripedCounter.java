@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j.recipes;
+
+import mousio.client.promises.ResponsePromise;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.EtcdUpdate;
+import mousio.etcd4j.promises.EtcdCompletablePromise;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.responses.EtcdErrorCode;
+import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A counter which spreads its increments over stripes, the keys directly below its directory.
+ *
+ * An increment adds to one random stripe with an atomic update, so writers on different
+ * stripes do not conflict. The value is the sum of all stripes, read with one recursive GET
+ * of the directory. A counter starts with one stripe and doubles its stripes, up to the max,
+ * when the share of conflicting writes of its last increments exceeds the threshold. Stripes
+ * are never removed, so counters with different stripe counts on the same directory agree on
+ * its value.
+ *
+ * <pre>
+ * EtcdStripedCounter counter = new EtcdStripedCounter(etcd, "/counters/requests");
+ * counter.increment();
+ * long requests = counter.get().get();
+ * </pre>
+ */
+public class EtcdStripedCounter {
+  public static final int DEFAULT_MAX_STRIPES = 64;
+  public static final double DEFAULT_GROW_THRESHOLD = 0.2;
+
+  // Number of increments over which the conflict rate is measured
+  private static final int WINDOW = 64;
+
+  private final EtcdClient client;
+  private final String dir;
+  private final int maxStripes;
+  private final double growThreshold;
+
+  private final AtomicInteger stripes;
+  private final AtomicLong windowIncrements;
+  private final AtomicLong windowAttempts;
+
+  /**
+   * Constructor
+   *
+   * @param client to send the requests with
+   * @param dir    of the stripes
+   */
+  public EtcdStripedCounter(EtcdClient client, String dir) {
+    this(client, dir, 1, DEFAULT_MAX_STRIPES, DEFAULT_GROW_THRESHOLD);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param client        to send the requests with
+   * @param dir           of the stripes
+   * @param stripes       number of stripes to start with
+   * @param maxStripes    max number of stripes
+   * @param growThreshold share of conflicting writes above which the stripes are doubled
+   */
+  public EtcdStripedCounter(EtcdClient client, String dir, int stripes, int maxStripes, double growThreshold) {
+    if (stripes < 1 || maxStripes < stripes) {
+      throw new IllegalArgumentException("Stripes should be at least 1 and at most max stripes");
+    }
+
+    this.client = client;
+    this.dir = dir.endsWith("/") ? dir.substring(0, dir.length() - 1) : dir;
+    this.maxStripes = maxStripes;
+    this.growThreshold = growThreshold;
+    this.stripes = new AtomicInteger(stripes);
+    this.windowIncrements = new AtomicLong();
+    this.windowAttempts = new AtomicLong();
+  }
+
+  /**
+   * Add one
+   *
+   * @return promise with the response of the write to the stripe
+   */
+  public EtcdResponsePromise<EtcdKeysResponse> increment() {
+    return add(1);
+  }
+
+  /**
+   * Add to the counter
+   *
+   * @param delta to add, may be negative
+   * @return promise with the response of the write to the stripe
+   */
+  public EtcdResponsePromise<EtcdKeysResponse> add(final long delta) {
+    String key = dir + "/" + ThreadLocalRandom.current().nextInt(stripes.get());
+    final EtcdUpdate update = client.update(key, new EtcdUpdate.ValueFunction() {
+      @Override
+      public String apply(String value) {
+        return Long.toString(value == null ? delta : Long.parseLong(value) + delta);
+      }
+    });
+
+    EtcdResponsePromise<EtcdKeysResponse> promise = update.send();
+    promise.addListener(new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+      @Override
+      public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+        record(update.getAttempts());
+      }
+    });
+    return promise;
+  }
+
+  /**
+   * Get the value of the counter, the sum of all stripes
+   *
+   * @return promise with the value
+   */
+  public EtcdResponsePromise<Long> get() {
+    final EtcdCompletablePromise<Long> promise = new EtcdCompletablePromise<>();
+    try {
+      client.getDir(dir).recursive().send().addListener(
+        new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+          @Override
+          public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+            Throwable exception = response.getException();
+            if (exception == null) {
+              try {
+                promise.complete(sum(response.getNow().node));
+              } catch (NumberFormatException e) {
+                promise.fail(e);
+              }
+            } else if (exception instanceof EtcdException
+                && ((EtcdException) exception).isErrorCode(EtcdErrorCode.KeyNotFound)) {
+              promise.complete(0L);
+            } else {
+              promise.fail(exception);
+            }
+          }
+        });
+    } catch (IOException e) {
+      promise.fail(e);
+    }
+
+    return promise;
+  }
+
+  /**
+   * Get the number of stripes this counter increments
+   *
+   * @return number of stripes
+   */
+  public int getStripes() {
+    return stripes.get();
+  }
+
+  private void record(int attempts) {
+    long increments = windowIncrements.incrementAndGet();
+    long writes = windowAttempts.addAndGet(attempts);
+    if (increments < WINDOW) {
+      return;
+    }
+
+    // One thread closes the window
+    if (!windowIncrements.compareAndSet(increments, 0)) {
+      return;
+    }
+    windowAttempts.addAndGet(-writes);
+
+    int current = stripes.get();
+    double conflictRate = (double) (writes - increments) / writes;
+    if (conflictRate > growThreshold && current < maxStripes) {
+      stripes.compareAndSet(current, Math.min(maxStripes, current * 2));
+    }
+  }
+
+  private static long sum(EtcdKeysResponse.EtcdNode node) {
+    long sum = 0;
+    if (node.nodes != null) {
+      for (EtcdKeysResponse.EtcdNode stripe : node.nodes) {
+        if (!stripe.dir && stripe.value != null) {
+          sum += Long.parseLong(stripe.value);
+        }
+      }
+    }
+
+    return sum;
+  }
+}
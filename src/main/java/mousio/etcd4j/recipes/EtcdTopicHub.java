@@ -0,0 +1,510 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j.recipes;
+
+import io.netty.util.concurrent.GlobalEventExecutor;
+import mousio.client.promises.ResponsePromise;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.EtcdWatchPublisher;
+import mousio.etcd4j.promises.EtcdCompletablePromise;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.responses.EtcdKeyAction;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+import org.reactivestreams.Subscriber;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publish and subscribe on topics, with a single watch per topic for all subscribers in the JVM.
+ *
+ * A message is posted as an in-order key with a TTL below the key of its topic. A topic of a
+ * hub watches its key while it has subscribers, decodes every message once and hands it to the
+ * bounded queue of each subscriber. A subscriber whose queue is full misses the message, which
+ * is counted as dropped, the other subscribers are not held up.
+ *
+ * Every subscription keeps track of its lag: the messages waiting in its queue, the messages
+ * it dropped and the time from a message being received by the watch until it was polled.
+ *
+ * <pre>
+ * EtcdTopicHub hub = new EtcdTopicHub(etcd);
+ * EtcdTopicHub.Subscription invalidations = hub.topic("/topics/invalidate").subscribe(1024).get();
+ *
+ * hub.topic("/topics/invalidate").publish("/users/42");
+ * EtcdTopicHub.Message message = invalidations.poll(1, TimeUnit.SECONDS);
+ * </pre>
+ */
+public class EtcdTopicHub implements Closeable {
+  public static final int DEFAULT_TTL = 60;
+
+  private static final long RETRY_DELAY_MILLIS = 1000;
+
+  private final EtcdClient client;
+  private final int ttl;
+  private final ConcurrentMap<String, Topic> topics;
+
+  /**
+   * Constructor
+   *
+   * @param client to publish and watch with
+   */
+  public EtcdTopicHub(EtcdClient client) {
+    this(client, DEFAULT_TTL);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param client to publish and watch with
+   * @param ttl    of published messages in seconds
+   */
+  public EtcdTopicHub(EtcdClient client, int ttl) {
+    if (ttl < 1) {
+      throw new IllegalArgumentException("TTL should be at least 1 second");
+    }
+
+    this.client = client;
+    this.ttl = ttl;
+    this.topics = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Get a topic, the same topic for the same key
+   *
+   * @param key of topic
+   * @return topic
+   */
+  public Topic topic(String key) {
+    Topic topic = topics.get(key);
+    if (topic == null) {
+      Topic created = new Topic(key);
+      topic = topics.putIfAbsent(key, created);
+      if (topic == null) {
+        topic = created;
+      }
+    }
+    return topic;
+  }
+
+  /**
+   * Stop watching all topics and close their subscriptions
+   */
+  @Override
+  public void close() {
+    for (Topic topic : topics.values()) {
+      for (Subscription subscription : topic.subscriptions) {
+        subscription.close();
+      }
+    }
+  }
+
+  /**
+   * A topic, watched while it has subscribers
+   */
+  public final class Topic {
+    private final String key;
+    private final CopyOnWriteArrayList<Subscription> subscriptions;
+
+    private Watch watch;
+    private volatile long nextIndex;
+
+    Topic(String key) {
+      this.key = key;
+      this.subscriptions = new CopyOnWriteArrayList<>();
+      this.nextIndex = -1;
+    }
+
+    /**
+     * Get the key of the topic
+     *
+     * @return key
+     */
+    public String getKey() {
+      return key;
+    }
+
+    /**
+     * Publish a message
+     *
+     * @param message to publish
+     * @return promise of the post of the message
+     * @throws IOException on fail to send the post
+     */
+    public EtcdResponsePromise<EtcdKeysResponse> publish(String message) throws IOException {
+      return client.post(key, message).ttl(ttl).send();
+    }
+
+    /**
+     * Subscribe to the messages of the topic
+     *
+     * @param capacity of the queue of the subscription
+     * @return promise of the subscription, which gets all messages published after the promise
+     * completed. It fails if the topic was not watched yet and its index could not be read.
+     */
+    public EtcdResponsePromise<Subscription> subscribe(int capacity) {
+      final Subscription subscription = new Subscription(this, capacity);
+      final EtcdCompletablePromise<Topic> ready;
+      synchronized (this) {
+        subscriptions.add(subscription);
+        if (watch == null) {
+          watch();
+        }
+        ready = watch.ready;
+      }
+
+      final EtcdCompletablePromise<Subscription> promise = new EtcdCompletablePromise<>();
+      ready.addListener(new ResponsePromise.IsSimplePromiseResponseHandler<Topic>() {
+        @Override
+        public void onResponse(ResponsePromise<Topic> response) {
+          if (response.getException() == null) {
+            promise.complete(subscription);
+          } else {
+            subscription.close();
+            promise.fail(response.getException());
+          }
+        }
+      });
+      return promise;
+    }
+
+    /**
+     * Get the number of subscriptions
+     *
+     * @return number of subscriptions
+     */
+    public int getSubscriptionCount() {
+      return subscriptions.size();
+    }
+
+    synchronized void unsubscribe(Subscription subscription) {
+      if (subscriptions.remove(subscription) && subscriptions.isEmpty() && watch != null) {
+        watch.cancel();
+        watch = null;
+      }
+    }
+
+    /**
+     * Start a watch, continuing after the last message if there was one and else after the
+     * current index of etcd
+     */
+    private void watch() {
+      final Watch started = new Watch(this);
+      watch = started;
+
+      if (nextIndex >= 0) {
+        start(started);
+        return;
+      }
+
+      try {
+        client.get(key).send().addListener(new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+          @Override
+          public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+            Throwable exception = response.getException();
+            Long index = exception == null
+              ? response.getNow().etcdIndex
+              : exception instanceof EtcdException ? ((EtcdException) exception).index : null;
+
+            synchronized (Topic.this) {
+              if (index != null) {
+                nextIndex = index + 1;
+                start(started);
+              } else {
+                stopped(started, exception);
+              }
+            }
+          }
+        });
+      } catch (IOException e) {
+        stopped(started, e);
+      }
+    }
+
+    private void start(Watch started) {
+      if (watch == started) {
+        client.watch(key).recursive().fromIndex(nextIndex)
+          .onOverflow(EtcdWatchPublisher.Overflow.DROP, EtcdWatchPublisher.DEFAULT_BUFFER_SIZE)
+          .subscribe(started);
+      }
+      // Else cancelled while reading the index
+      started.ready.complete(this);
+    }
+
+    private void stopped(Watch started, Throwable cause) {
+      if (watch == started) {
+        watch = null;
+      }
+      started.ready.fail(cause);
+    }
+
+    synchronized void failed(Watch failed) {
+      if (watch != failed) {
+        return;
+      }
+
+      watch = null;
+      GlobalEventExecutor.INSTANCE.schedule(new Runnable() {
+        @Override
+        public void run() {
+          synchronized (Topic.this) {
+            if (watch == null && !subscriptions.isEmpty()) {
+              watch();
+            }
+          }
+        }
+      }, RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    void received(EtcdKeysResponse change) {
+      if (change.node.modifiedIndex != null) {
+        nextIndex = change.node.modifiedIndex + 1;
+      }
+      if (change.action != EtcdKeyAction.create || change.node.dir) {
+        // Messages expiring or removed
+        return;
+      }
+
+      Message message = new Message(change.node.key, change.node.value, change.node.modifiedIndex, System.nanoTime());
+      for (Subscription subscription : subscriptions) {
+        subscription.offer(message);
+      }
+    }
+  }
+
+  /**
+   * The watch of a topic, receiving all its changes
+   */
+  private static final class Watch implements Subscriber<EtcdKeysResponse> {
+    private final Topic topic;
+    private final EtcdCompletablePromise<Topic> ready;
+    private volatile org.reactivestreams.Subscription upstream;
+    private volatile boolean cancelled;
+
+    Watch(Topic topic) {
+      this.topic = topic;
+      this.ready = new EtcdCompletablePromise<>();
+    }
+
+    void cancel() {
+      cancelled = true;
+      org.reactivestreams.Subscription current = upstream;
+      if (current != null) {
+        current.cancel();
+      }
+    }
+
+    @Override
+    public void onSubscribe(org.reactivestreams.Subscription subscription) {
+      upstream = subscription;
+      if (cancelled) {
+        subscription.cancel();
+      } else {
+        subscription.request(Long.MAX_VALUE);
+      }
+    }
+
+    @Override
+    public void onNext(EtcdKeysResponse change) {
+      topic.received(change);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      topic.failed(this);
+    }
+
+    @Override
+    public void onComplete() {
+      topic.failed(this);
+    }
+  }
+
+  /**
+   * A subscription to a topic with a bounded queue of messages
+   */
+  public static final class Subscription implements Closeable {
+    private final Topic topic;
+    private final BlockingQueue<Message> queue;
+
+    private final AtomicLong receivedCount;
+    private final AtomicLong droppedCount;
+    private final AtomicLong polledCount;
+    private final AtomicLong totalDelayNanos;
+    private final AtomicLong maxDelayNanos;
+
+    Subscription(Topic topic, int capacity) {
+      this.topic = topic;
+      this.queue = new ArrayBlockingQueue<>(capacity);
+      this.receivedCount = new AtomicLong();
+      this.droppedCount = new AtomicLong();
+      this.polledCount = new AtomicLong();
+      this.totalDelayNanos = new AtomicLong();
+      this.maxDelayNanos = new AtomicLong();
+    }
+
+    /**
+     * Get the next message
+     *
+     * @return message, or null if there is none
+     */
+    public Message poll() {
+      return polled(queue.poll());
+    }
+
+    /**
+     * Get the next message, waiting for one if there is none
+     *
+     * @param timeout to wait
+     * @param unit    of timeout
+     * @return message, or null if there was none within the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Message poll(long timeout, TimeUnit unit) throws InterruptedException {
+      return polled(queue.poll(timeout, unit));
+    }
+
+    /**
+     * Get the number of messages waiting to be polled
+     *
+     * @return number of messages in the queue
+     */
+    public int getLag() {
+      return queue.size();
+    }
+
+    /**
+     * Get the number of messages received for this subscription, including dropped ones
+     *
+     * @return number of messages
+     */
+    public long getReceivedCount() {
+      return receivedCount.get();
+    }
+
+    /**
+     * Get the number of messages dropped because the queue was full
+     *
+     * @return number of dropped messages
+     */
+    public long getDroppedCount() {
+      return droppedCount.get();
+    }
+
+    /**
+     * Get the mean time from a message being received until it was polled
+     *
+     * @param unit of delay
+     * @return mean delay
+     */
+    public long getMeanDelay(TimeUnit unit) {
+      long polled = polledCount.get();
+      return polled == 0 ? 0 : unit.convert(totalDelayNanos.get() / polled, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the max time from a message being received until it was polled
+     *
+     * @param unit of delay
+     * @return max delay
+     */
+    public long getMaxDelay(TimeUnit unit) {
+      return unit.convert(maxDelayNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stop receiving messages, the watch of the topic stops with its last subscription
+     */
+    @Override
+    public void close() {
+      topic.unsubscribe(this);
+    }
+
+    void offer(Message message) {
+      receivedCount.incrementAndGet();
+      if (!queue.offer(message)) {
+        droppedCount.incrementAndGet();
+      }
+    }
+
+    private Message polled(Message message) {
+      if (message != null) {
+        long delay = System.nanoTime() - message.receivedNanos;
+        polledCount.incrementAndGet();
+        totalDelayNanos.addAndGet(delay);
+
+        long max;
+        while (delay > (max = maxDelayNanos.get())) {
+          if (maxDelayNanos.compareAndSet(max, delay)) {
+            break;
+          }
+        }
+      }
+      return message;
+    }
+  }
+
+  /**
+   * A message published on a topic
+   */
+  public static final class Message {
+    private final String key;
+    private final String value;
+    private final Long index;
+    final long receivedNanos;
+
+    Message(String key, String value, Long index, long receivedNanos) {
+      this.key = key;
+      this.value = value;
+      this.index = index;
+      this.receivedNanos = receivedNanos;
+    }
+
+    /**
+     * Get the in-order key of the message
+     *
+     * @return key
+     */
+    public String getKey() {
+      return key;
+    }
+
+    /**
+     * Get the message
+     *
+     * @return value
+     */
+    public String getValue() {
+      return value;
+    }
+
+    /**
+     * Get the etcd index the message was published at
+     *
+     * @return index
+     */
+    public Long getIndex() {
+      return index;
+    }
+  }
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j.recipes;
+
+import io.netty.util.concurrent.GlobalEventExecutor;
+import mousio.client.promises.ResponsePromise;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.EtcdUtil;
+import mousio.etcd4j.promises.EtcdCompletablePromise;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.responses.EtcdErrorCode;
+import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.responses.EtcdKeyAction;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local copy of the keys below a directory, kept up to date with a watch.
+ *
+ * The directory is read once with a recursive GET, after which one recursive watch applies every
+ * change to the copy. Reads are served from a concurrent map without a request. When etcd cleared
+ * the history the watch was behind on, or the watch failed, the directory is read again and the
+ * differences with the copy are applied as changes, so listeners see every key which was added,
+ * changed or removed whatever happened to the watch.
+ *
+ * Only keys with a value are kept, directories are not. Listeners are called one change at a
+ * time in the order of the changes. A listener which throws is logged and does not stop the cache
+ * or the other listeners.
+ *
+ * <pre>
+ * EtcdTreeCache cache = new EtcdTreeCache(etcd, "/config/app");
+ * cache.start().get();
+ * EtcdKeysResponse.EtcdNode node = cache.get("/config/app/timeout");
+ * </pre>
+ */
+public class EtcdTreeCache implements Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(EtcdTreeCache.class);
+
+  private static final long RETRY_DELAY_MILLIS = 1000;
+
+  private final EtcdClient client;
+  private final String dir;
+  private final ConcurrentMap<String, EtcdKeysResponse.EtcdNode> nodes;
+  private final List<Listener> listeners;
+
+  private final AtomicLong changeCount;
+  private final AtomicLong loadCount;
+
+  private volatile EtcdCompletablePromise<EtcdTreeCache> loaded;
+  private volatile long index;
+  private volatile boolean started;
+  private volatile boolean read;
+  private volatile boolean closed;
+  private volatile EtcdResponsePromise<EtcdKeysResponse> watch;
+
+  /**
+   * Constructor
+   *
+   * @param client to read and watch with
+   * @param dir    to keep a copy of
+   */
+  public EtcdTreeCache(EtcdClient client, String dir) {
+    this.client = client;
+    this.dir = EtcdUtil.normalizeKey(dir);
+    this.nodes = new ConcurrentHashMap<>();
+    this.listeners = new CopyOnWriteArrayList<>();
+    this.loaded = new EtcdCompletablePromise<>();
+    this.changeCount = new AtomicLong();
+    this.loadCount = new AtomicLong();
+  }
+
+  /**
+   * Add a listener to changes. Add it before start to also get the keys read at start as added.
+   *
+   * @param listener to add
+   * @return this cache
+   */
+  public EtcdTreeCache addListener(Listener listener) {
+    listeners.add(listener);
+    return this;
+  }
+
+  /**
+   * Remove a listener
+   *
+   * @param listener to remove
+   */
+  public void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Read the directory and start watching it
+   *
+   * @return promise which completes once the directory is read, or fails if the first read failed.
+   * The cache keeps trying to read the directory after a failure until it is closed, calling start
+   * again returns a promise of the next read.
+   */
+  public EtcdResponsePromise<EtcdTreeCache> start() {
+    if (closed) {
+      throw new IllegalStateException("Tree cache is closed");
+    }
+    // A read which fails at once replaces the promise, this start still reports the failure
+    EtcdResponsePromise<EtcdTreeCache> promise = loaded;
+    if (!started) {
+      started = true;
+      load();
+    }
+    return promise;
+  }
+
+  /**
+   * Get the directory of this cache
+   *
+   * @return directory
+   */
+  public String getDir() {
+    return dir;
+  }
+
+  /**
+   * Get a node from the copy
+   *
+   * @param key of node
+   * @return node, or null if there is no such key with a value below the directory
+   */
+  public EtcdKeysResponse.EtcdNode get(String key) {
+    return nodes.get(EtcdUtil.normalizeKey(key));
+  }
+
+  /**
+   * Get all nodes of the copy
+   *
+   * @return live and unmodifiable view of the nodes
+   */
+  public Collection<EtcdKeysResponse.EtcdNode> getNodes() {
+    return Collections.unmodifiableCollection(nodes.values());
+  }
+
+  /**
+   * Get the number of keys in the copy
+   *
+   * @return number of keys
+   */
+  public int size() {
+    return nodes.size();
+  }
+
+  /**
+   * Get the etcd index the copy is up to date with
+   *
+   * @return index
+   */
+  public long getIndex() {
+    return index;
+  }
+
+  /**
+   * Get the number of changes applied to the copy
+   *
+   * @return number of changes
+   */
+  public long getChangeCount() {
+    return changeCount.get();
+  }
+
+  /**
+   * Get the number of times the directory was read, once at start and again after every watch
+   * which could not be continued
+   *
+   * @return number of reads
+   */
+  public long getLoadCount() {
+    return loadCount.get();
+  }
+
+  /**
+   * Stop watching the directory. The copy is kept as it is.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    EtcdResponsePromise<EtcdKeysResponse> current = watch;
+    if (current != null) {
+      current.cancel();
+    }
+  }
+
+  private void load() {
+    if (closed) {
+      return;
+    }
+
+    loadCount.incrementAndGet();
+    try {
+      client.get(dir).recursive().send().addListener(new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+        @Override
+        public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+          Throwable exception = response.getException();
+          if (exception == null) {
+            loaded(response.getNow().node, response.getNow().etcdIndex);
+          } else if (exception instanceof EtcdException
+              && ((EtcdException) exception).isErrorCode(EtcdErrorCode.KeyNotFound)) {
+            loaded(null, ((EtcdException) exception).index);
+          } else {
+            loadFailed(exception);
+          }
+        }
+      });
+    } catch (IOException e) {
+      loadFailed(e);
+    }
+  }
+
+  private void loadFailed(Throwable exception) {
+    if (!read) {
+      // Not read yet, the next start waits for the retried read
+      EtcdCompletablePromise<EtcdTreeCache> failed = loaded;
+      loaded = new EtcdCompletablePromise<>();
+      failed.fail(exception);
+    }
+    GlobalEventExecutor.INSTANCE.schedule(new Runnable() {
+      @Override
+      public void run() {
+        load();
+      }
+    }, RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Apply the differences between the copy and the directory as read
+   *
+   * @param root      directory as read, null if it does not exist
+   * @param etcdIndex index of the read
+   */
+  private void loaded(EtcdKeysResponse.EtcdNode root, Long etcdIndex) {
+    Map<String, EtcdKeysResponse.EtcdNode> fresh = new HashMap<>();
+    collect(root, fresh);
+
+    for (Iterator<Map.Entry<String, EtcdKeysResponse.EtcdNode>> it = nodes.entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry<String, EtcdKeysResponse.EtcdNode> entry = it.next();
+      if (!fresh.containsKey(entry.getKey())) {
+        it.remove();
+        changed(entry.getKey(), null, entry.getValue());
+      }
+    }
+
+    for (EtcdKeysResponse.EtcdNode node : fresh.values()) {
+      EtcdKeysResponse.EtcdNode prevNode = nodes.put(node.key, node);
+      if (prevNode == null || !prevNode.modifiedIndex.equals(node.modifiedIndex)) {
+        changed(node.key, node, prevNode);
+      }
+    }
+
+    if (etcdIndex != null) {
+      index = etcdIndex;
+    }
+
+    read = true;
+    loaded.complete(this);
+    watch(index + 1);
+  }
+
+  private static void collect(EtcdKeysResponse.EtcdNode node, Map<String, EtcdKeysResponse.EtcdNode> into) {
+    if (node == null) {
+      return;
+    }
+
+    if (!node.dir) {
+      into.put(node.key, node);
+    } else if (node.nodes != null) {
+      for (EtcdKeysResponse.EtcdNode child : node.nodes) {
+        collect(child, into);
+      }
+    }
+  }
+
+  private void watch(long waitIndex) {
+    if (closed) {
+      return;
+    }
+
+    try {
+      EtcdResponsePromise<EtcdKeysResponse> current = client.get(dir).recursive().waitForChange(waitIndex).send();
+      watch = current;
+      if (closed) {
+        current.cancel();
+        return;
+      }
+
+      current.addListener(new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+        @Override
+        public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+          watch = null;
+          if (closed) {
+            return;
+          }
+
+          Throwable exception = response.getException();
+          if (exception == null) {
+            apply(response.getNow());
+            watch(index + 1);
+          } else if (exception instanceof TimeoutException
+              || exception instanceof io.netty.handler.timeout.TimeoutException) {
+            watch(index + 1);
+          } else if (exception instanceof EtcdException
+              && ((EtcdException) exception).isErrorCode(EtcdErrorCode.EventIndexCleared)) {
+            // Too far behind to catch up from the history, read it all again
+            load();
+          } else {
+            loadFailed(exception);
+          }
+        }
+      });
+    } catch (IOException e) {
+      loadFailed(e);
+    }
+  }
+
+  /**
+   * Apply a change reported by the watch
+   *
+   * @param event change
+   */
+  private void apply(EtcdKeysResponse event) {
+    EtcdKeysResponse.EtcdNode node = event.node;
+    if (node.modifiedIndex != null) {
+      index = node.modifiedIndex;
+    }
+
+    boolean removed = event.action == EtcdKeyAction.delete
+      || event.action == EtcdKeyAction.expire
+      || event.action == EtcdKeyAction.compareAndDelete;
+
+    if (!removed) {
+      if (!node.dir) {
+        changed(node.key, node, nodes.put(node.key, node));
+      }
+      return;
+    }
+
+    EtcdKeysResponse.EtcdNode prevNode = nodes.remove(node.key);
+    if (prevNode != null) {
+      changed(node.key, null, prevNode);
+    } else {
+      // A directory, everything below it is gone too
+      String prefix = node.key + "/";
+      for (Iterator<Map.Entry<String, EtcdKeysResponse.EtcdNode>> it = nodes.entrySet().iterator(); it.hasNext(); ) {
+        Map.Entry<String, EtcdKeysResponse.EtcdNode> entry = it.next();
+        if (entry.getKey().startsWith(prefix)) {
+          it.remove();
+          changed(entry.getKey(), null, entry.getValue());
+        }
+      }
+    }
+  }
+
+  private void changed(String key, EtcdKeysResponse.EtcdNode node, EtcdKeysResponse.EtcdNode prevNode) {
+    changeCount.incrementAndGet();
+    for (Listener listener : listeners) {
+      try {
+        listener.onChange(key, node, prevNode);
+      } catch (RuntimeException e) {
+        logger.warn("Listener failed on change of {}", key, e);
+      }
+    }
+  }
+
+  /**
+   * Listener to changes of the keys in a tree cache
+   */
+  public interface Listener {
+    /**
+     * Called when a key was added, changed or removed
+     *
+     * @param key      which changed
+     * @param node     new node, null if the key was removed
+     * @param prevNode previous node, null if the key was added
+     */
+    void onChange(String key, EtcdKeysResponse.EtcdNode node, EtcdKeysResponse.EtcdNode prevNode);
+  }
+}
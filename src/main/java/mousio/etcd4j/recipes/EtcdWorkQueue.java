@@ -0,0 +1,403 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j.recipes;
+
+import mousio.client.promises.ResponsePromise;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.promises.EtcdCompletablePromise;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.responses.EtcdErrorCode;
+import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A work queue of in-order keys, claimed by workers in batches.
+ *
+ * Items are posted as in-order keys below <code>&lt;dir&gt;/items</code>. A worker claims
+ * items by creating a claim key with a TTL for each of them below
+ * <code>&lt;dir&gt;/claims</code>. A claim round is one sorted recursive GET of the queue and
+ * the creates of the claims, all sent at once, each followed by a GET of its item to check it
+ * was not completed in the meantime. To keep workers from all going for the oldest
+ * items, a round picks its items at random from a window of the oldest unclaimed items. A claim
+ * is a lease: once its TTL, the visibility timeout, passes without the item being completed the
+ * item can be claimed again, so items of a worker which died are taken over by the others.
+ *
+ * Delivery is at least once: an item whose claim expired while it was being processed can be
+ * processed twice.
+ *
+ * <pre>
+ * EtcdWorkQueue queue = new EtcdWorkQueue(etcd, "/queues/mail");
+ * queue.offer(message);
+ *
+ * for (EtcdWorkQueue.Item item : queue.claim(16).get()) {
+ *   send(item.getValue());
+ *   item.complete();
+ * }
+ * </pre>
+ */
+public class EtcdWorkQueue {
+  public static final int DEFAULT_VISIBILITY_TIMEOUT = 30;
+  public static final int DEFAULT_WINDOW = 64;
+
+  private final EtcdClient client;
+  private final String dir;
+  private final String itemsDir;
+  private final String claimsDir;
+  private final int visibilityTimeout;
+  private final int window;
+  private final String owner;
+
+  private final AtomicLong claimCount;
+  private final AtomicLong conflictCount;
+
+  /**
+   * Constructor
+   *
+   * @param client to work with
+   * @param dir    of queue
+   */
+  public EtcdWorkQueue(EtcdClient client, String dir) {
+    this(client, dir, DEFAULT_VISIBILITY_TIMEOUT, DEFAULT_WINDOW);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param client            to work with
+   * @param dir               of queue
+   * @param visibilityTimeout TTL of a claim in seconds, after which the item can be claimed again
+   * @param window            number of oldest unclaimed items to pick the items of a claim from
+   */
+  public EtcdWorkQueue(EtcdClient client, String dir, int visibilityTimeout, int window) {
+    if (visibilityTimeout < 1 || window < 1) {
+      throw new IllegalArgumentException("Visibility timeout and window should be at least 1");
+    }
+
+    this.client = client;
+    this.dir = dir.endsWith("/") ? dir.substring(0, dir.length() - 1) : dir;
+    this.itemsDir = this.dir + "/items";
+    this.claimsDir = this.dir + "/claims";
+    this.visibilityTimeout = visibilityTimeout;
+    this.window = window;
+    this.owner = UUID.randomUUID().toString();
+    this.claimCount = new AtomicLong();
+    this.conflictCount = new AtomicLong();
+  }
+
+  /**
+   * Add an item to the queue
+   *
+   * @param value of item
+   * @return promise of the post of the item
+   * @throws IOException on fail to send the post
+   */
+  public EtcdResponsePromise<EtcdKeysResponse> offer(String value) throws IOException {
+    return client.post(itemsDir, value).send();
+  }
+
+  /**
+   * Claim items of the queue
+   *
+   * @param max number of items to claim
+   * @return promise of the claimed items, oldest first, empty if there were no unclaimed items
+   * or all of them were claimed by others in the meantime
+   * @throws IOException on fail to send the GET of the queue
+   */
+  public EtcdResponsePromise<List<Item>> claim(final int max) throws IOException {
+    if (max < 1) {
+      throw new IllegalArgumentException("Max items should be at least 1");
+    }
+
+    final EtcdCompletablePromise<List<Item>> promise = new EtcdCompletablePromise<>();
+    client.get(dir).recursive().sorted().send()
+      .addListener(new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+        @Override
+        public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+          Throwable exception = response.getException();
+          if (exception == null) {
+            claim(candidates(response.getNow().node, max), promise);
+          } else if (exception instanceof EtcdException
+              && ((EtcdException) exception).isErrorCode(EtcdErrorCode.KeyNotFound)) {
+            promise.complete(Collections.<Item>emptyList());
+          } else {
+            promise.fail(exception);
+          }
+        }
+      });
+    return promise;
+  }
+
+  /**
+   * Get the number of items claimed through this queue
+   *
+   * @return number of claims
+   */
+  public long getClaimCount() {
+    return claimCount.get();
+  }
+
+  /**
+   * Get the number of items which were claimed by another worker before this one could
+   *
+   * @return number of conflicts
+   */
+  public long getConflictCount() {
+    return conflictCount.get();
+  }
+
+  /**
+   * Pick the items to claim at random from the oldest unclaimed items
+   *
+   * @param queue directory of the queue
+   * @param max   number of items
+   * @return items to claim, oldest first
+   */
+  private List<EtcdKeysResponse.EtcdNode> candidates(EtcdKeysResponse.EtcdNode queue, int max) {
+    List<EtcdKeysResponse.EtcdNode> items = Collections.emptyList();
+    Set<String> claimed = new HashSet<>();
+    if (queue.nodes != null) {
+      for (EtcdKeysResponse.EtcdNode node : queue.nodes) {
+        if (node.key.equals(itemsDir) && node.nodes != null) {
+          items = node.nodes;
+        } else if (node.key.equals(claimsDir) && node.nodes != null) {
+          for (EtcdKeysResponse.EtcdNode claim : node.nodes) {
+            claimed.add(nameOf(claim.key));
+          }
+        }
+      }
+    }
+
+    List<EtcdKeysResponse.EtcdNode> unclaimed = new ArrayList<>();
+    for (EtcdKeysResponse.EtcdNode item : items) {
+      if (!item.dir && !claimed.contains(nameOf(item.key))) {
+        unclaimed.add(item);
+        if (unclaimed.size() == Math.max(window, max)) {
+          break;
+        }
+      }
+    }
+
+    if (unclaimed.size() <= max) {
+      return unclaimed;
+    }
+
+    // A random selection which keeps the order of the window
+    List<EtcdKeysResponse.EtcdNode> picked = new ArrayList<>(max);
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int needed = max;
+    for (int i = 0; i < unclaimed.size() && needed > 0; i++) {
+      if (random.nextInt(unclaimed.size() - i) < needed) {
+        picked.add(unclaimed.get(i));
+        needed--;
+      }
+    }
+    return picked;
+  }
+
+  /**
+   * Send the creates of the claims of all items at once and complete with the ones which succeeded
+   */
+  private void claim(List<EtcdKeysResponse.EtcdNode> candidates, EtcdCompletablePromise<List<Item>> promise) {
+    if (candidates.isEmpty()) {
+      promise.complete(Collections.<Item>emptyList());
+      return;
+    }
+
+    ClaimRound round = new ClaimRound(candidates.size(), promise);
+    for (int i = 0; i < candidates.size(); i++) {
+      round.send(i, candidates.get(i));
+    }
+  }
+
+  private String claimKeyOf(String itemKey) {
+    return claimsDir + "/" + nameOf(itemKey);
+  }
+
+  private static String nameOf(String key) {
+    return key.substring(key.lastIndexOf('/') + 1);
+  }
+
+  /**
+   * The claims of one round, which completes once all of them are answered
+   */
+  private final class ClaimRound {
+    private final Item[] claimed;
+    private final AtomicInteger pending;
+    private final EtcdCompletablePromise<List<Item>> promise;
+
+    ClaimRound(int size, EtcdCompletablePromise<List<Item>> promise) {
+      this.claimed = new Item[size];
+      this.pending = new AtomicInteger(size);
+      this.promise = promise;
+    }
+
+    void send(final int slot, final EtcdKeysResponse.EtcdNode item) {
+      try {
+        client.put(claimKeyOf(item.key), owner).prevExist(false).ttl(visibilityTimeout).send()
+          .addListener(new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+            @Override
+            public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+              if (response.getException() == null) {
+                verify(slot, item);
+              } else {
+                settle(slot, null);
+              }
+            }
+          });
+      } catch (IOException e) {
+        settle(slot, null);
+      }
+    }
+
+    /**
+     * Check the item still exists. The queue was read before the claim, a worker could have
+     * completed the item and removed its claim in between.
+     */
+    private void verify(final int slot, final EtcdKeysResponse.EtcdNode item) {
+      final Item claimed = new Item(item.key, item.value, claimKeyOf(item.key));
+      try {
+        client.get(item.key).send().addListener(new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+          @Override
+          public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+            if (response.getException() == null) {
+              settle(slot, claimed);
+            } else {
+              releaseQuietly(claimed);
+              settle(slot, null);
+            }
+          }
+        });
+      } catch (IOException e) {
+        releaseQuietly(claimed);
+        settle(slot, null);
+      }
+    }
+
+    private void releaseQuietly(Item item) {
+      try {
+        item.release();
+      } catch (IOException e) {
+        // The claim expires after the visibility timeout
+      }
+    }
+
+    private void settle(int slot, Item item) {
+      if (item != null) {
+        claimCount.incrementAndGet();
+        claimed[slot] = item;
+      } else {
+        // Claimed or completed by another worker, or the claim could not be sent
+        conflictCount.incrementAndGet();
+      }
+
+      // The decrement publishes the slot to the last one to settle
+      if (pending.decrementAndGet() == 0) {
+        List<Item> items = new ArrayList<>(claimed.length);
+        for (Item claimedItem : claimed) {
+          if (claimedItem != null) {
+            items.add(claimedItem);
+          }
+        }
+        promise.complete(items);
+      }
+    }
+  }
+
+  /**
+   * A claimed item
+   */
+  public final class Item {
+    private final String key;
+    private final String value;
+    private final String claimKey;
+
+    Item(String key, String value, String claimKey) {
+      this.key = key;
+      this.value = value;
+      this.claimKey = claimKey;
+    }
+
+    /**
+     * Get the in-order key of the item
+     *
+     * @return key
+     */
+    public String getKey() {
+      return key;
+    }
+
+    /**
+     * Get the value of the item
+     *
+     * @return value
+     */
+    public String getValue() {
+      return value;
+    }
+
+    /**
+     * Remove the item from the queue, and its claim
+     *
+     * @return promise of the delete of the item
+     * @throws IOException on fail to send the delete
+     */
+    public EtcdResponsePromise<EtcdKeysResponse> complete() throws IOException {
+      EtcdResponsePromise<EtcdKeysResponse> promise = client.delete(key).send();
+      promise.addListener(new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+        @Override
+        public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+          try {
+            release();
+          } catch (IOException e) {
+            // The claim expires after the visibility timeout
+          }
+        }
+      });
+      return promise;
+    }
+
+    /**
+     * Give the item back to the queue without waiting for the visibility timeout
+     *
+     * @return promise of the delete of the claim, fails if the claim is no longer held
+     * @throws IOException on fail to send the delete
+     */
+    public EtcdResponsePromise<EtcdKeysResponse> release() throws IOException {
+      return client.delete(claimKey).prevValue(owner).send();
+    }
+
+    /**
+     * Extend the claim by another visibility timeout
+     *
+     * @return promise of the refresh of the claim, fails if the claim is no longer held
+     * @throws IOException on fail to send the refresh
+     */
+    public EtcdResponsePromise<EtcdKeysResponse> extend() throws IOException {
+      return client.refresh(claimKey, visibilityTimeout).prevValue(owner).send();
+    }
+  }
+}
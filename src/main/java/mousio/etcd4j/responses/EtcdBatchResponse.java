@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j.responses;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Etcd Batch Response
+ *
+ * Holds the responses and errors of all requests of a batch by key.
+ */
+public final class EtcdBatchResponse implements EtcdResponse {
+  private final Map<String, EtcdKeysResponse> responses;
+  private final Map<String, Throwable> errors;
+
+  /**
+   * Constructor
+   *
+   * @param responses of the requests which succeeded by key
+   * @param errors    of the requests which failed by key
+   */
+  public EtcdBatchResponse(Map<String, EtcdKeysResponse> responses, Map<String, Throwable> errors) {
+    this.responses = Collections.unmodifiableMap(responses);
+    this.errors = Collections.unmodifiableMap(errors);
+  }
+
+  /**
+   * Get the responses of the requests which succeeded
+   *
+   * @return responses by key in the order the requests were added
+   */
+  public Map<String, EtcdKeysResponse> getResponses() {
+    return responses;
+  }
+
+  /**
+   * Get the nodes of the requests which succeeded
+   *
+   * @return nodes by key in the order the requests were added
+   */
+  public Map<String, EtcdKeysResponse.EtcdNode> getNodes() {
+    Map<String, EtcdKeysResponse.EtcdNode> nodes = new LinkedHashMap<>();
+    for (Map.Entry<String, EtcdKeysResponse> entry : responses.entrySet()) {
+      nodes.put(entry.getKey(), entry.getValue().node);
+    }
+
+    return nodes;
+  }
+
+  /**
+   * Get the errors of the requests which failed
+   *
+   * @return errors by key in the order the requests were added
+   */
+  public Map<String, Throwable> getErrors() {
+    return errors;
+  }
+
+  /**
+   * Get the response for a key
+   *
+   * @param key of request
+   * @return response or null if the request failed
+   */
+  public EtcdKeysResponse getResponse(String key) {
+    return responses.get(key);
+  }
+
+  /**
+   * Get the error for a key
+   *
+   * @param key of request
+   * @return error or null if the request succeeded
+   */
+  public Throwable getError(String key) {
+    return errors.get(key);
+  }
+
+  /**
+   * Check if all requests succeeded
+   *
+   * @return true if no request failed
+   */
+  public boolean isSuccess() {
+    return errors.isEmpty();
+  }
+
+  /**
+   * Throw the error of the first failed request in the way a single request would throw it
+   *
+   * @throws IOException                  on fail
+   * @throws EtcdException                on etcd fail
+   * @throws EtcdAuthenticationException  on authentication failure
+   * @throws TimeoutException             on Timeout
+   */
+  public void throwFirstError() throws IOException, EtcdException, EtcdAuthenticationException, TimeoutException {
+    if (errors.isEmpty()) {
+      return;
+    }
+
+    Throwable error = errors.values().iterator().next();
+    if (error instanceof EtcdException) {
+      throw (EtcdException) error;
+    } else if (error instanceof EtcdAuthenticationException) {
+      throw (EtcdAuthenticationException) error;
+    } else if (error instanceof IOException) {
+      throw (IOException) error;
+    } else if (error instanceof TimeoutException) {
+      throw (TimeoutException) error;
+    } else if (error instanceof io.netty.handler.timeout.TimeoutException) {
+      throw new TimeoutException();
+    } else {
+      throw new IOException(error);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "EtcdBatchResponse{" +
+      "responses=" + responses.size() +
+      ", errors=" + errors.keySet() +
+      '}';
+  }
+}
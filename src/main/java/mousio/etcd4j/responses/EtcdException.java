@@ -20,6 +20,9 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
  * Exception on etcd failures
+ *
+ * The failures which are expected in normal operation, KeyNotFound, TestFailed and NodeExist,
+ * are created without a stack trace as filling it in costs more than decoding the failure.
  */
 @JsonIgnoreProperties( ignoreUnknown = true )
 public class EtcdException extends Exception {
@@ -47,12 +50,39 @@ public class EtcdException extends Exception {
     @JsonProperty("cause") String cause,
     @JsonProperty("message") String message,
     @JsonProperty("index") Long index) {
+    super(null, null, true, !isExpected(errorCode));
     this.errorCode = errorCode;
     this.etcdCause = cause;
     this.etcdMessage = message;
     this.index = index;
   }
 
+  /**
+   * Create the exception etcd responds with when a key does not exist, for keys found
+   * missing by the client itself
+   *
+   * @param key   which was not found
+   * @param index the data index
+   * @return EtcdException
+   */
+  public static EtcdException keyNotFound(String key, Long index) {
+    return new EtcdException(EtcdErrorCode.KeyNotFound, key, "Key not found", index);
+  }
+
+  /**
+   * Check if an error code is expected in normal operation, for example in a compare-and-swap
+   * loop or an existence check
+   *
+   * @param errorCode to check
+   * @return true for KeyNotFound, TestFailed and NodeExist
+   */
+  public static boolean isExpected(Integer errorCode) {
+    return errorCode != null
+        && (errorCode == EtcdErrorCode.KeyNotFound
+        || errorCode == EtcdErrorCode.TestFailed
+        || errorCode == EtcdErrorCode.NodeExist);
+  }
+
   @Override
   public String getMessage() {
     return String.format("[%s]: %s%s%s",
@@ -79,6 +79,22 @@ public final class EtcdKeysResponse implements EtcdHeaderAwareResponse {
     }
   }
 
+  /**
+   * Create a response for a node contained in this response, with the headers of this response.
+   * Used to answer the read of a key from a read of a directory above it.
+   *
+   * @param node contained in this response
+   * @return EtcdKeysResponse
+   */
+  public EtcdKeysResponse withNode(EtcdNode node) {
+    EtcdKeysResponse response = new EtcdKeysResponse(action.name(), node, null);
+    response.etcdClusterId = etcdClusterId;
+    response.etcdIndex = etcdIndex;
+    response.raftIndex = raftIndex;
+    response.raftTerm = raftTerm;
+    return response;
+  }
+
   public EtcdKeyAction getAction() {
     return action;
   }
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j.responses;
+
+import mousio.client.promises.ResponsePromise;
+
+/**
+ * The outcome of a request as a value: the response or the failure with its etcd error code.
+ *
+ * Use it where failures like KeyNotFound or TestFailed are part of the normal flow, so they can
+ * be checked without catching exceptions.
+ *
+ * <pre>
+ * EtcdResult&lt;EtcdKeysResponse&gt; result = etcd.put(key, value).prevIndex(index).send().result();
+ * if (result.isErrorCode(EtcdErrorCode.TestFailed)) {
+ *   // read and try again
+ * }
+ * </pre>
+ *
+ * @param <T> Type of response
+ */
+public final class EtcdResult<T> {
+  private final T value;
+  private final Throwable error;
+
+  private EtcdResult(T value, Throwable error) {
+    this.value = value;
+    this.error = error;
+  }
+
+  /**
+   * Create a successful result
+   *
+   * @param value of result
+   * @param <T>   Type of response
+   * @return EtcdResult
+   */
+  public static <T> EtcdResult<T> success(T value) {
+    return new EtcdResult<>(value, null);
+  }
+
+  /**
+   * Create a failed result
+   *
+   * @param error of result
+   * @param <T>   Type of response
+   * @return EtcdResult
+   */
+  public static <T> EtcdResult<T> failure(Throwable error) {
+    return new EtcdResult<>(null, error);
+  }
+
+  /**
+   * Get the result of a completed promise, for use in listeners
+   *
+   * @param promise which completed
+   * @param <T>     Type of response
+   * @return EtcdResult
+   */
+  public static <T> EtcdResult<T> of(ResponsePromise<T> promise) {
+    Throwable error = promise.getException();
+    return error != null ? EtcdResult.<T>failure(error) : success(promise.getNow());
+  }
+
+  /**
+   * Check if the request succeeded
+   *
+   * @return true on success
+   */
+  public boolean isSuccess() {
+    return error == null;
+  }
+
+  /**
+   * Get the response
+   *
+   * @return response, or null on failure
+   */
+  public T getValue() {
+    return value;
+  }
+
+  /**
+   * Get the failure
+   *
+   * @return failure, or null on success
+   */
+  public Throwable getError() {
+    return error;
+  }
+
+  /**
+   * Get the etcd error code of the failure
+   *
+   * @return etcd error code, or 0 on success or a failure which is not an etcd error
+   */
+  public int getErrorCode() {
+    return error instanceof EtcdException ? ((EtcdException) error).errorCode : 0;
+  }
+
+  /**
+   * Check the etcd error code of the failure
+   *
+   * @param code to check
+   * @return true if the request failed with the etcd error code
+   */
+  public boolean isErrorCode(int code) {
+    return getErrorCode() == code;
+  }
+
+  @Override
+  public String toString() {
+    return error == null ? "EtcdResult{" + value + "}" : "EtcdResult{error=" + error + "}";
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j.transport;
+
+import mousio.client.promises.ResponsePromise;
+import mousio.etcd4j.promises.EtcdCompletablePromise;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.requests.EtcdKeyGetRequest;
+import mousio.etcd4j.requests.EtcdRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client which coalesces identical in-flight GET requests.
+ *
+ * Non watch GET requests with the same URI and request parameters which are sent while an
+ * equal request is still in flight share the network request and the decoded response
+ * of the first one. Every caller still gets its own promise.
+ *
+ * <pre>
+ * EtcdClient etcd = new EtcdClient(new EtcdCoalescingClient(new EtcdNettyClient(config, uris)));
+ * </pre>
+ */
+public class EtcdCoalescingClient implements EtcdClientImpl {
+  private final EtcdClientImpl delegate;
+  private final ConcurrentMap<String, InFlight<?>> inFlight;
+
+  private final AtomicLong requestCount;
+  private final AtomicLong coalescedCount;
+
+  /**
+   * Constructor
+   *
+   * @param delegate client which sends the requests which are not coalesced
+   */
+  public EtcdCoalescingClient(EtcdClientImpl delegate) {
+    this.delegate = delegate;
+    this.inFlight = new ConcurrentHashMap<>();
+    this.requestCount = new AtomicLong();
+    this.coalescedCount = new AtomicLong();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <R> EtcdResponsePromise<R> send(EtcdRequest<R> request) throws IOException {
+    final String key = coalesceKey(request);
+    if (key == null) {
+      return delegate.send(request);
+    }
+
+    requestCount.incrementAndGet();
+
+    final InFlight<R> created = new InFlight<>(key);
+    final InFlight<?> existing = inFlight.putIfAbsent(key, created);
+    if (existing != null) {
+      coalescedCount.incrementAndGet();
+      // Same uri and parameters so the response is decoded to the same type
+      return ((InFlight<R>) existing).join();
+    }
+
+    try {
+      EtcdResponsePromise<R> promise = delegate.send(request);
+      promise.addListener(created);
+      return promise;
+    } catch (IOException e) {
+      created.complete(null, e);
+      throw e;
+    }
+  }
+
+  /**
+   * Get the number of requests which could have been coalesced
+   *
+   * @return number of non watch GET requests sent through this client
+   */
+  public long getRequestCount() {
+    return requestCount.get();
+  }
+
+  /**
+   * Get the number of requests which were answered by a request already in flight
+   *
+   * @return number of coalesced requests
+   */
+  public long getCoalescedCount() {
+    return coalescedCount.get();
+  }
+
+  /**
+   * Get the ratio of coalesced requests
+   *
+   * @return coalesced requests divided by all requests which could have been coalesced
+   */
+  public double getCoalesceRatio() {
+    long requests = requestCount.get();
+    return requests == 0 ? 0.0 : (double) coalescedCount.get() / requests;
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+  /**
+   * Get the key to coalesce the request on
+   *
+   * @param request to get key for
+   * @return key or null if request should not be coalesced
+   */
+  private static String coalesceKey(EtcdRequest<?> request) {
+    if (!(request instanceof EtcdKeyGetRequest)) {
+      return null;
+    }
+
+    // Watches wait for a future change and requests with a promise are being re-sent
+    EtcdKeyGetRequest getRequest = (EtcdKeyGetRequest) request;
+    if (getRequest.shouldBeWaiting() || getRequest.getPromise() != null) {
+      return null;
+    }
+
+    StringBuilder builder = new StringBuilder(getRequest.getUri());
+    Map<String, String> params = getRequest.getRequestParams();
+    if (params != null && !params.isEmpty()) {
+      builder.append('?').append(new TreeMap<>(params));
+    }
+
+    return builder.toString();
+  }
+
+  /**
+   * A request in flight and the promises waiting on it
+   *
+   * @param <R> Response type
+   */
+  private final class InFlight<R> implements ResponsePromise.IsSimplePromiseResponseHandler<R> {
+    private final String key;
+
+    private List<EtcdCompletablePromise<R>> followers;
+    private boolean done;
+    private R response;
+    private Throwable exception;
+
+    InFlight(String key) {
+      this.key = key;
+      this.followers = new ArrayList<>();
+    }
+
+    synchronized EtcdResponsePromise<R> join() {
+      EtcdCompletablePromise<R> promise = new EtcdCompletablePromise<>();
+      if (done) {
+        settle(promise);
+      } else {
+        followers.add(promise);
+      }
+
+      return promise;
+    }
+
+    @Override
+    public void onResponse(ResponsePromise<R> promise) {
+      complete(promise.getNow(), promise.getException());
+    }
+
+    void complete(R response, Throwable exception) {
+      if (response == null && exception == null) {
+        return;
+      }
+
+      final List<EtcdCompletablePromise<R>> waiting;
+      synchronized (this) {
+        if (done) {
+          return;
+        }
+
+        this.done = true;
+        this.response = response;
+        this.exception = exception;
+
+        waiting = followers;
+        followers = null;
+      }
+
+      // Requests arriving from now on start a new request
+      inFlight.remove(key, this);
+
+      for (EtcdCompletablePromise<R> promise : waiting) {
+        settle(promise);
+      }
+    }
+
+    private void settle(EtcdCompletablePromise<R> promise) {
+      if (response != null) {
+        promise.complete(response);
+      } else {
+        promise.fail(exception);
+      }
+    }
+  }
+}
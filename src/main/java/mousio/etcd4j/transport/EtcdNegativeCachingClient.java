@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j.transport;
+
+import io.netty.handler.codec.http.HttpMethod;
+import mousio.client.promises.ResponsePromise;
+import mousio.etcd4j.EtcdUtil;
+import mousio.etcd4j.promises.EtcdCompletablePromise;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.requests.EtcdKeyGetRequest;
+import mousio.etcd4j.requests.EtcdKeyRequest;
+import mousio.etcd4j.requests.EtcdRequest;
+import mousio.etcd4j.responses.EtcdErrorCode;
+import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client which caches KeyNotFound responses for a short time.
+ *
+ * Repeated GET requests on a key which was recently not found are answered locally with the
+ * exception of the last miss, without a round trip to etcd. Cached misses are invalidated when
+ * their time to live passes, when the key or a key below it is written through this client and
+ * when a watch sent through this client reports a change on the key or below it. A miss which
+ * arrives after such a change but was read before it is not cached.
+ *
+ * <pre>
+ * EtcdClient etcd = new EtcdClient(
+ *   new EtcdNegativeCachingClient(new EtcdNettyClient(config, uris), 500, TimeUnit.MILLISECONDS));
+ * </pre>
+ */
+public class EtcdNegativeCachingClient implements EtcdClientImpl {
+  private static final String KEYS_URI = "/v2/keys";
+  private static final int DEFAULT_MAX_ENTRIES = 10000;
+
+  private final EtcdClientImpl delegate;
+  private final long ttlNanos;
+  private final int maxEntries;
+  private final ConcurrentMap<String, Miss> misses;
+  private final ConcurrentMap<String, Long> changedIndexes;
+  private volatile long changedFloor;
+
+  private final AtomicLong hitCount;
+  private final AtomicLong missCount;
+
+  private final ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse> invalidateOnChange;
+
+  /**
+   * Constructor
+   *
+   * @param delegate client which sends the requests which are not answered from the cache
+   * @param ttl      time to cache a KeyNotFound response
+   * @param unit     unit of ttl
+   */
+  public EtcdNegativeCachingClient(EtcdClientImpl delegate, long ttl, TimeUnit unit) {
+    this(delegate, ttl, unit, DEFAULT_MAX_ENTRIES);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param delegate   client which sends the requests which are not answered from the cache
+   * @param ttl        time to cache a KeyNotFound response
+   * @param unit       unit of ttl
+   * @param maxEntries max number of keys to cache a miss for
+   */
+  public EtcdNegativeCachingClient(EtcdClientImpl delegate, long ttl, TimeUnit unit, int maxEntries) {
+    this.delegate = delegate;
+    this.ttlNanos = unit.toNanos(ttl);
+    this.maxEntries = maxEntries;
+    this.misses = new ConcurrentHashMap<>();
+    this.changedIndexes = new ConcurrentHashMap<>();
+    this.hitCount = new AtomicLong();
+    this.missCount = new AtomicLong();
+
+    this.invalidateOnChange = new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+      @Override
+      public void onResponse(ResponsePromise<EtcdKeysResponse> promise) {
+        EtcdKeysResponse response = promise.getNow();
+        if (response != null && response.node != null) {
+          Long index = response.node.modifiedIndex != null ? response.node.modifiedIndex : response.etcdIndex;
+          if (index != null) {
+            changed(response.node.key, index);
+          }
+          invalidate(response.node.key);
+        }
+      }
+    };
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <R> EtcdResponsePromise<R> send(EtcdRequest<R> request) throws IOException {
+    if (!(request instanceof EtcdKeyRequest) || request.getPromise() != null) {
+      return delegate.send(request);
+    }
+
+    final String key = keyOf(request.getUri());
+
+    if (request instanceof EtcdKeyGetRequest) {
+      if (((EtcdKeyGetRequest) request).shouldBeWaiting()) {
+        EtcdResponsePromise<EtcdKeysResponse> promise = (EtcdResponsePromise<EtcdKeysResponse>) delegate.send(request);
+        promise.addListener(invalidateOnChange);
+        return (EtcdResponsePromise<R>) promise;
+      }
+
+      Miss miss = misses.get(key);
+      if (miss != null) {
+        if (miss.expiresAt - System.nanoTime() > 0) {
+          hitCount.incrementAndGet();
+          EtcdCompletablePromise<R> promise = new EtcdCompletablePromise<>();
+          promise.fail(miss.exception);
+          return promise;
+        }
+
+        misses.remove(key, miss);
+      }
+
+      EtcdResponsePromise<R> promise = delegate.send(request);
+      promise.addListener(new ResponsePromise.IsSimplePromiseResponseHandler<R>() {
+        @Override
+        public void onResponse(ResponsePromise<R> response) {
+          cacheMiss(key, response.getException());
+        }
+      });
+      return promise;
+    }
+
+    if (request.getMethod() == HttpMethod.PUT || request.getMethod() == HttpMethod.POST) {
+      invalidate(key);
+
+      EtcdResponsePromise<EtcdKeysResponse> promise = (EtcdResponsePromise<EtcdKeysResponse>) delegate.send(request);
+      promise.addListener(invalidateOnChange);
+      return (EtcdResponsePromise<R>) promise;
+    }
+
+    return delegate.send(request);
+  }
+
+  /**
+   * Invalidate the cached misses of a key and the directories above it
+   *
+   * @param key to invalidate
+   */
+  public void invalidate(String key) {
+    if (misses.isEmpty()) {
+      return;
+    }
+
+    String path = EtcdUtil.normalizeKey(key);
+    while (!path.isEmpty()) {
+      misses.remove(path);
+      path = path.substring(0, path.lastIndexOf('/'));
+    }
+  }
+
+  /**
+   * Invalidate all cached misses
+   */
+  public void invalidateAll() {
+    misses.clear();
+  }
+
+  /**
+   * Get the number of requests answered from the cache
+   *
+   * @return number of cache hits
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * Get the number of KeyNotFound responses which were cached
+   *
+   * @return number of cached misses
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+  /**
+   * Remember the etcd index of a change for the key and the directories above it, so misses
+   * which were read before the change are not cached when they arrive after it
+   *
+   * @param key   which changed
+   * @param index etcd index of the change
+   */
+  private void changed(String key, long index) {
+    if (changedIndexes.size() >= maxEntries) {
+      // Forget the keys, every miss read before now is treated as read before a change
+      long floor = changedFloor;
+      for (Long changedIndex : changedIndexes.values()) {
+        floor = Math.max(floor, changedIndex);
+      }
+      changedFloor = Math.max(floor, index);
+      changedIndexes.clear();
+    }
+
+    String path = EtcdUtil.normalizeKey(key);
+    while (!path.isEmpty()) {
+      Long previous = changedIndexes.putIfAbsent(path, index);
+      while (previous != null && previous < index && !changedIndexes.replace(path, previous, index)) {
+        previous = changedIndexes.putIfAbsent(path, index);
+      }
+      path = path.substring(0, path.lastIndexOf('/'));
+    }
+  }
+
+  private void cacheMiss(String key, Throwable exception) {
+    if (!(exception instanceof EtcdException)
+        || !((EtcdException) exception).isErrorCode(EtcdErrorCode.KeyNotFound)) {
+      return;
+    }
+
+    Long index = ((EtcdException) exception).getIndex();
+    if (index == null || readBeforeChange(key, index)) {
+      return;
+    }
+
+    if (misses.size() >= maxEntries) {
+      purgeExpired();
+      if (misses.size() >= maxEntries) {
+        return;
+      }
+    }
+
+    Miss miss = new Miss((EtcdException) exception, System.nanoTime() + ttlNanos);
+    if (misses.put(key, miss) == null) {
+      missCount.incrementAndGet();
+    }
+
+    // A change which came in while caching removed the miss before it was there
+    if (readBeforeChange(key, index)) {
+      misses.remove(key, miss);
+    }
+  }
+
+  private boolean readBeforeChange(String key, long index) {
+    Long changedIndex = changedIndexes.get(key);
+    return index < changedFloor || (changedIndex != null && index < changedIndex);
+  }
+
+  private void purgeExpired() {
+    long now = System.nanoTime();
+    for (Iterator<Map.Entry<String, Miss>> it = misses.entrySet().iterator(); it.hasNext(); ) {
+      if (it.next().getValue().expiresAt - now <= 0) {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * Get the key of a request uri in the form etcd reports keys in watch events
+   *
+   * @param uri of request
+   * @return key
+   */
+  private static String keyOf(String uri) {
+    return EtcdUtil.normalizeKey(uri.startsWith(KEYS_URI) ? uri.substring(KEYS_URI.length()) : uri);
+  }
+
+  /**
+   * A cached KeyNotFound response
+   */
+  private static final class Miss {
+    final EtcdException exception;
+    final long expiresAt;
+
+    Miss(EtcdException exception, long expiresAt) {
+      this.exception = exception;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
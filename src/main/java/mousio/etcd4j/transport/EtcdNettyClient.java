@@ -38,6 +38,7 @@ import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
 import io.netty.util.concurrent.Promise;
 import mousio.client.ConnectionState;
+import mousio.client.promises.BlockingGetDetector;
 import mousio.client.retry.RetryHandler;
 import mousio.etcd4j.EtcdSecurityContext;
 import mousio.etcd4j.promises.EtcdResponsePromise;
@@ -71,6 +72,7 @@ public class EtcdNettyClient implements EtcdClientImpl {
   //private final String hostName;
   private final EtcdNettyConfig config;
   private final EtcdSecurityContext securityContext;
+  private final BlockingGetDetector blockingGetDetector;
 
   protected volatile int lastWorkingUriIndex;
 
@@ -134,6 +136,9 @@ public class EtcdNettyClient implements EtcdClientImpl {
     this.eventLoopGroup = config.getEventLoopGroup() == null
             ? new NioEventLoopGroup()
             : config.getEventLoopGroup();
+    this.blockingGetDetector = config.getBlockingGetDetection() == BlockingGetDetector.Mode.OFF
+            ? null
+            : new BlockingGetDetector(eventLoopGroup, config.getBlockingGetDetection());
     this.bootstrap = new Bootstrap()
       .group(eventLoopGroup)
       .channel(config.getSocketChannelClass())
@@ -179,7 +184,7 @@ public class EtcdNettyClient implements EtcdClientImpl {
     ConnectionState connectionState = new ConnectionState(uris, lastWorkingUriIndex);
 
     if (etcdRequest.getPromise() == null) {
-      etcdRequest.setPromise(new EtcdResponsePromise<R>(
+      EtcdResponsePromise<R> promise = new EtcdResponsePromise<R>(
         etcdRequest.getRetryPolicy(),
         connectionState,
         new RetryHandler() {
@@ -187,7 +192,10 @@ public class EtcdNettyClient implements EtcdClientImpl {
           public void doRetry(ConnectionState connectionState) throws IOException {
             connect(etcdRequest, connectionState);
           }
-      }));
+      });
+      promise.setCallbackExecutor(config.getCallbackExecutor());
+      promise.setBlockingGetDetector(blockingGetDetector);
+      etcdRequest.setPromise(promise);
     }
 
     connect(etcdRequest, connectionState);
@@ -19,9 +19,12 @@ import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
+import mousio.client.promises.BlockingGetDetector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.Executor;
+
 /**
  * @author Jurriaan Mous
  *
@@ -42,6 +45,10 @@ public class EtcdNettyConfig implements Cloneable {
 
   private String hostName;
 
+  private Executor callbackExecutor = null;
+
+  private BlockingGetDetector.Mode blockingGetDetection = BlockingGetDetector.Mode.OFF;
+
   /**
    * Constructor
    */
@@ -188,6 +195,50 @@ public class EtcdNettyConfig implements Cloneable {
     return this;
   }
 
+  /**
+   * Get the executor listeners on response promises run on
+   *
+   * @return callback executor, or null if listeners run on the event loop
+   */
+  public Executor getCallbackExecutor() {
+    return callbackExecutor;
+  }
+
+  /**
+   * Set the executor listeners on response promises run on when they are added without
+   * executor. By default they run on the event loop which read the response, so a slow
+   * listener delays all other requests on that loop.
+   *
+   * @param callbackExecutor to run listeners on, or null to run them on the event loop
+   * @return itself for chaining
+   */
+  public EtcdNettyConfig setCallbackExecutor(Executor callbackExecutor) {
+    this.callbackExecutor = callbackExecutor;
+    return this;
+  }
+
+  /**
+   * Get what is done on a blocking get on an event loop thread
+   *
+   * @return blocking get detection mode. Default is OFF
+   */
+  public BlockingGetDetector.Mode getBlockingGetDetection() {
+    return blockingGetDetection;
+  }
+
+  /**
+   * Set what is done when the blocking get of a response promise is called on a thread of
+   * the event loop group, which can deadlock. LOG logs a warning, FAIL throws a
+   * BlockingOperationException.
+   *
+   * @param blockingGetDetection mode to set
+   * @return itself for chaining
+   */
+  public EtcdNettyConfig setBlockingGetDetection(BlockingGetDetector.Mode blockingGetDetection) {
+    this.blockingGetDetection = blockingGetDetection;
+    return this;
+  }
+
   @SuppressWarnings("CloneDoesntDeclareCloneNotSupportedException")
   @Override
   public EtcdNettyConfig clone() {
@@ -134,23 +134,26 @@ class EtcdResponseHandler<R> extends SimpleChannelInboundHandler<FullHttpRespons
           this.promise.setFailure(new IOException(
             "Content was not readable. HTTP Status: " + status));
         }
-      } else {
+      } else if (status.code() >= 200 && status.code() < 300) {
         try {
           this.promise.setSuccess(
             request.getResponseDecoder().decode(headers, content));
         } catch (Exception e) {
-          if (e instanceof EtcdException) {
+          this.promise.setFailure(e);
+        }
+      } else {
+        // A status not included in failureDecoders, most likely an etcd error. Some
+        // endpoints answer with their own response on an error status, like health.
+        content.markReaderIndex();
+        try {
+          this.promise.setFailure(EtcdException.DECODER.decode(headers, content));
+        } catch (Exception e) {
+          content.resetReaderIndex();
+          try {
+            this.promise.setSuccess(
+              request.getResponseDecoder().decode(headers, content));
+          } catch (Exception e1) {
             this.promise.setFailure(e);
-          } else {
-            try {
-              // Try to be smart, if an exception is thrown, first try to decode
-              // the content and see if it is an EtcdException, i.e. an error code
-              // not included in failureDecoders
-              this.promise.setFailure(EtcdException.DECODER.decode(headers, content));
-            } catch (Exception e1) {
-              // if it fails again, set the original exception as failure
-              this.promise.setFailure(e);
-            }
           }
         }
       }
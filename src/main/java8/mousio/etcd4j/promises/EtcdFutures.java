@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2015, Jurriaan Mous and contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mousio.etcd4j.promises;
+
+import mousio.etcd4j.requests.EtcdRequest;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * CompletableFuture support for etcd requests and promises, needs Java 8.
+ *
+ * <pre>
+ * EtcdFutures.sendAsync(etcd.get("/counter"))
+ *   .thenCompose(r -&gt; EtcdFutures.sendAsync(
+ *     etcd.put("/counter", next(r.node.value)).prevIndex(r.node.modifiedIndex)))
+ *   .thenAccept(r -&gt; log(r.node.value));
+ * </pre>
+ *
+ * Futures fail with the exception the promise would throw from get(). Cancelling a
+ * future cancels the request.
+ */
+public final class EtcdFutures {
+
+  private EtcdFutures() {
+  }
+
+  /**
+   * Send a request
+   *
+   * @param request to send
+   * @param <R>     Type of response
+   * @return future completed on the thread which receives the response
+   */
+  public static <R> CompletableFuture<R> sendAsync(EtcdRequest<R> request) {
+    return sendAsync(request, null);
+  }
+
+  /**
+   * Send a request
+   *
+   * @param request  to send
+   * @param executor to complete the future on, so dependent stages do not run on the event loop
+   * @param <R>      Type of response
+   * @return future completed on the executor
+   */
+  public static <R> CompletableFuture<R> sendAsync(EtcdRequest<R> request, Executor executor) {
+    try {
+      return toCompletableFuture(request.send(), executor);
+    } catch (IOException e) {
+      CompletableFuture<R> future = new CompletableFuture<>();
+      future.completeExceptionally(e);
+      return future;
+    }
+  }
+
+  /**
+   * Get a future for a promise
+   *
+   * @param promise to get future for
+   * @param <T>     Type of response
+   * @return future completed on the thread which completes the promise
+   */
+  public static <T> CompletableFuture<T> toCompletableFuture(EtcdResponsePromise<T> promise) {
+    return toCompletableFuture(promise, null);
+  }
+
+  /**
+   * Get a future for a promise
+   *
+   * @param promise  to get future for
+   * @param executor to complete the future on, or null to complete it on the thread which
+   *                 completes the promise
+   * @param <T>      Type of response
+   * @return future
+   */
+  public static <T> CompletableFuture<T> toCompletableFuture(final EtcdResponsePromise<T> promise, final Executor executor) {
+    final CompletableFuture<T> future = new CompletableFuture<>();
+
+    promise.addListener(p -> {
+      T response = p.getNow();
+      Throwable exception = p.getException();
+      if (response == null && exception == null) {
+        return;
+      }
+
+      if (executor == null) {
+        complete(future, response, exception);
+      } else {
+        try {
+          executor.execute(() -> complete(future, response, exception));
+        } catch (RejectedExecutionException e) {
+          complete(future, response, exception);
+        }
+      }
+    });
+
+    future.whenComplete((response, exception) -> {
+      if (future.isCancelled()) {
+        promise.cancel();
+      }
+    });
+
+    return future;
+  }
+
+  private static <T> void complete(CompletableFuture<T> future, T response, Throwable exception) {
+    if (response != null) {
+      future.complete(response);
+    } else if (exception instanceof io.netty.handler.timeout.TimeoutException) {
+      future.completeExceptionally(new TimeoutException());
+    } else {
+      future.completeExceptionally(exception);
+    }
+  }
+}
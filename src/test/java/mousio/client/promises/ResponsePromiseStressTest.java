@@ -0,0 +1,112 @@
+package mousio.client.promises;
+
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+import mousio.client.ConnectionState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Races listener registration, completion and blocking gets on the same promise.
+ */
+public class ResponsePromiseStressTest {
+  private static final int ROUNDS = 20000;
+  private static final int LISTENERS = 3;
+
+  private ExecutorService threads;
+
+  @Before
+  public void setUp() {
+    threads = Executors.newFixedThreadPool(LISTENERS + 2);
+  }
+
+  @After
+  public void tearDown() {
+    threads.shutdownNow();
+  }
+
+  @Test
+  public void testEveryListenerIsNotifiedOnce() throws Exception {
+    for (int round = 0; round < ROUNDS; round++) {
+      final ResponsePromise<String> promise = newPromise();
+      final Promise<String> nettyPromise = promise.getNettyPromise();
+      final String value = "value" + round;
+      final AtomicInteger notified = new AtomicInteger();
+      final CountDownLatch done = new CountDownLatch(LISTENERS);
+      final CyclicBarrier start = new CyclicBarrier(LISTENERS + 2);
+
+      for (int i = 0; i < LISTENERS; i++) {
+        threads.submit(() -> {
+          start.await();
+          promise.addListener(p -> {
+            if (p.getNow() == value) {
+              notified.incrementAndGet();
+            }
+            done.countDown();
+          });
+          return null;
+        });
+      }
+
+      Future<String> get = threads.submit(() -> {
+        start.await();
+        return promise.get();
+      });
+
+      threads.submit(() -> {
+        start.await();
+        nettyPromise.setSuccess(value);
+        return null;
+      });
+
+      assertSame(value, get.get());
+      assertTrue(done.await(5, TimeUnit.SECONDS));
+      assertEquals(LISTENERS, notified.get());
+    }
+  }
+
+  @Test
+  public void testFailureIsSeenByGet() throws Exception {
+    for (int round = 0; round < ROUNDS; round++) {
+      final ResponsePromise<String> promise = newPromise();
+      final IllegalStateException failure = new IllegalStateException("round " + round);
+      final CyclicBarrier start = new CyclicBarrier(2);
+
+      Future<Throwable> get = threads.submit(() -> {
+        start.await();
+        try {
+          promise.get();
+          return null;
+        } catch (Exception e) {
+          return e.getCause();
+        }
+      });
+
+      start.await();
+      promise.getNettyPromise().setFailure(failure);
+
+      assertSame(failure, get.get());
+      assertSame(failure, promise.getException());
+    }
+  }
+
+  private static ResponsePromise<String> newPromise() {
+    ResponsePromise<String> promise = new ResponsePromise<>(null, new ConnectionState(new URI[0], 0), null);
+    promise.attachNettyPromise(GlobalEventExecutor.INSTANCE.<String>newPromise());
+    return promise;
+  }
+}
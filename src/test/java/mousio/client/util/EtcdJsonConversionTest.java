@@ -0,0 +1,101 @@
+package mousio.client.util;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.EtcdUtil;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EtcdJsonConversionTest {
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new EtcdStandInServer().start();
+    etcd = new EtcdClient(server.endpoint());
+    etcd.setRetryHandler(new RetryNTimes(20, 2));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    etcd.close();
+    server.close();
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    JsonNode original = new ObjectMapper().readTree(new File("src/test/resources/test_data.json"));
+    EtcdUtil.putAsJson("/json", original, etcd);
+
+    JsonNode fetched = EtcdUtil.getAsJson("/json", etcd);
+
+    assertEquals(EtcdUtil.jsonToString(original), EtcdUtil.jsonToString(fetched));
+  }
+
+  @Test
+  public void testValueTypes() throws Exception {
+    etcd.putAll(values(
+      "int", "36", "long", "12345678901", "big", "123456789012345678901234567890",
+      "double", "2.5", "exp", "1E+3", "bool", "true", "empty", "[]", "object", "{}",
+      "zip", "01234", "text", "1.2.3", "neg", "-7")).send().get().throwFirstError();
+
+    JsonNode json = EtcdUtil.getAsJson("/json", etcd);
+
+    assertTrue(json.get("int").isInt());
+    assertTrue(json.get("long").isLong());
+    assertTrue(json.get("big").isBigInteger());
+    assertEquals(2.5, json.get("double").asDouble(), 0.0);
+    assertEquals(1000.0, json.get("exp").asDouble(), 0.0);
+    assertTrue(json.get("bool").booleanValue());
+    assertTrue(json.get("empty").isArray());
+    assertEquals(0, json.get("empty").size());
+    assertEquals("{}", json.get("object").asText());
+    assertEquals("01234", json.get("zip").textValue());
+    assertEquals("1.2.3", json.get("text").textValue());
+    assertEquals(-7, json.get("neg").intValue());
+  }
+
+  @Test
+  public void testArraysAndNumericKeys() throws Exception {
+    EtcdUtil.putAsJson("/json", EtcdUtil.stringToJson(
+      "{\"list\":[\"a\",{\"x\":1},[2,3]],\"codes\":{\"200\":\"ok\",\"404\":\"not found\"}}"), etcd);
+
+    JsonNode json = EtcdUtil.getAsJson("/json", etcd);
+
+    assertTrue(json.get("list").isArray());
+    assertEquals("a", json.at("/list/0").textValue());
+    assertEquals(1, json.at("/list/1/x").intValue());
+    assertEquals(3, json.at("/list/2/1").intValue());
+
+    // keys which are not the indexes 0 to n-1 stay object fields
+    assertTrue(json.get("codes").isObject());
+    assertEquals("not found", json.at("/codes/404").textValue());
+  }
+
+  @Test
+  public void testLeafValueStaysText() throws Exception {
+    etcd.put("/json/port", "8080").send().get();
+
+    assertEquals("8080", EtcdUtil.getAsJson("/json/port", etcd).textValue());
+  }
+
+  private static Map<String, String> values(String... keysAndValues) {
+    Map<String, String> values = new LinkedHashMap<>();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      values.put("/json/" + keysAndValues[i], keysAndValues[i + 1]);
+    }
+    return values;
+  }
+}
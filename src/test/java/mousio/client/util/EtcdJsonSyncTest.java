@@ -0,0 +1,143 @@
+package mousio.client.util;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.netty.handler.codec.http.HttpMethod;
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.EtcdUtil;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.requests.EtcdRequest;
+import mousio.etcd4j.responses.EtcdErrorCode;
+import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.support.EtcdStandInServer;
+import mousio.etcd4j.transport.EtcdClientImpl;
+import mousio.etcd4j.transport.EtcdNettyClient;
+import mousio.etcd4j.transport.EtcdNettyConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EtcdJsonSyncTest {
+  private static final String DOCUMENT =
+    "{\"name\":\"service\",\"port\":8080,\"tags\":[\"a\",\"b\"],\"db\":{\"host\":\"localhost\",\"pool\":10}}";
+
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new EtcdStandInServer().start();
+    etcd = new EtcdClient(server.endpoint());
+    etcd.setRetryHandler(new RetryNTimes(20, 2));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    etcd.close();
+    server.close();
+  }
+
+  @Test
+  public void testSyncWritesOnlyChanges() throws Exception {
+    ObjectNode json = (ObjectNode) EtcdUtil.stringToJson(DOCUMENT);
+
+    assertEquals(6, EtcdUtil.syncAsJson("/config", json, etcd));
+    assertEquals("8080", server.value("/config/port"));
+    assertEquals("b", server.value("/config/tags/1"));
+
+    assertEquals(0, EtcdUtil.syncAsJson("/config", json, etcd));
+
+    ((ObjectNode) json.get("db")).put("pool", 20);
+    assertEquals(1, EtcdUtil.syncAsJson("/config", json, etcd));
+    assertEquals("20", server.value("/config/db/pool"));
+  }
+
+  @Test
+  public void testSyncRemovesAndReplacesKeys() throws Exception {
+    EtcdUtil.syncAsJson("/config", EtcdUtil.stringToJson(DOCUMENT), etcd);
+
+    JsonNode changed = EtcdUtil.stringToJson("{\"name\":\"service\",\"port\":8080,\"db\":\"jdbc:h2:mem\"}");
+    // deletes of the four keys in tags and db, then of the emptied directories, and a put of db
+    assertEquals(7, EtcdUtil.syncAsJson("/config", changed, etcd));
+
+    assertNull(server.value("/config/tags/0"));
+    assertNull(server.value("/config/db/host"));
+    assertEquals("jdbc:h2:mem", server.value("/config/db"));
+    assertEquals(3, server.keys().size());
+  }
+
+  @Test
+  public void testSyncDoesNotOverwriteConcurrentChange() throws Exception {
+    EtcdUtil.syncAsJson("/config", EtcdUtil.stringToJson(DOCUMENT), etcd);
+
+    // Another writer changes the port between the read and the write of the sync
+    ObjectNode json = (ObjectNode) EtcdUtil.stringToJson(DOCUMENT);
+    json.put("port", 8081);
+
+    try (EtcdClient syncing = new EtcdClient(racing(HttpMethod.PUT, "/config/port", "9090"))) {
+      syncing.setRetryHandler(new RetryNTimes(20, 2));
+      EtcdUtil.syncAsJson("/config", json, syncing);
+      fail("Expected TestFailed");
+    } catch (EtcdException e) {
+      assertTrue(e.isErrorCode(EtcdErrorCode.TestFailed));
+    }
+
+    assertEquals("9090", server.value("/config/port"));
+  }
+
+  @Test
+  public void testSyncDoesNotDeleteConcurrentlyAddedKey() throws Exception {
+    EtcdUtil.syncAsJson("/config", EtcdUtil.stringToJson(DOCUMENT), etcd);
+
+    // Another writer adds a key to the db directory which the sync is about to remove
+    ObjectNode json = (ObjectNode) EtcdUtil.stringToJson(DOCUMENT);
+    json.remove("db");
+
+    try (EtcdClient syncing = new EtcdClient(racing(HttpMethod.DELETE, "/config/db/extra", "1"))) {
+      syncing.setRetryHandler(new RetryNTimes(20, 2));
+      EtcdUtil.syncAsJson("/config", json, syncing);
+      fail("Expected DirNotEmpty");
+    } catch (EtcdException e) {
+      assertTrue(e.isErrorCode(EtcdErrorCode.DirNotEmpty));
+    }
+
+    assertEquals("1", server.value("/config/db/extra"));
+    assertNull(server.value("/config/db/host"));
+  }
+
+  /**
+   * Client which lets another writer put a key just before it sends its first request of a method
+   */
+  private EtcdClientImpl racing(final HttpMethod method, final String key, final String value) {
+    final EtcdNettyClient delegate = new EtcdNettyClient(new EtcdNettyConfig(), server.endpoint());
+    return new EtcdClientImpl() {
+      private boolean raced;
+
+      @Override
+      public <R> EtcdResponsePromise<R> send(EtcdRequest<R> request) throws IOException {
+        if (!raced && request.getMethod() == method) {
+          raced = true;
+          try {
+            etcd.put(key, value).send().get();
+          } catch (Exception e) {
+            throw new IOException(e);
+          }
+        }
+        return delegate.send(request);
+      }
+
+      @Override
+      public void close() {
+        delegate.close();
+      }
+    };
+  }
+}
@@ -0,0 +1,144 @@
+package mousio.etcd4j;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.responses.EtcdBatchResponse;
+import mousio.etcd4j.responses.EtcdErrorCode;
+import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EtcdBatchTest {
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new EtcdStandInServer().start();
+    etcd = new EtcdClient(server.endpoint());
+    etcd.setRetryHandler(new RetryNTimes(20, 2));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    etcd.close();
+    server.close();
+  }
+
+  @Test
+  public void testPutAll() throws Exception {
+    Map<String, String> values = new LinkedHashMap<>();
+    for (int i = 0; i < 500; i++) {
+      values.put("/batch/key" + i, "value" + i);
+    }
+
+    EtcdBatchResponse response = etcd.putAll(values).parallelism(8).send().get();
+
+    assertTrue(response.isSuccess());
+    assertEquals(500, response.getResponses().size());
+    assertEquals("value42", response.getResponse("/batch/key42").node.value);
+    assertEquals(500, server.keys().size());
+    assertEquals("value499", server.value("/batch/key499"));
+  }
+
+  @Test
+  public void testErrorsAreAggregatedByKey() throws Exception {
+    etcd.put("/batch/existing", "old").send().get();
+
+    EtcdBatchResponse response = etcd.batch()
+      .put("/batch/new", "value")
+      .add("/batch/existing", etcd.put("/batch/existing", "value").prevExist(false))
+      .send().get();
+
+    assertEquals(1, response.getResponses().size());
+    assertNotNull(response.getResponse("/batch/new"));
+
+    Throwable error = response.getError("/batch/existing");
+    assertTrue(error instanceof EtcdException);
+    assertTrue(((EtcdException) error).isErrorCode(EtcdErrorCode.NodeExist));
+    assertEquals("old", server.value("/batch/existing"));
+  }
+
+  @Test
+  public void testGetMany() throws Exception {
+    etcd.put("/batch/a", "1").send().get();
+    etcd.put("/batch/b", "2").send().get();
+    server.resetRequestCount();
+
+    EtcdBatchResponse response = etcd.getMany(Arrays.asList("/batch/a", "/batch/b", "/batch/c")).send().get();
+
+    // Without a read planner every key is read with its own request
+    assertEquals(3, server.requestCount());
+
+    assertEquals(2, response.getNodes().size());
+    assertEquals("1", response.getNodes().get("/batch/a").value);
+    assertEquals("2", response.getNodes().get("/batch/b").value);
+    assertNull(response.getResponse("/batch/c"));
+    assertTrue(((EtcdException) response.getError("/batch/c")).isErrorCode(EtcdErrorCode.KeyNotFound));
+  }
+
+  @Test
+  public void testDeadlineReturnsPartialResults() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      etcd.put("/batch/key" + i, "value" + i).send().get();
+    }
+    server.latency(200, TimeUnit.MILLISECONDS);
+
+    EtcdBatchResponse response = etcd.batch()
+      .getAll(Arrays.asList("/batch/key0", "/batch/key1", "/batch/key2", "/batch/key3", "/batch/key4"))
+      .parallelism(1)
+      .deadline(300, TimeUnit.MILLISECONDS)
+      .send().get();
+
+    assertTrue(response.getResponses().size() < 5);
+    assertEquals(5, response.getResponses().size() + response.getErrors().size());
+    for (Throwable error : response.getErrors().values()) {
+      assertTrue(error instanceof TimeoutException);
+    }
+  }
+
+  @Test
+  public void testPlannedDirectoryRead() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      etcd.put("/batch/dir/key" + i, "value" + i).send().get();
+    }
+    etcd.put("/batch/other", "other").send().get();
+    etcd.setReadPlanner(new EtcdReadPlanner());
+    server.resetRequestCount();
+
+    EtcdBatchResponse response = etcd.getMany(
+      Arrays.asList("/batch/dir/key1", "/batch/dir/key2", "/batch/dir/key3", "/batch/dir/missing")).send().get();
+
+    assertEquals(1, server.requestCount());
+    assertEquals(3, response.getResponses().size());
+    assertEquals("value2", response.getNodes().get("/batch/dir/key2").value);
+    assertTrue(((EtcdException) response.getError("/batch/dir/missing")).isErrorCode(EtcdErrorCode.KeyNotFound));
+
+    // The planner learns the size of the directory from the read
+    EtcdReadPlanner planner = new EtcdReadPlanner(25.0, 0, 100);
+    response = etcd.batch().planner(planner)
+      .getAll(Arrays.asList("/batch/dir/key1", "/batch/dir/key2")).send().get();
+    assertEquals(Integer.valueOf(10), planner.getDirSize("/batch/dir"));
+    assertEquals(2, response.getNodes().size());
+  }
+
+  @Test
+  public void testEmptyBatch() throws Exception {
+    EtcdBatchResponse response = etcd.batch().send().get();
+
+    assertTrue(response.isSuccess());
+    assertTrue(response.getResponses().isEmpty());
+  }
+}
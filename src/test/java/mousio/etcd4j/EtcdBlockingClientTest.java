@@ -0,0 +1,121 @@
+package mousio.etcd4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.requests.EtcdKeyGetRequest;
+import mousio.etcd4j.responses.EtcdErrorCode;
+import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EtcdBlockingClientTest {
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+  private EtcdBlockingClient blocking;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new EtcdStandInServer().start();
+    etcd = new EtcdClient(server.endpoint());
+    etcd.setRetryHandler(new RetryNTimes(20, 2));
+    blocking = new EtcdBlockingClient(etcd);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    etcd.close();
+    server.close();
+  }
+
+  @Test
+  public void testPutAndGet() throws Exception {
+    blocking.put("/blocking/key", "value");
+    assertEquals("value", blocking.get("/blocking/key").node.value);
+
+    blocking.delete("/blocking/key");
+    try {
+      blocking.get("/blocking/key");
+      fail();
+    } catch (EtcdException e) {
+      assertTrue(e.isErrorCode(EtcdErrorCode.KeyNotFound));
+    }
+  }
+
+  @Test
+  public void testWaitIsInterruptible() throws Exception {
+    final EtcdKeyGetRequest watch = etcd.get("/blocking/key").waitForChange();
+    final AtomicReference<Throwable> error = new AtomicReference<>();
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          blocking.send(watch);
+        } catch (Throwable e) {
+          error.set(e);
+        }
+      }
+    });
+    thread.start();
+
+    Thread.sleep(200);
+    thread.interrupt();
+    thread.join(5000);
+
+    assertFalse(thread.isAlive());
+    assertTrue(error.get() instanceof InterruptedException);
+    assertTrue(watch.getPromise().getNettyPromise().isCancelled());
+  }
+
+  @Test
+  public void testTimedWaitCancels() throws Exception {
+    EtcdKeyGetRequest watch = etcd.get("/blocking/key").waitForChange();
+    try {
+      blocking.send(watch, 100, TimeUnit.MILLISECONDS);
+      fail();
+    } catch (TimeoutException e) {
+      assertTrue(watch.getPromise().getNettyPromise().isCancelled());
+    }
+  }
+
+  @Test
+  public void testSendAll() throws Exception {
+    List<EtcdKeyGetRequest> requests = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      blocking.put("/blocking/key" + i, "value" + i);
+      requests.add(etcd.get("/blocking/key" + i));
+    }
+
+    List<EtcdKeysResponse> responses = blocking.sendAll(requests);
+    assertEquals(100, responses.size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals("value" + i, responses.get(i).node.value);
+    }
+  }
+
+  @Test
+  public void testSendAllCancelsOnFailure() throws Exception {
+    EtcdKeyGetRequest watch = etcd.get("/blocking/key").waitForChange();
+    try {
+      blocking.sendAll(Arrays.asList(watch, etcd.get("/blocking/missing")));
+      fail();
+    } catch (EtcdException e) {
+      assertTrue(e.isErrorCode(EtcdErrorCode.KeyNotFound));
+    }
+
+    assertTrue(watch.getPromise().getNettyPromise().isCancelled());
+  }
+}
@@ -0,0 +1,65 @@
+package mousio.etcd4j;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EtcdReadPlannerTest {
+
+  @Test
+  public void testGroupsKeysByDirectory() {
+    EtcdReadPlanner planner = new EtcdReadPlanner(25.0, 32, 100);
+
+    EtcdReadPlanner.Plan plan = planner.plan(Arrays.asList(
+      "/services/a", "/services/b", "/services/c", "/config/x", "/top"));
+
+    assertEquals(Collections.singleton("/services"), plan.getDirReads().keySet());
+    assertEquals(Arrays.asList("/services/a", "/services/b", "/services/c"), plan.getDirReads().get("/services"));
+    assertEquals(Arrays.asList("/top", "/config/x"), plan.getPointReads());
+  }
+
+  @Test
+  public void testUsesRecordedDirectorySize() {
+    EtcdReadPlanner planner = new EtcdReadPlanner(25.0, 32, 100);
+    assertTrue(planner.shouldReadDir("/services", 3));
+
+    planner.recordDirSize("/services/", 500);
+
+    assertEquals(Integer.valueOf(500), planner.getDirSize("services"));
+    assertFalse(planner.shouldReadDir("/services", 3));
+    // 25 + 500 for the directory against 26 per key
+    assertFalse(planner.shouldReadDir("/services", 20));
+    assertTrue(planner.shouldReadDir("/services", 21));
+  }
+
+  @Test
+  public void testSingleAndHiddenKeysArePointReads() {
+    EtcdReadPlanner planner = new EtcdReadPlanner(25.0, 0, 100);
+
+    EtcdReadPlanner.Plan plan = planner.plan(Arrays.asList("/dir/_hidden", "/dir/_locked", "/other/key"));
+
+    assertTrue(plan.getDirReads().isEmpty());
+    assertEquals(3, plan.getPointReads().size());
+  }
+
+  @Test
+  public void testMaxDirectories() {
+    EtcdReadPlanner planner = new EtcdReadPlanner(25.0, 32, 1);
+
+    planner.recordDirSize("/a", 10);
+    planner.recordDirSize("/b", 10);
+    assertEquals(Integer.valueOf(10), planner.getDirSize("/b"));
+    assertNull(planner.getDirSize("/a"));
+
+    planner.recordDirSize("/a", 20);
+
+    assertEquals(Integer.valueOf(20), planner.getDirSize("/a"));
+    assertNull(planner.getDirSize("/b"));
+  }
+}
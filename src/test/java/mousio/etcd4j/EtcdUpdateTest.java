@@ -0,0 +1,110 @@
+package mousio.etcd4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EtcdUpdateTest {
+  private static final EtcdUpdate.ValueFunction INCREMENT = new EtcdUpdate.ValueFunction() {
+    @Override
+    public String apply(String value) {
+      return value == null ? "1" : Long.toString(Long.parseLong(value) + 1);
+    }
+  };
+
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new EtcdStandInServer().start();
+    etcd = new EtcdClient(server.endpoint());
+    etcd.setRetryHandler(new RetryNTimes(20, 2));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    etcd.close();
+    server.close();
+  }
+
+  @Test
+  public void testCreatesMissingKey() throws Exception {
+    EtcdKeysResponse response = etcd.update("/update/counter", INCREMENT).send().get();
+
+    assertEquals("1", response.node.value);
+    assertEquals("1", server.value("/update/counter"));
+  }
+
+  @Test
+  public void testConcurrentUpdatesAreNotLost() throws Exception {
+    List<EtcdResponsePromise<EtcdKeysResponse>> promises = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      promises.add(etcd.update("/update/counter", INCREMENT).maxAttempts(1000).send());
+    }
+    for (EtcdResponsePromise<EtcdKeysResponse> promise : promises) {
+      promise.get();
+    }
+
+    assertEquals("100", server.value("/update/counter"));
+
+    EtcdContentionStats.KeyStats stats = etcd.getContentionStats().get("/update/counter");
+    assertEquals(100, stats.getUpdates());
+    assertEquals(0, stats.getFailures());
+    assertEquals(stats.getUpdates() + stats.getConflicts(), stats.getAttempts());
+    assertTrue(stats.getConflicts() > 0);
+  }
+
+  @Test
+  public void testContentionStatsForgetLeastRecentlyUpdatedKey() {
+    EtcdContentionStats stats = new EtcdContentionStats(2);
+    stats.forKey("/a").updates.incrementAndGet();
+    stats.forKey("/b");
+    stats.forKey("/a");
+    stats.forKey("/c");
+
+    assertEquals(1, stats.get("/a").getUpdates());
+    assertNull(stats.get("/b"));
+    assertNotNull(stats.get("/c"));
+    assertEquals(2, stats.getAll().size());
+
+    stats.reset();
+    assertTrue(stats.getAll().isEmpty());
+  }
+
+  @Test
+  public void testParseCurrent() {
+    EtcdUpdate.Current current = EtcdUpdate.parseCurrent("[3 != 7] [12 != 15]", "3", 12);
+    assertEquals("7", current.value);
+    assertEquals(15, current.index);
+
+    // Only the index changed
+    current = EtcdUpdate.parseCurrent("[12 != 15]", "3", 12);
+    assertEquals("3", current.value);
+    assertEquals(15, current.index);
+
+    // Values which look like the format
+    current = EtcdUpdate.parseCurrent("[a] [b != c] [12 != 3] [12 != 15]", "a] [b", 12);
+    assertEquals("c] [12 != 3", current.value);
+    assertEquals(15, current.index);
+
+    current = EtcdUpdate.parseCurrent("[ != ] [12 != 15]", "", 12);
+    assertEquals("", current.value);
+
+    assertNull(EtcdUpdate.parseCurrent("[12 != x]", "3", 12));
+    assertNull(EtcdUpdate.parseCurrent("something else", "3", 12));
+    assertNull(EtcdUpdate.parseCurrent(null, "3", 12));
+  }
+}
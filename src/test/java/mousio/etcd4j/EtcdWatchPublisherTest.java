@@ -0,0 +1,193 @@
+package mousio.etcd4j;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EtcdWatchPublisherTest {
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new EtcdStandInServer().start();
+    etcd = new EtcdClient(server.endpoint());
+    etcd.setRetryHandler(new RetryNTimes(20, 2));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    etcd.close();
+    server.close();
+  }
+
+  @Test
+  public void testWatchesOnlyOnDemand() throws Exception {
+    long index = etcd.put("/watch/key", "0").send().get().node.modifiedIndex;
+    for (int i = 1; i <= 3; i++) {
+      etcd.put("/watch/key", Integer.toString(i)).send().get();
+    }
+    server.resetRequestCount();
+
+    CollectingSubscriber subscriber = new CollectingSubscriber();
+    etcd.watch("/watch/key").fromIndex(index + 1).subscribe(subscriber);
+    Thread.sleep(100);
+    assertEquals(0, server.requestCount());
+
+    subscriber.request(2);
+    subscriber.await(2);
+    Thread.sleep(100);
+    assertEquals(2, server.requestCount());
+
+    subscriber.request(1);
+    subscriber.await(3);
+    assertEquals("1", subscriber.values.get(0));
+    assertEquals("2", subscriber.values.get(1));
+    assertEquals("3", subscriber.values.get(2));
+    assertNull(subscriber.error);
+
+    subscriber.cancel();
+  }
+
+  @Test
+  public void testRecursiveWatch() throws Exception {
+    CollectingSubscriber subscriber = new CollectingSubscriber();
+    etcd.watch("/watch").recursive().subscribe(subscriber);
+    subscriber.request(2);
+    Thread.sleep(100);
+
+    etcd.put("/watch/a", "a").send().get();
+    etcd.put("/watch/dir/b", "b").send().get();
+
+    subscriber.await(2);
+    assertEquals("a", subscriber.values.get(0));
+    assertEquals("b", subscriber.values.get(1));
+
+    subscriber.cancel();
+  }
+
+  @Test
+  public void testLatestKeepsNewestChange() throws Exception {
+    long index = etcd.put("/watch/key", "0").send().get().node.modifiedIndex;
+    for (int i = 1; i <= 4; i++) {
+      etcd.put("/watch/key", Integer.toString(i)).send().get();
+    }
+    server.resetRequestCount();
+
+    CollectingSubscriber subscriber = new CollectingSubscriber();
+    etcd.watch("/watch/key").fromIndex(index + 1)
+      .onOverflow(EtcdWatchPublisher.Overflow.LATEST, 1)
+      .subscribe(subscriber);
+    subscriber.request(1);
+    subscriber.await(1);
+
+    // Keeps watching without demand, the fifth watch waits for a new change
+    long deadline = System.currentTimeMillis() + 5000;
+    while (server.requestCount() < 5 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+
+    subscriber.request(1);
+    subscriber.await(2);
+    assertEquals("1", subscriber.values.get(0));
+    assertEquals("4", subscriber.values.get(1));
+
+    subscriber.cancel();
+  }
+
+  @Test
+  public void testFirstWatchStartsAfterCurrentIndex() throws Exception {
+    etcd.put("/watch/key", "0").send().get();
+    server.resetRequestCount();
+
+    CollectingSubscriber subscriber = new CollectingSubscriber();
+    etcd.watch("/watch/key").subscribe(subscriber);
+    subscriber.request(2);
+
+    // The current index is read first so the watch continues from it after a timeout
+    long deadline = System.currentTimeMillis() + 5000;
+    while (server.requestCount() < 2 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(2, server.requestCount());
+
+    etcd.put("/watch/key", "1").send().get();
+    etcd.put("/watch/key", "2").send().get();
+    subscriber.await(2);
+    assertEquals("1", subscriber.values.get(0));
+    assertEquals("2", subscriber.values.get(1));
+    assertNull(subscriber.error);
+
+    subscriber.cancel();
+  }
+
+  @Test
+  public void testNonPositiveRequestIsAnError() throws Exception {
+    CollectingSubscriber subscriber = new CollectingSubscriber();
+    etcd.watch("/watch/key").subscribe(subscriber);
+    subscriber.request(0);
+
+    assertTrue(subscriber.error instanceof IllegalArgumentException);
+  }
+
+  private static final class CollectingSubscriber implements Subscriber<EtcdKeysResponse> {
+    final List<String> values = new CopyOnWriteArrayList<>();
+    final CountDownLatch[] latches = new CountDownLatch[8];
+    volatile Subscription subscription;
+    volatile Throwable error;
+
+    CollectingSubscriber() {
+      for (int i = 0; i < latches.length; i++) {
+        latches[i] = new CountDownLatch(i);
+      }
+    }
+
+    void request(long n) {
+      subscription.request(n);
+    }
+
+    void cancel() {
+      subscription.cancel();
+    }
+
+    void await(int count) throws InterruptedException {
+      assertTrue("Expected " + count + " changes", latches[count].await(5, TimeUnit.SECONDS));
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(EtcdKeysResponse response) {
+      values.add(response.node.value);
+      for (CountDownLatch latch : latches) {
+        latch.countDown();
+      }
+    }
+
+    @Override
+    public void onError(Throwable error) {
+      this.error = error;
+    }
+
+    @Override
+    public void onComplete() {
+    }
+  }
+}
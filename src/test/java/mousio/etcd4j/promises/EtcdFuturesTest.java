@@ -0,0 +1,90 @@
+package mousio.etcd4j.promises;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.responses.EtcdErrorCode;
+import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EtcdFuturesTest {
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new EtcdStandInServer().start();
+    etcd = new EtcdClient(server.endpoint());
+    etcd.setRetryHandler(new RetryNTimes(20, 2));
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+    etcd.close();
+    server.close();
+  }
+
+  @Test
+  public void testComposeReadThenCompareAndSwap() throws Exception {
+    etcd.put("/counter", "1").send().get();
+
+    EtcdKeysResponse response = EtcdFutures.sendAsync(etcd.get("/counter"))
+      .thenCompose(r -> EtcdFutures.sendAsync(
+        etcd.put("/counter", String.valueOf(Integer.parseInt(r.node.value) + 1)).prevIndex(r.node.modifiedIndex)))
+      .get(5, TimeUnit.SECONDS);
+
+    assertEquals("2", response.node.value);
+    assertEquals("2", server.value("/counter"));
+  }
+
+  @Test
+  public void testFailsWithEtcdException() throws Exception {
+    try {
+      EtcdFutures.sendAsync(etcd.get("/missing")).get(5, TimeUnit.SECONDS);
+      fail("Expected KeyNotFound");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof EtcdException);
+      assertTrue(((EtcdException) e.getCause()).isErrorCode(EtcdErrorCode.KeyNotFound));
+    }
+  }
+
+  @Test
+  public void testCompletesOnExecutor() throws Exception {
+    etcd.put("/key", "value").send().get();
+
+    AtomicInteger executed = new AtomicInteger();
+    Executor counting = command -> {
+      executed.incrementAndGet();
+      executor.execute(command);
+    };
+
+    assertEquals("value", EtcdFutures.sendAsync(etcd.get("/key"), counting).get(5, TimeUnit.SECONDS).node.value);
+    assertEquals(1, executed.get());
+  }
+
+  @Test
+  public void testCompletedPromise() throws Exception {
+    EtcdCompletablePromise<String> promise = new EtcdCompletablePromise<>();
+    promise.complete("done");
+    promise.get();
+
+    assertEquals("done", EtcdFutures.toCompletableFuture(promise).get(5, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,117 @@
+package mousio.etcd4j.recipes;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.support.EtcdStandInRule;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EtcdCacheIndexTest {
+  @Rule
+  public final EtcdStandInRule standIn = new EtcdStandInRule();
+
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+  private EtcdTreeCache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    server = standIn.server();
+    etcd = standIn.client();
+    cache = new EtcdTreeCache(etcd, "/instances");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    cache.close();
+  }
+
+  @Test
+  public void testIndexesLoadedNodes() throws Exception {
+    Map<String, String> instances = new LinkedHashMap<>();
+    instances.put("/instances/a", "{\"zone\":\"z1\",\"location\":{\"rack\":1}}");
+    instances.put("/instances/b", "{\"zone\":\"z2\",\"location\":{\"rack\":1}}");
+    instances.put("/instances/c", "{\"zone\":\"z1\",\"location\":{\"rack\":2}}");
+    instances.put("/instances/d", "not json");
+    etcd.putAll(instances).send().get();
+
+    EtcdCacheIndex<String> byZone = new EtcdCacheIndex<>(cache, EtcdCacheIndex.jsonField("zone"));
+    cache.start().get();
+    EtcdCacheIndex<String> byRack = new EtcdCacheIndex<>(cache, EtcdCacheIndex.jsonField("location.rack"));
+
+    assertEquals(new HashSet<>(Arrays.asList("/instances/a", "/instances/c")), byZone.getKeys("z1"));
+    assertEquals(Collections.singleton("/instances/b"), byZone.getKeys("z2"));
+    assertEquals(0, byZone.count("z3"));
+    assertEquals(3, byZone.size());
+    assertNull(byZone.getValue("/instances/d"));
+
+    assertEquals(2, byRack.count("1"));
+    assertEquals("/instances/c", byRack.get("2").iterator().next().key);
+  }
+
+  @Test
+  public void testFollowsChanges() throws Exception {
+    EtcdCacheIndex<String> byZone = new EtcdCacheIndex<>(cache, EtcdCacheIndex.jsonField("zone"));
+    cache.start().get();
+
+    etcd.put("/instances/a", "{\"zone\":\"z1\"}").send().get();
+    etcd.put("/instances/b", "{\"zone\":\"z1\"}").send().get();
+    await(() -> byZone.count("z1") == 2);
+
+    etcd.put("/instances/a", "{\"zone\":\"z2\"}").send().get();
+    await(() -> byZone.count("z2") == 1);
+    assertEquals(Collections.singleton("/instances/b"), byZone.getKeys("z1"));
+    assertEquals("{\"zone\":\"z2\"}", byZone.get("z2").iterator().next().value);
+
+    etcd.delete("/instances/b").send().get();
+    etcd.put("/instances/a", "{}").send().get();
+    await(() -> byZone.size() == 0 && byZone.getValues().isEmpty());
+  }
+
+  @Test
+  public void testCustomExtractor() throws Exception {
+    etcd.put("/instances/a", "short").send().get();
+    etcd.put("/instances/b", "longer").send().get();
+    etcd.put("/instances/c", "tiny!").send().get();
+    cache.start().get();
+
+    EtcdCacheIndex<Integer> byLength = new EtcdCacheIndex<>(cache, node -> node.value.length());
+    assertEquals(2, byLength.count(5));
+    assertEquals(1, byLength.count(6));
+
+    byLength.close();
+    etcd.put("/instances/d", "small").send().get();
+    awaitChanges(4);
+    assertEquals(0, byLength.count(5));
+  }
+
+  /**
+   * Wait on the index itself, the cache counts a change before its listeners are called
+   */
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+      Thread.sleep(10);
+    }
+    assertTrue(condition.getAsBoolean());
+  }
+
+  private void awaitChanges(long count) throws InterruptedException {
+    for (int i = 0; i < 500 && cache.getChangeCount() < count; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, cache.getChangeCount());
+  }
+}
@@ -0,0 +1,118 @@
+package mousio.etcd4j.recipes;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.support.EtcdStandInRule;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class EtcdConfigBinderTest {
+  @Rule
+  public final EtcdStandInRule standIn = new EtcdStandInRule();
+
+  public static class AppConfig {
+    public String name;
+    public int timeout;
+    public boolean enabled;
+    public Database database;
+    public List<String> hosts;
+  }
+
+  public static class Database {
+    public String url;
+    public int poolSize;
+  }
+
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+  private EtcdConfigBinder<AppConfig> binder;
+  private List<Set<String>> changes;
+
+  @Before
+  public void setUp() throws Exception {
+    server = standIn.server();
+    etcd = standIn.client();
+
+    changes = new CopyOnWriteArrayList<>();
+    binder = new EtcdConfigBinder<>(etcd, "/config/app", AppConfig.class)
+      .addListener((config, previous, fields) -> changes.add(fields));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    binder.close();
+  }
+
+  @Test
+  public void testBindsAndFollowsChanges() throws Exception {
+    etcd.put("/config/app/name", "app").send().get();
+    etcd.put("/config/app/timeout", "30").send().get();
+    etcd.put("/config/app/enabled", "true").send().get();
+    etcd.put("/config/app/database/url", "jdbc:h2:mem").send().get();
+    etcd.put("/config/app/database/poolSize", "8").send().get();
+    etcd.put("/config/app/hosts/0", "a").send().get();
+    etcd.put("/config/app/hosts/1", "b").send().get();
+    etcd.put("/config/app/unknown", "ignored").send().get();
+
+    AppConfig config = binder.start().get();
+    assertSame(config, binder.get());
+    assertEquals("app", config.name);
+    assertEquals(30, config.timeout);
+    assertEquals(true, config.enabled);
+    assertEquals(8, config.database.poolSize);
+    assertEquals(Arrays.asList("a", "b"), config.hosts);
+
+    server.resetRequestCount();
+    etcd.put("/config/app/database/poolSize", "16").send().get();
+    etcd.delete("/config/app/hosts/1").send().get();
+    awaitChanges(2);
+
+    assertEquals(16, binder.get().database.poolSize);
+    assertEquals(Collections.singletonList("a"), binder.get().hosts);
+    assertEquals(8, config.database.poolSize);
+    assertEquals(Collections.singleton("database.poolSize"), changes.get(0));
+    assertEquals(Collections.singleton("hosts.1"), changes.get(1));
+
+    // The puts, the delete and the watches, the prefix is not read again
+    assertEquals(4, server.requestCount(), 1);
+  }
+
+  @Test
+  public void testKeepsLastGoodConfig() throws Exception {
+    etcd.put("/config/app/timeout", "30").send().get();
+    binder.start().get();
+
+    etcd.put("/config/app/timeout", "soon").send().get();
+    for (int i = 0; i < 200 && binder.getBindError() == null; i++) {
+      Thread.sleep(10);
+    }
+    assertNotNull(binder.getBindError());
+    assertEquals(30, binder.get().timeout);
+
+    etcd.put("/config/app/timeout", "40").send().get();
+    awaitChanges(1);
+    assertNull(binder.getBindError());
+    assertEquals(40, binder.get().timeout);
+    assertEquals(Collections.singleton("timeout"), changes.get(0));
+  }
+
+  private void awaitChanges(int count) throws InterruptedException {
+    for (int i = 0; i < 200 && changes.size() < count; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(changes.toString(), count, changes.size());
+  }
+}
@@ -0,0 +1,85 @@
+package mousio.etcd4j.recipes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.support.EtcdStandInRule;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EtcdIdSequenceTest {
+  @Rule
+  public final EtcdStandInRule standIn = new EtcdStandInRule();
+
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+
+  @Before
+  public void setUp() throws Exception {
+    server = standIn.server();
+    etcd = standIn.client();
+  }
+
+  @Test
+  public void testIdsIncrease() throws Exception {
+    EtcdIdSequence ids = new EtcdIdSequence(etcd, "/sequences/a");
+
+    long previous = ids.nextId();
+    assertEquals(EtcdIdSequence.FIRST_ID, previous);
+    for (int i = 0; i < 1000; i++) {
+      long id = ids.nextId();
+      assertTrue(id > previous);
+      previous = id;
+    }
+
+    // The key holds the next id which is not reserved
+    assertTrue(Long.parseLong(server.value("/sequences/a")) > previous);
+  }
+
+  @Test
+  public void testIdsAreUniqueOverSequencesAndThreads() throws Exception {
+    final Set<Long> seen = ConcurrentHashMap.newKeySet();
+    final EtcdIdSequence first = new EtcdIdSequence(etcd, "/sequences/b");
+    final EtcdIdSequence second = new EtcdIdSequence(etcd, "/sequences/b");
+
+    ExecutorService threads = Executors.newFixedThreadPool(8);
+    try {
+      List<Callable<Boolean>> tasks = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        final EtcdIdSequence ids = t % 2 == 0 ? first : second;
+        tasks.add(() -> {
+          for (int i = 0; i < 20000; i++) {
+            if (!seen.add(ids.nextId())) {
+              return false;
+            }
+          }
+          return true;
+        });
+      }
+
+      for (Future<Boolean> future : threads.invokeAll(tasks, 30, TimeUnit.SECONDS)) {
+        assertTrue(future.get());
+      }
+    } finally {
+      threads.shutdownNow();
+    }
+
+    assertEquals(160000, seen.size());
+    // Blocks grew from the min size and far fewer writes than ids were needed
+    assertTrue(first.getBlockSize() > EtcdIdSequence.DEFAULT_MIN_BLOCK_SIZE);
+    assertTrue(server.requestCount() < 2000);
+  }
+}
@@ -0,0 +1,149 @@
+package mousio.etcd4j.recipes;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.support.EtcdStandInRule;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EtcdInformerTest {
+  @Rule
+  public final EtcdStandInRule standIn = new EtcdStandInRule();
+
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+  private EtcdInformer informer;
+  private Map<String, AtomicInteger> reconciles;
+
+  @Before
+  public void setUp() throws Exception {
+    server = standIn.server();
+    etcd = standIn.client();
+    reconciles = new ConcurrentHashMap<>();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (informer != null) {
+      informer.close();
+    }
+  }
+
+  @Test
+  public void testReconcilesAllKeysFromOneList() throws Exception {
+    etcd.putAll(keys(1000)).send().get();
+    server.resetRequestCount();
+
+    informer = new EtcdInformer(etcd, "/apps", (key, node) -> count(key)).workers(8);
+    informer.start().get();
+    awaitReconciles(1000);
+
+    assertEquals(1000, reconciles.size());
+    for (AtomicInteger count : reconciles.values()) {
+      assertEquals(1, count.get());
+    }
+    // The list and the watch
+    assertTrue("requests: " + server.requestCount(), server.requestCount() <= 2);
+
+    etcd.put("/apps/app7", "changed").send().get();
+    etcd.delete("/apps/app8").send().get();
+    awaitReconciles(1002);
+    assertEquals(2, reconciles.get("/apps/app7").get());
+    assertEquals(2, reconciles.get("/apps/app8").get());
+  }
+
+  @Test
+  public void testKeyIsReconciledOnceWhileChanging() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    informer = new EtcdInformer(etcd, "/apps", (key, node) -> {
+      count(key);
+      release.await();
+    });
+    informer.start().get();
+
+    etcd.put("/apps/app", "1").send().get();
+    awaitReconciles(1);
+    for (int i = 2; i <= 5; i++) {
+      etcd.put("/apps/app", Integer.toString(i)).send().get();
+    }
+    while (!"5".equals(informer.getCache().get("/apps/app").value)) {
+      Thread.sleep(5);
+    }
+    assertEquals(0, informer.getQueueLength());
+
+    release.countDown();
+    awaitReconciles(2);
+    Thread.sleep(100);
+    assertEquals(2, reconciles.get("/apps/app").get());
+  }
+
+  @Test
+  public void testFailedKeyBacksOff() throws Exception {
+    AtomicInteger attempts = new AtomicInteger();
+    informer = new EtcdInformer(etcd, "/apps", (key, node) -> {
+      if (attempts.incrementAndGet() < 4) {
+        throw new IllegalStateException("Not yet");
+      }
+      count(key);
+    }).backOff(50, 1000, TimeUnit.MILLISECONDS);
+    informer.start().get();
+
+    long start = System.nanoTime();
+    etcd.put("/apps/app", "1").send().get();
+    awaitReconciles(1);
+
+    // 50 + 100 + 200 milliseconds of back-off
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(350));
+    assertEquals(3, informer.getFailureCount());
+    assertEquals(1, informer.getReconcileCount());
+  }
+
+  @Test
+  public void testResync() throws Exception {
+    etcd.putAll(keys(10)).send().get();
+    informer = new EtcdInformer(etcd, "/apps", (key, node) -> count(key)).resync(200, TimeUnit.MILLISECONDS);
+    informer.start().get();
+
+    awaitReconciles(20);
+    assertTrue(reconciles.get("/apps/app3").get() >= 2);
+  }
+
+  private void count(String key) {
+    reconciles.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+  }
+
+  private void awaitReconciles(int count) throws InterruptedException {
+    for (int i = 0; i < 500 && total() < count; i++) {
+      Thread.sleep(10);
+    }
+    assertTrue("reconciles: " + total(), total() >= count);
+  }
+
+  private int total() {
+    int total = 0;
+    for (AtomicInteger count : reconciles.values()) {
+      total += count.get();
+    }
+    return total;
+  }
+
+  private static Map<String, String> keys(int count) {
+    Map<String, String> keys = new LinkedHashMap<>();
+    for (int i = 0; i < count; i++) {
+      keys.put("/apps/app" + i, "value" + i);
+    }
+    return keys;
+  }
+}
@@ -0,0 +1,134 @@
+package mousio.etcd4j.recipes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.support.EtcdStandInRule;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EtcdLeaderElectionTest {
+  private static final String KEY = "/election/leader";
+
+  @Rule
+  public final EtcdStandInRule standIn = new EtcdStandInRule();
+
+  private EtcdStandInServer server;
+  private List<EtcdClient> clients;
+  private List<EtcdLeaderElection> elections;
+
+  @Before
+  public void setUp() throws Exception {
+    server = standIn.server();
+    clients = new ArrayList<>();
+    elections = new ArrayList<>();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    for (EtcdLeaderElection election : elections) {
+      election.close();
+    }
+  }
+
+  @Test
+  public void testSingleLeaderAndResign() throws Exception {
+    AtomicInteger changes = new AtomicInteger();
+    for (int i = 0; i < 5; i++) {
+      candidate("candidate" + i, 5, leader -> changes.incrementAndGet());
+    }
+
+    EtcdLeaderElection leader = awaitLeader(null);
+    assertEquals(leader.getCandidate(), server.value(KEY));
+    assertEquals(1, countLeaders());
+
+    leader.close();
+    assertFalse(leader.isLeader());
+
+    EtcdLeaderElection next = awaitLeader(leader);
+    assertEquals(next.getCandidate(), server.value(KEY));
+    assertEquals(1, countLeaders());
+
+    // Elected, resigned and elected
+    Thread.sleep(100);
+    assertEquals(3, changes.get());
+  }
+
+  @Test
+  public void testTakeOverFromDeadLeader() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      candidate("candidate" + i, 1, null);
+    }
+
+    EtcdLeaderElection leader = awaitLeader(null);
+    // The leader can no longer reach etcd and does not delete its key
+    clients.get(elections.indexOf(leader)).close();
+
+    long start = System.currentTimeMillis();
+    EtcdLeaderElection next = awaitLeader(leader);
+    assertTrue(System.currentTimeMillis() - start < 3000);
+    assertFalse(leader.isLeader());
+    assertEquals(next.getCandidate(), server.value(KEY));
+  }
+
+  @Test
+  public void testSteadyStateOnlyRefreshes() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      candidate("candidate" + i, 3, null);
+    }
+    awaitLeader(null);
+    Thread.sleep(200);
+
+    server.resetRequestCount();
+    for (int i = 0; i < 100000; i++) {
+      countLeaders();
+    }
+    Thread.sleep(2500);
+
+    // A refresh per second by the leader, the followers wait on their watch
+    assertTrue("requests: " + server.requestCount(), server.requestCount() <= 3);
+  }
+
+  private EtcdLeaderElection candidate(String id, int ttl, EtcdLeaderElection.Listener listener) {
+    EtcdClient client = standIn.newClient();
+    clients.add(client);
+
+    EtcdLeaderElection election = new EtcdLeaderElection(client, KEY, id, ttl, listener).start();
+    elections.add(election);
+    return election;
+  }
+
+  private EtcdLeaderElection awaitLeader(EtcdLeaderElection previous) throws InterruptedException {
+    for (int i = 0; i < 500; i++) {
+      for (EtcdLeaderElection election : elections) {
+        if (election != previous && election.isLeader()) {
+          return election;
+        }
+      }
+      Thread.sleep(10);
+    }
+
+    fail("No leader elected");
+    return null;
+  }
+
+  private int countLeaders() {
+    int leaders = 0;
+    for (EtcdLeaderElection election : elections) {
+      if (election.isLeader()) {
+        leaders++;
+      }
+    }
+    return leaders;
+  }
+}
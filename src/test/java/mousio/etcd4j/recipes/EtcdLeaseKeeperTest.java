@@ -0,0 +1,74 @@
+package mousio.etcd4j.recipes;
+
+import java.util.concurrent.TimeUnit;
+
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.support.EtcdStandInRule;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EtcdLeaseKeeperTest {
+  @Rule
+  public final EtcdStandInRule standIn = new EtcdStandInRule();
+
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+  private EtcdLeaseKeeper keeper;
+
+  @Before
+  public void setUp() throws Exception {
+    server = standIn.server();
+    etcd = standIn.client();
+    keeper = new EtcdLeaseKeeper(etcd);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    keeper.close();
+  }
+
+  @Test
+  public void testKeysOutliveTheirTtl() throws Exception {
+    for (int i = 0; i < 50; i++) {
+      keeper.keep("/leases/key" + i, "value" + i, 1).get();
+    }
+
+    Thread.sleep(2500);
+
+    assertEquals(50, server.keys().size());
+    assertEquals("value7", server.value("/leases/key7"));
+    assertTrue(keeper.getRefreshCount() >= 50);
+    assertTrue(keeper.getMaxLag(TimeUnit.NANOSECONDS) >= keeper.getMeanLag(TimeUnit.NANOSECONDS));
+  }
+
+  @Test
+  public void testExpiredKeyIsCreatedAgain() throws Exception {
+    keeper.keep("/leases/key", "value", 1).get();
+    etcd.delete("/leases/key").send().get();
+
+    long deadline = System.currentTimeMillis() + 3000;
+    while (keeper.getRecreateCount() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+
+    assertEquals(1, keeper.getRecreateCount());
+    assertEquals("value", server.value("/leases/key"));
+  }
+
+  @Test
+  public void testRelease() throws Exception {
+    keeper.keep("/leases/key", "value", 1).get();
+    keeper.release("/leases/key").get();
+
+    assertTrue(keeper.getKeys().isEmpty());
+    assertNull(server.value("/leases/key"));
+    assertNull(keeper.release("/leases/key"));
+  }
+}
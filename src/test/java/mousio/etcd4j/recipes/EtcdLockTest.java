@@ -0,0 +1,125 @@
+package mousio.etcd4j.recipes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.support.EtcdStandInRule;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EtcdLockTest {
+  @Rule
+  public final EtcdStandInRule standIn = new EtcdStandInRule();
+
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+  private EtcdLock lock;
+
+  @Before
+  public void setUp() throws Exception {
+    server = standIn.server();
+    etcd = standIn.client();
+    lock = new EtcdLock(etcd, "/locks/test");
+  }
+
+  @Test
+  public void testMutualExclusion() throws Exception {
+    final AtomicInteger holding = new AtomicInteger();
+    final AtomicInteger acquisitions = new AtomicInteger();
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      Thread thread = new Thread(() -> {
+        try {
+          for (int i = 0; i < 5; i++) {
+            EtcdLock.Holder holder = lock.acquire().get();
+            if (holding.incrementAndGet() != 1) {
+              throw new AssertionError("Lock held twice");
+            }
+            acquisitions.incrementAndGet();
+            Thread.sleep(2);
+            holding.decrementAndGet();
+            holder.release().get();
+          }
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertNull(failure.get());
+    assertEquals(40, acquisitions.get());
+    assertTrue(server.keys().isEmpty());
+  }
+
+  @Test
+  public void testReleaseWakesOneWaiter() throws Exception {
+    EtcdLock.Holder holder = lock.acquire("first").get();
+    assertTrue(holder.isHeld());
+    assertEquals("first", lock.getOwner().get().getValue());
+
+    List<EtcdResponsePromise<EtcdLock.Holder>> waiters = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      waiters.add(lock.acquire());
+      // One by one to know the order of the queue
+      while (server.keys().size() < i + 2) {
+        Thread.sleep(5);
+      }
+    }
+    Thread.sleep(200);
+
+    server.resetRequestCount();
+    holder.release().get();
+    assertFalse(holder.isHeld());
+
+    EtcdResponsePromise<EtcdLock.Holder> next = waiters.get(0);
+    next.get().release().get();
+    Thread.sleep(200);
+
+    // Two deletes, each waking only the waiter right after the deleted key
+    assertTrue("requests: " + server.requestCount(), server.requestCount() <= 6);
+    assertTrue(waiters.get(1).getNettyPromise().isDone());
+    assertFalse(waiters.get(2).getNettyPromise().isDone());
+
+    for (int i = 1; i < waiters.size(); i++) {
+      waiters.get(i).get().release().get();
+    }
+    assertTrue(server.keys().isEmpty());
+  }
+
+  @Test
+  public void testCancelLeavesQueue() throws Exception {
+    EtcdLock.Holder holder = lock.acquire().get();
+    EtcdResponsePromise<EtcdLock.Holder> waiter = lock.acquire();
+    while (server.keys().size() < 2) {
+      Thread.sleep(10);
+    }
+
+    waiter.cancel();
+    while (server.keys().size() > 1) {
+      Thread.sleep(10);
+    }
+
+    assertEquals(holder.getKey(), lock.getOwner().get().getKey());
+    holder.release().get();
+    assertTrue(lock.getOwner().get().isFree());
+  }
+}
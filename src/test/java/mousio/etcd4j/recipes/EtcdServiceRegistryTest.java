@@ -0,0 +1,132 @@
+package mousio.etcd4j.recipes;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.requests.EtcdRequest;
+import mousio.etcd4j.support.EtcdStandInRule;
+import mousio.etcd4j.support.EtcdStandInServer;
+import mousio.etcd4j.transport.EtcdClientImpl;
+import mousio.etcd4j.transport.EtcdNettyClient;
+import mousio.etcd4j.transport.EtcdNettyConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EtcdServiceRegistryTest {
+  @Rule
+  public final EtcdStandInRule standIn = new EtcdStandInRule();
+
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+  private EtcdServiceRegistry registry;
+
+  @Before
+  public void setUp() throws Exception {
+    server = standIn.server();
+    etcd = standIn.client();
+    registry = new EtcdServiceRegistry(etcd);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    registry.close();
+  }
+
+  @Test
+  public void testRegisterAndDiscover() throws Exception {
+    registry.register("api", "one", "10.0.0.1:8080").get();
+    registry.register("api", "two", "10.0.0.2:8080").get();
+    registry.register("web", "one", "10.0.1.1:80").get();
+
+    EtcdServiceRegistry.Service api = registry.discover("api").get();
+    assertEquals(2, api.getInstances().size());
+    assertEquals(api.getInstances(), registry.getInstances("api"));
+
+    List<String> changes = new CopyOnWriteArrayList<>();
+    api.addListener((service, instance, previous) -> changes.add(instance + " was " + previous));
+
+    registry.register("api", "three", "10.0.0.3:8080").get();
+    registry.deregister("api", "one").get();
+    registry.register("api", "two", "10.0.0.22:8080").get();
+    awaitInstances(api, 2, changes, 3);
+
+    assertEquals("api/three@10.0.0.3:8080 was null", changes.get(0));
+    assertEquals("null was api/one@10.0.0.1:8080", changes.get(1));
+    assertEquals("api/two@10.0.0.22:8080 was api/two@10.0.0.2:8080", changes.get(2));
+  }
+
+  @Test
+  public void testExpiredInstanceDisappears() throws Exception {
+    EtcdServiceRegistry.Service api = registry.discover("api").get();
+    assertTrue(registry.getInstances("web").isEmpty());
+
+    List<String> changes = new CopyOnWriteArrayList<>();
+    api.addListener((service, instance, previous) -> changes.add(instance + " was " + previous));
+
+    // An instance which is not kept alive
+    etcd.put("/services/api/gone", "10.0.0.9:8080").ttl(1).send().get();
+    registry.register("api", "kept", "10.0.0.1:8080").get();
+    awaitInstances(api, 2, changes, 2);
+
+    Thread.sleep(1500);
+    awaitInstances(api, 1, changes, 3);
+    assertEquals("kept", api.getInstances().get(0).getId());
+    assertEquals("null was api/gone@10.0.0.9:8080", changes.get(2));
+  }
+
+  @Test
+  public void testDiscoverAgainAfterFailedStart() throws Exception {
+    registry.register("api", "one", "10.0.0.1:8080").get();
+
+    // The first request fails as if etcd was unreachable
+    AtomicInteger failures = new AtomicInteger(1);
+    EtcdNettyClient netty = new EtcdNettyClient(new EtcdNettyConfig(), server.endpoint());
+    try (EtcdClient flaky = new EtcdClient(new EtcdClientImpl() {
+      @Override
+      public <R> EtcdResponsePromise<R> send(EtcdRequest<R> request) throws IOException {
+        if (failures.getAndDecrement() > 0) {
+          throw new ConnectException("Connection refused");
+        }
+        return netty.send(request);
+      }
+
+      @Override
+      public void close() {
+        netty.close();
+      }
+    })) {
+      EtcdServiceRegistry discovering = new EtcdServiceRegistry(flaky);
+      try {
+        discovering.discover("api").get();
+        fail("Expected the first discovery to fail");
+      } catch (IOException e) {
+        // expected
+      }
+
+      // The tree cache retries the read, discovering again waits for it
+      EtcdServiceRegistry.Service api = discovering.discover("api").get();
+      assertEquals(1, api.getInstances().size());
+      discovering.close();
+    }
+  }
+
+  private static void awaitInstances(EtcdServiceRegistry.Service service, int instances, List<String> changes, int count)
+      throws InterruptedException {
+    for (int i = 0; i < 200 && (service.getInstances().size() != instances || changes.size() < count); i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(instances, service.getInstances().size());
+    assertEquals(changes.toString(), count, changes.size());
+  }
+}
@@ -0,0 +1,65 @@
+package mousio.etcd4j.recipes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+import mousio.etcd4j.support.EtcdStandInRule;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EtcdStripedCounterTest {
+  @Rule
+  public final EtcdStandInRule standIn = new EtcdStandInRule();
+
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+
+  @Before
+  public void setUp() throws Exception {
+    server = standIn.server();
+    etcd = standIn.client();
+  }
+
+  @Test
+  public void testMissingCounterIsZero() throws Exception {
+    assertEquals(0L, new EtcdStripedCounter(etcd, "/counters/none").get().get().longValue());
+  }
+
+  @Test
+  public void testAdd() throws Exception {
+    EtcdStripedCounter counter = new EtcdStripedCounter(etcd, "/counters/a", 4, 4, 0.2);
+    counter.add(10).get();
+    counter.add(-3).get();
+    counter.increment().get();
+
+    assertEquals(8L, counter.get().get().longValue());
+  }
+
+  @Test
+  public void testStripesGrowUnderContention() throws Exception {
+    EtcdStripedCounter counter = new EtcdStripedCounter(etcd, "/counters/hot", 1, 8, 0.2);
+
+    List<EtcdResponsePromise<EtcdKeysResponse>> promises = new ArrayList<>();
+    for (int round = 0; round < 8; round++) {
+      for (int i = 0; i < 50; i++) {
+        promises.add(counter.increment());
+      }
+      for (EtcdResponsePromise<EtcdKeysResponse> promise : promises) {
+        promise.get();
+      }
+      promises.clear();
+    }
+
+    assertEquals(400L, counter.get().get().longValue());
+    assertTrue(counter.getStripes() > 1);
+    assertTrue(server.keys().size() > 1);
+  }
+}
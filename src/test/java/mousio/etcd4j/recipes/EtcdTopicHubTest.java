@@ -0,0 +1,83 @@
+package mousio.etcd4j.recipes;
+
+import java.util.concurrent.TimeUnit;
+
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.support.EtcdStandInRule;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EtcdTopicHubTest {
+  @Rule
+  public final EtcdStandInRule standIn = new EtcdStandInRule();
+
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+  private EtcdTopicHub hub;
+
+  @Before
+  public void setUp() throws Exception {
+    server = standIn.server();
+    etcd = standIn.client();
+    hub = new EtcdTopicHub(etcd);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    hub.close();
+  }
+
+  @Test
+  public void testFanOutOverOneWatch() throws Exception {
+    EtcdTopicHub.Topic topic = hub.topic("/topics/invalidate");
+    EtcdTopicHub.Subscription first = topic.subscribe(100).get();
+    EtcdTopicHub.Subscription second = hub.topic("/topics/invalidate").subscribe(100).get();
+    assertEquals(2, topic.getSubscriptionCount());
+
+    server.resetRequestCount();
+    for (int i = 0; i < 10; i++) {
+      topic.publish("/users/" + i).get();
+    }
+
+    for (int i = 0; i < 10; i++) {
+      assertEquals("/users/" + i, first.poll(1, TimeUnit.SECONDS).getValue());
+      assertEquals("/users/" + i, second.poll(1, TimeUnit.SECONDS).getValue());
+    }
+    assertNull(first.poll());
+
+    // The posts and the watch of the topic, one watch per message at most
+    assertTrue("requests: " + server.requestCount(), server.requestCount() <= 21);
+    assertTrue(first.getMaxDelay(TimeUnit.NANOSECONDS) >= first.getMeanDelay(TimeUnit.NANOSECONDS));
+
+    first.close();
+    second.close();
+    assertEquals(0, topic.getSubscriptionCount());
+  }
+
+  @Test
+  public void testFullQueueDrops() throws Exception {
+    EtcdTopicHub.Topic topic = hub.topic("/topics/events");
+    EtcdTopicHub.Subscription slow = topic.subscribe(2).get();
+    EtcdTopicHub.Subscription fast = topic.subscribe(10).get();
+
+    for (int i = 0; i < 5; i++) {
+      topic.publish("event" + i).get();
+    }
+    for (int i = 0; i < 5; i++) {
+      assertEquals("event" + i, fast.poll(1, TimeUnit.SECONDS).getValue());
+    }
+
+    assertEquals(2, slow.getLag());
+    assertEquals(5, slow.getReceivedCount());
+    assertEquals(3, slow.getDroppedCount());
+    assertEquals("event0", slow.poll().getValue());
+    assertEquals(0, fast.getDroppedCount());
+  }
+}
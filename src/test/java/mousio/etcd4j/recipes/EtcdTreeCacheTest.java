@@ -0,0 +1,101 @@
+package mousio.etcd4j.recipes;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.support.EtcdStandInRule;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class EtcdTreeCacheTest {
+  @Rule
+  public final EtcdStandInRule standIn = new EtcdStandInRule();
+
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+  private EtcdTreeCache cache;
+  private List<String> changes;
+
+  @Before
+  public void setUp() throws Exception {
+    server = standIn.server();
+    etcd = standIn.client();
+
+    changes = new CopyOnWriteArrayList<>();
+    cache = new EtcdTreeCache(etcd, "/tree/").addListener((key, node, prevNode) ->
+      changes.add((node == null ? "removed " : prevNode == null ? "added " : "changed ") + key));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    cache.close();
+  }
+
+  @Test
+  public void testLoadsAndFollowsChanges() throws Exception {
+    etcd.put("/tree/a", "1").send().get();
+    etcd.put("/tree/sub/b", "2").send().get();
+    etcd.put("/other/c", "3").send().get();
+
+    cache.start().get();
+    assertEquals(2, cache.size());
+    assertEquals("2", cache.get("/tree/sub/b").value);
+    assertEquals(2, changes.size());
+
+    etcd.put("/tree/a", "10").send().get();
+    etcd.put("/tree/sub/d", "4").send().get();
+    etcd.delete("/tree/sub").recursive().send().get();
+    etcd.put("/other/c", "30").send().get();
+    etcd.put("/tree/e", "5").send().get();
+    awaitChanges(7);
+
+    assertEquals("10", cache.get("/tree/a").value);
+    assertNull(cache.get("/tree/sub/b"));
+    assertEquals("5", cache.get("tree/e").value);
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getLoadCount());
+    assertEquals("changed /tree/a", changes.get(2));
+    assertEquals("added /tree/e", changes.get(6));
+  }
+
+  @Test
+  public void testStartsOnMissingDirectory() throws Exception {
+    cache.start().get();
+    assertEquals(0, cache.size());
+
+    etcd.put("/tree/a", "1").send().get();
+    awaitChanges(1);
+    assertEquals("1", cache.get("/tree/a").value);
+  }
+
+  @Test
+  public void testThrowingListenerDoesNotStopCache() throws Exception {
+    cache.addListener((key, node, prevNode) -> {
+      throw new IllegalStateException("Listener failure");
+    });
+    etcd.put("/tree/a", "1").send().get();
+
+    cache.start().get();
+    assertEquals(1, changes.size());
+
+    etcd.put("/tree/a", "2").send().get();
+    etcd.put("/tree/b", "3").send().get();
+    awaitChanges(3);
+    assertEquals("2", cache.get("/tree/a").value);
+    assertEquals("added /tree/b", changes.get(2));
+  }
+
+  private void awaitChanges(int count) throws InterruptedException {
+    for (int i = 0; i < 200 && changes.size() < count; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(changes.toString(), count, changes.size());
+  }
+}
@@ -0,0 +1,91 @@
+package mousio.etcd4j.recipes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.support.EtcdStandInRule;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EtcdWorkQueueTest {
+  @Rule
+  public final EtcdStandInRule standIn = new EtcdStandInRule();
+
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+
+  @Before
+  public void setUp() throws Exception {
+    server = standIn.server();
+    etcd = standIn.client();
+  }
+
+  @Test
+  public void testWorkersProcessEveryItemOnce() throws Exception {
+    EtcdWorkQueue producer = new EtcdWorkQueue(etcd, "/queues/test");
+    for (int i = 0; i < 60; i++) {
+      producer.offer("item" + i).get();
+    }
+
+    Set<String> processed = ConcurrentHashMap.newKeySet();
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    List<Thread> workers = new ArrayList<>();
+    for (int w = 0; w < 3; w++) {
+      EtcdWorkQueue queue = new EtcdWorkQueue(etcd, "/queues/test", 30, 16);
+      Thread worker = new Thread(() -> {
+        try {
+          while (processed.size() < 60) {
+            for (EtcdWorkQueue.Item item : queue.claim(5).get()) {
+              if (!processed.add(item.getValue())) {
+                throw new AssertionError(item.getValue() + " processed twice");
+              }
+              item.complete().get();
+            }
+          }
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        }
+      });
+      worker.start();
+      workers.add(worker);
+    }
+
+    for (Thread worker : workers) {
+      worker.join(20000);
+    }
+
+    assertNull(failure.get());
+    assertEquals(60, processed.size());
+    assertTrue(producer.claim(5).get().isEmpty());
+  }
+
+  @Test
+  public void testUncompletedItemComesBack() throws Exception {
+    EtcdWorkQueue queue = new EtcdWorkQueue(etcd, "/queues/test", 1, 16);
+    queue.offer("first").get();
+    queue.offer("second").get();
+
+    List<EtcdWorkQueue.Item> claimed = queue.claim(2).get();
+    assertEquals(2, claimed.size());
+    assertEquals("first", claimed.get(0).getValue());
+    assertTrue(queue.claim(2).get().isEmpty());
+
+    // Given back right away
+    claimed.get(1).release().get();
+    assertEquals("second", queue.claim(2).get().get(0).getValue());
+
+    // Back after the visibility timeout
+    Thread.sleep(1500);
+    assertEquals(2, queue.claim(2).get().size());
+  }
+}
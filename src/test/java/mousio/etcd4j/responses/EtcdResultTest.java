@@ -0,0 +1,62 @@
+package mousio.etcd4j.responses;
+
+import io.netty.buffer.Unpooled;
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EtcdResultTest {
+  private EtcdStandInServer server;
+  private EtcdClient etcd;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new EtcdStandInServer().start();
+    etcd = new EtcdClient(server.endpoint());
+    etcd.setRetryHandler(new RetryNTimes(20, 2));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    etcd.close();
+    server.close();
+  }
+
+  @Test
+  public void testExpectedFailuresHaveNoStackTrace() throws Exception {
+    EtcdException testFailed = EtcdException.DECODER.decode(null, Unpooled.copiedBuffer(
+      "{\"errorCode\":101,\"message\":\"Compare failed\",\"cause\":\"[1 != 2]\",\"index\":2}".getBytes()));
+    assertEquals(0, testFailed.getStackTrace().length);
+    assertEquals(101, testFailed.errorCode);
+
+    EtcdException notFile = EtcdException.DECODER.decode(null, Unpooled.copiedBuffer(
+      "{\"errorCode\":102,\"message\":\"Not a file\",\"cause\":\"/dir\",\"index\":2}".getBytes()));
+    assertTrue(notFile.getStackTrace().length > 0);
+  }
+
+  @Test
+  public void testResult() throws Exception {
+    EtcdResult<EtcdKeysResponse> put = etcd.put("/result/key", "value").send().result();
+    assertTrue(put.isSuccess());
+    assertEquals("value", put.getValue().node.value);
+    assertEquals(0, put.getErrorCode());
+
+    EtcdResult<EtcdKeysResponse> missing = etcd.get("/result/missing").send().result();
+    assertFalse(missing.isSuccess());
+    assertNull(missing.getValue());
+    assertTrue(missing.isErrorCode(EtcdErrorCode.KeyNotFound));
+
+    long index = put.getValue().node.modifiedIndex;
+    EtcdResult<EtcdKeysResponse> cas = etcd.put("/result/key", "other").prevIndex(index + 1).send().result();
+    assertTrue(cas.isErrorCode(EtcdErrorCode.TestFailed));
+    assertEquals("value", server.value("/result/key"));
+  }
+}
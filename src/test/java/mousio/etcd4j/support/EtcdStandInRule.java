@@ -0,0 +1,63 @@
+package mousio.etcd4j.support;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.EtcdClient;
+import org.junit.rules.ExternalResource;
+
+/**
+ * Starts an {@link EtcdStandInServer} with a client on it before every test, and closes the
+ * clients and the server after it.
+ *
+ * <pre>
+ * &#64;Rule
+ * public final EtcdStandInRule standIn = new EtcdStandInRule();
+ * </pre>
+ */
+public class EtcdStandInRule extends ExternalResource {
+  private final List<EtcdClient> clients = new ArrayList<>();
+  private EtcdStandInServer server;
+  private EtcdClient client;
+
+  @Override
+  protected void before() {
+    server = new EtcdStandInServer().start();
+    client = newClient();
+  }
+
+  @Override
+  protected void after() {
+    for (EtcdClient c : clients) {
+      try {
+        c.close();
+      } catch (Exception e) {
+        // closing anyway
+      }
+    }
+    clients.clear();
+    server.close();
+  }
+
+  public EtcdStandInServer server() {
+    return server;
+  }
+
+  /**
+   * The client created before the test
+   */
+  public EtcdClient client() {
+    return client;
+  }
+
+  /**
+   * Create another client on the server, which is closed after the test
+   */
+  public EtcdClient newClient() {
+    EtcdClient c = new EtcdClient(server.endpoint());
+    c.setRetryHandler(new RetryNTimes(20, 2));
+    clients.add(c);
+    return c;
+  }
+}
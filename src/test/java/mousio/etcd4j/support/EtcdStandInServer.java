@@ -0,0 +1,646 @@
+package mousio.etcd4j.support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-memory stand-in for the etcd v2 keys API, for tests and benchmarks which should not
+ * depend on docker. It supports the parts of the API used by etcd4j: get (dir, recursive,
+ * sorted, wait), put (ttl, dir, refresh, prevExist, prevIndex, prevValue), in-order post
+ * and delete (dir, recursive, prevIndex, prevValue).
+ */
+public class EtcdStandInServer implements AutoCloseable {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final String KEYS_PREFIX = "/v2/keys";
+  private static final int HISTORY_SIZE = 1000;
+
+  private final Object lock = new Object();
+  private final NavigableMap<String, Node> nodes = new TreeMap<>();
+  private final Deque<Event> history = new ArrayDeque<>();
+  private final AtomicLong requestCount = new AtomicLong();
+
+  private HttpServer server;
+  private ExecutorService executor;
+  private Thread expiryThread;
+  private volatile boolean closed;
+  private volatile long latencyMs;
+  private long index;
+  private long clearedIndex;
+
+  public EtcdStandInServer start() {
+    try {
+      server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+
+    executor = Executors.newCachedThreadPool(r -> {
+      Thread t = new Thread(r, "etcd-stand-in");
+      t.setDaemon(true);
+      return t;
+    });
+
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+
+    expiryThread = new Thread(() -> {
+      while (!closed) {
+        expireNodes();
+        try {
+          Thread.sleep(50);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    }, "etcd-stand-in-expiry");
+    expiryThread.setDaemon(true);
+    expiryThread.start();
+
+    return this;
+  }
+
+  public URI endpoint() {
+    return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+  }
+
+  /**
+   * Set an artificial latency which is added to every request
+   */
+  public EtcdStandInServer latency(long latency, TimeUnit unit) {
+    this.latencyMs = unit.toMillis(latency);
+    return this;
+  }
+
+  public long requestCount() {
+    return requestCount.get();
+  }
+
+  public void resetRequestCount() {
+    requestCount.set(0);
+  }
+
+  /**
+   * Get the value of a key without going through the API
+   */
+  public String value(String key) {
+    synchronized (lock) {
+      Node node = nodes.get(normalize(key));
+      return node == null ? null : node.value;
+    }
+  }
+
+  /**
+   * Get all leaf keys without going through the API
+   */
+  public List<String> keys() {
+    synchronized (lock) {
+      List<String> keys = new ArrayList<>();
+      for (Node node : nodes.values()) {
+        if (!node.dir) {
+          keys.add(node.key);
+        }
+      }
+      return keys;
+    }
+  }
+
+  /**
+   * Remove all keys, the index and history are kept
+   */
+  public void clear() {
+    synchronized (lock) {
+      nodes.clear();
+    }
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    synchronized (lock) {
+      lock.notifyAll();
+    }
+
+    if (server != null) {
+      server.stop(0);
+    }
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    if (expiryThread != null) {
+      expiryThread.interrupt();
+    }
+  }
+
+  // ***************************************************************************
+  // HTTP handling
+  // ***************************************************************************
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requestCount.incrementAndGet();
+
+    try {
+      if (latencyMs > 0) {
+        Thread.sleep(latencyMs);
+      }
+
+      String path = exchange.getRequestURI().getPath();
+      if (path.equals("/version")) {
+        respond(exchange, 200, MAPPER.createObjectNode()
+          .put("etcdserver", "2.3.8")
+          .put("etcdcluster", "2.3.0"));
+        return;
+      }
+
+      if (!path.startsWith(KEYS_PREFIX)) {
+        respond(exchange, 404, MAPPER.createObjectNode().put("message", "Not found"));
+        return;
+      }
+
+      String key = normalize(path.substring(KEYS_PREFIX.length()));
+      Map<String, String> params = parse(exchange.getRequestURI().getRawQuery());
+      params.putAll(parse(readBody(exchange.getRequestBody())));
+
+      Result result;
+      switch (exchange.getRequestMethod()) {
+        case "GET":
+          result = "true".equals(params.get("wait")) ? await(key, params) : get(key, params);
+          break;
+        case "PUT":
+          result = put(key, params);
+          break;
+        case "POST":
+          result = post(key, params);
+          break;
+        case "DELETE":
+          result = delete(key, params);
+          break;
+        default:
+          result = error(405, 0, "Method not allowed", exchange.getRequestMethod());
+      }
+
+      if (result != null) {
+        exchange.getResponseHeaders().add("X-Etcd-Index", Long.toString(result.index));
+        respond(exchange, result.status, result.body);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int status, ObjectNode body) throws IOException {
+    byte[] bytes = MAPPER.writeValueAsBytes(body);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private static String readBody(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static Map<String, String> parse(String encoded) throws UnsupportedEncodingException {
+    Map<String, String> params = new HashMap<>();
+    if (encoded == null || encoded.isEmpty()) {
+      return params;
+    }
+
+    for (String pair : encoded.split("&")) {
+      int eq = pair.indexOf('=');
+      if (eq < 0) {
+        params.put(URLDecoder.decode(pair, "UTF-8"), "");
+      } else {
+        params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+      }
+    }
+
+    return params;
+  }
+
+  private static String normalize(String key) {
+    String normalized = "/" + key.replaceAll("^/+|/+$", "");
+    return normalized.replaceAll("/{2,}", "/");
+  }
+
+  // ***************************************************************************
+  // Keys API
+  // ***************************************************************************
+
+  private Result get(String key, Map<String, String> params) {
+    synchronized (lock) {
+      if (key.equals("/")) {
+        return ok(200, "get", rootJson("true".equals(params.get("recursive"))), null);
+      }
+
+      Node node = nodes.get(key);
+      if (node == null) {
+        return error(404, 100, "Key not found", key);
+      }
+
+      return ok(200, "get", node.toJson(true, "true".equals(params.get("recursive"))), null);
+    }
+  }
+
+  private Result await(String key, Map<String, String> params) throws InterruptedException {
+    boolean recursive = "true".equals(params.get("recursive"));
+
+    synchronized (lock) {
+      long from = params.containsKey("waitIndex") ? Long.parseLong(params.get("waitIndex")) : index + 1;
+      if (from <= clearedIndex) {
+        return error(400, 401, "The event in requested index is outdated and cleared",
+          "the requested history has been cleared [" + (clearedIndex + 1) + "/" + from + "]");
+      }
+
+      while (!closed) {
+        for (Event event : history) {
+          if (event.index >= from && event.matches(key, recursive)) {
+            ObjectNode body = MAPPER.createObjectNode();
+            body.put("action", event.action);
+            body.set("node", event.node);
+            if (event.prevNode != null) {
+              body.set("prevNode", event.prevNode);
+            }
+            return new Result(200, body, index);
+          }
+        }
+
+        lock.wait();
+      }
+    }
+
+    return null;
+  }
+
+  private Result put(String key, Map<String, String> params) {
+    synchronized (lock) {
+      Node existing = nodes.get(key);
+      boolean dir = "true".equals(params.get("dir"));
+      boolean refresh = "true".equals(params.get("refresh"));
+      String prevExist = params.get("prevExist");
+      String prevIndex = params.get("prevIndex");
+      String prevValue = params.get("prevValue");
+
+      if ("false".equals(prevExist) && existing != null) {
+        return error(412, 105, "Key already exists", key);
+      }
+      if (("true".equals(prevExist) || prevIndex != null || prevValue != null) && existing == null) {
+        return error(404, 100, "Key not found", key);
+      }
+      if (existing != null && existing.dir && !dir) {
+        return error(403, 102, "Not a file", key);
+      }
+
+      Result failed = compare(existing, key, prevIndex, prevValue);
+      if (failed != null) {
+        return failed;
+      }
+
+      Result parents = ensureParents(key);
+      if (parents != null) {
+        return parents;
+      }
+
+      Long ttl = params.containsKey("ttl") && !params.get("ttl").isEmpty() ? Long.valueOf(params.get("ttl")) : null;
+
+      if (refresh) {
+        existing.expiration = ttl == null ? 0 : System.currentTimeMillis() + ttl * 1000;
+        index++;
+        existing.modifiedIndex = index;
+        return ok(200, "update", existing.toJson(false, false), existing.toJson(false, false));
+      }
+
+      ObjectNode prevNode = existing == null ? null : existing.toJson(false, false);
+      index++;
+
+      Node node = existing != null && existing.dir ? existing : new Node(key, dir, existing == null ? index : existing.createdIndex);
+      node.value = dir ? null : params.get("value");
+      node.modifiedIndex = index;
+      node.expiration = ttl == null ? 0 : System.currentTimeMillis() + ttl * 1000;
+      nodes.put(key, node);
+
+      String action = prevIndex != null || prevValue != null
+        ? "compareAndSwap"
+        : "false".equals(prevExist) ? "create" : "true".equals(prevExist) ? "update" : "set";
+
+      record(action, node.toJson(false, false), prevNode);
+      return ok(existing == null ? 201 : 200, action, node.toJson(false, false), prevNode);
+    }
+  }
+
+  private Result post(String key, Map<String, String> params) {
+    synchronized (lock) {
+      Node parent = nodes.get(key);
+      if (parent != null && !parent.dir) {
+        return error(403, 104, "Not a directory", key);
+      }
+
+      Result parents = ensureParents(key + "/x");
+      if (parents != null) {
+        return parents;
+      }
+
+      index++;
+      String childKey = normalize(key + "/" + String.format("%020d", index));
+      Node node = new Node(childKey, false, index);
+      node.value = params.get("value");
+      node.modifiedIndex = index;
+      if (params.containsKey("ttl") && !params.get("ttl").isEmpty()) {
+        node.expiration = System.currentTimeMillis() + Long.parseLong(params.get("ttl")) * 1000;
+      }
+      nodes.put(childKey, node);
+
+      record("create", node.toJson(false, false), null);
+      return ok(201, "create", node.toJson(false, false), null);
+    }
+  }
+
+  private Result delete(String key, Map<String, String> params) {
+    synchronized (lock) {
+      Node existing = nodes.get(key);
+      if (existing == null) {
+        return error(404, 100, "Key not found", key);
+      }
+
+      boolean recursive = "true".equals(params.get("recursive"));
+      boolean dir = "true".equals(params.get("dir")) || recursive;
+      if (existing.dir && !dir) {
+        return error(403, 102, "Not a file", key);
+      }
+      if (existing.dir && !recursive && !children(key).isEmpty()) {
+        return error(403, 108, "Directory not empty", key);
+      }
+
+      String prevIndex = params.get("prevIndex");
+      String prevValue = params.get("prevValue");
+      Result failed = compare(existing, key, prevIndex, prevValue);
+      if (failed != null) {
+        return failed;
+      }
+
+      ObjectNode prevNode = existing.toJson(false, false);
+      removeTree(key);
+      index++;
+
+      ObjectNode node = MAPPER.createObjectNode();
+      node.put("key", key);
+      if (existing.dir) {
+        node.put("dir", true);
+      }
+      node.put("modifiedIndex", index);
+      node.put("createdIndex", existing.createdIndex);
+
+      String action = prevIndex != null || prevValue != null ? "compareAndDelete" : "delete";
+      record(action, node, prevNode);
+      return ok(200, action, node, prevNode);
+    }
+  }
+
+  private Result compare(Node existing, String key, String prevIndex, String prevValue) {
+    if (existing == null) {
+      return null;
+    }
+
+    boolean indexFailed = prevIndex != null && Long.parseLong(prevIndex) != existing.modifiedIndex;
+    boolean valueFailed = prevValue != null && !prevValue.equals(existing.value);
+
+    if (indexFailed && valueFailed) {
+      return error(412, 101, "Compare failed", String.format("[%s != %s] [%s != %s]",
+        prevValue, existing.value, prevIndex, existing.modifiedIndex));
+    } else if (indexFailed) {
+      return error(412, 101, "Compare failed", String.format("[%s != %s]", prevIndex, existing.modifiedIndex));
+    } else if (valueFailed) {
+      return error(412, 101, "Compare failed", String.format("[%s != %s]", prevValue, existing.value));
+    }
+
+    return null;
+  }
+
+  private Result ensureParents(String key) {
+    String parent = key.substring(0, key.lastIndexOf('/'));
+    List<String> missing = new ArrayList<>();
+    while (!parent.isEmpty()) {
+      Node node = nodes.get(parent);
+      if (node != null) {
+        if (!node.dir) {
+          return error(403, 104, "Not a directory", parent);
+        }
+        break;
+      }
+      missing.add(parent);
+      parent = parent.substring(0, parent.lastIndexOf('/'));
+    }
+
+    for (String dir : missing) {
+      Node node = new Node(dir, true, index + 1);
+      node.modifiedIndex = index + 1;
+      nodes.put(dir, node);
+    }
+
+    return null;
+  }
+
+  private void expireNodes() {
+    synchronized (lock) {
+      long now = System.currentTimeMillis();
+      List<Node> expired = new ArrayList<>();
+      for (Node node : nodes.values()) {
+        if (node.expiration > 0 && node.expiration <= now) {
+          expired.add(node);
+        }
+      }
+
+      for (Node node : expired) {
+        if (!nodes.containsKey(node.key)) {
+          continue;
+        }
+
+        ObjectNode prevNode = node.toJson(false, false);
+        removeTree(node.key);
+        index++;
+
+        ObjectNode json = MAPPER.createObjectNode();
+        json.put("key", node.key);
+        json.put("modifiedIndex", index);
+        json.put("createdIndex", node.createdIndex);
+        record("expire", json, prevNode);
+      }
+    }
+  }
+
+  private void removeTree(String key) {
+    nodes.remove(key);
+    nodes.subMap(key + "/", true, key + "0", false).clear();
+  }
+
+  private List<Node> children(String key) {
+    String prefix = key.equals("/") ? "/" : key + "/";
+    List<Node> children = new ArrayList<>();
+    for (Node node : nodes.subMap(prefix, true, prefix.substring(0, prefix.length() - 1) + "0", false).values()) {
+      if (node.key.indexOf('/', prefix.length()) < 0) {
+        children.add(node);
+      }
+    }
+    return children;
+  }
+
+  private ObjectNode rootJson(boolean recursive) {
+    ObjectNode json = MAPPER.createObjectNode();
+    json.put("dir", true);
+    ArrayNode array = json.putArray("nodes");
+    for (Node child : children("/")) {
+      array.add(child.toJson(recursive, recursive));
+    }
+    return json;
+  }
+
+  private void record(String action, ObjectNode node, ObjectNode prevNode) {
+    history.addLast(new Event(index, action, node, prevNode));
+    while (history.size() > HISTORY_SIZE) {
+      clearedIndex = history.removeFirst().index;
+    }
+    lock.notifyAll();
+  }
+
+  private Result ok(int status, String action, ObjectNode node, ObjectNode prevNode) {
+    ObjectNode body = MAPPER.createObjectNode();
+    body.put("action", action);
+    body.set("node", node);
+    if (prevNode != null) {
+      body.set("prevNode", prevNode);
+    }
+    return new Result(status, body, index);
+  }
+
+  private Result error(int status, int errorCode, String message, String cause) {
+    ObjectNode body = MAPPER.createObjectNode();
+    body.put("errorCode", errorCode);
+    body.put("message", message);
+    body.put("cause", cause);
+    body.put("index", index);
+    return new Result(status, body, index);
+  }
+
+  // ***************************************************************************
+  // Model
+  // ***************************************************************************
+
+  private final class Node {
+    final String key;
+    final boolean dir;
+    final long createdIndex;
+    long modifiedIndex;
+    String value;
+    long expiration;
+
+    Node(String key, boolean dir, long createdIndex) {
+      this.key = key;
+      this.dir = dir;
+      this.createdIndex = createdIndex;
+    }
+
+    ObjectNode toJson(boolean withChildren, boolean recursive) {
+      ObjectNode json = MAPPER.createObjectNode();
+      json.put("key", key);
+      if (dir) {
+        json.put("dir", true);
+      } else {
+        json.put("value", value);
+      }
+      if (expiration > 0) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        json.put("expiration", format.format(new Date(expiration)));
+        json.put("ttl", Math.max(1, (expiration - System.currentTimeMillis() + 999) / 1000));
+      }
+      json.put("modifiedIndex", modifiedIndex);
+      json.put("createdIndex", createdIndex);
+
+      if (dir && withChildren) {
+        ArrayNode array = json.putArray("nodes");
+        for (Node child : children(key)) {
+          array.add(child.toJson(recursive, recursive));
+        }
+      }
+      return json;
+    }
+  }
+
+  private static final class Event {
+    final long index;
+    final String action;
+    final ObjectNode node;
+    final ObjectNode prevNode;
+    final String key;
+    final boolean removal;
+
+    Event(long index, String action, ObjectNode node, ObjectNode prevNode) {
+      this.index = index;
+      this.action = action;
+      this.node = node;
+      this.prevNode = prevNode;
+      this.key = node.get("key").asText();
+      this.removal = action.equals("delete") || action.equals("expire") || action.equals("compareAndDelete");
+    }
+
+    boolean matches(String watched, boolean recursive) {
+      if (key.equals(watched)) {
+        return true;
+      }
+      if (recursive && (watched.equals("/") || key.startsWith(watched + "/"))) {
+        return true;
+      }
+      // removing a directory also notifies the watchers of the keys below it
+      return removal && watched.startsWith(key + "/");
+    }
+  }
+
+  private static final class Result {
+    final int status;
+    final ObjectNode body;
+    final long index;
+
+    Result(int status, ObjectNode body, long index) {
+      this.status = status;
+      this.body = body;
+      this.index = index;
+    }
+  }
+}
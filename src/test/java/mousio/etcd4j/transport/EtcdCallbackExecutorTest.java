@@ -0,0 +1,115 @@
+package mousio.etcd4j.transport;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.netty.util.concurrent.BlockingOperationException;
+import mousio.client.promises.BlockingGetDetector;
+import mousio.client.promises.ResponsePromise;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EtcdCallbackExecutorTest {
+  private EtcdStandInServer server;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new EtcdStandInServer().start();
+    executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        return new Thread(r, "callbacks");
+      }
+    });
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+    server.close();
+  }
+
+  @Test
+  public void testListenersRunOnCallbackExecutor() throws Exception {
+    EtcdNettyConfig config = new EtcdNettyConfig().setCallbackExecutor(executor);
+    try (EtcdClient etcd = new EtcdClient(new EtcdNettyClient(config, server.endpoint()))) {
+      assertEquals("callbacks", listenerThread(etcd.put("/callbacks/key", "value").send(), null));
+    }
+  }
+
+  @Test
+  public void testListenerWithExecutor() throws Exception {
+    try (EtcdClient etcd = new EtcdClient(new EtcdNettyClient(new EtcdNettyConfig(), server.endpoint()))) {
+      assertEquals("callbacks", listenerThread(etcd.put("/callbacks/key", "value").send(), executor));
+
+      // Added after completion
+      EtcdResponsePromise<EtcdKeysResponse> promise = etcd.get("/callbacks/key").send();
+      promise.get();
+      assertEquals("callbacks", listenerThread(promise, executor));
+    }
+  }
+
+  @Test
+  public void testBlockingGetOnEventLoopFails() throws Exception {
+    EtcdNettyConfig config = new EtcdNettyConfig().setBlockingGetDetection(BlockingGetDetector.Mode.FAIL);
+    try (final EtcdClient etcd = new EtcdClient(new EtcdNettyClient(config, server.endpoint()))) {
+      final AtomicReference<Throwable> error = new AtomicReference<>();
+      final CountDownLatch latch = new CountDownLatch(1);
+
+      etcd.put("/callbacks/key", "value").send().addListener(
+        new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+          @Override
+          public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+            try {
+              etcd.get("/callbacks/key").send().get();
+            } catch (Throwable e) {
+              error.set(e);
+            }
+            latch.countDown();
+          }
+        });
+
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+      assertTrue(error.get() instanceof BlockingOperationException);
+
+      // Blocking outside of the event loop is fine
+      assertEquals("value", etcd.get("/callbacks/key").send().get().node.value);
+    }
+  }
+
+  private static String listenerThread(EtcdResponsePromise<EtcdKeysResponse> promise, ExecutorService executor)
+      throws InterruptedException {
+    final AtomicReference<String> thread = new AtomicReference<>();
+    final CountDownLatch latch = new CountDownLatch(1);
+    ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse> listener =
+      new ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>() {
+        @Override
+        public void onResponse(ResponsePromise<EtcdKeysResponse> response) {
+          thread.set(Thread.currentThread().getName());
+          latch.countDown();
+        }
+      };
+
+    if (executor == null) {
+      promise.addListener(listener);
+    } else {
+      promise.addListener(listener, executor);
+    }
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    return thread.get();
+  }
+}
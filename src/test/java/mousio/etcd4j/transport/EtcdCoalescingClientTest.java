@@ -0,0 +1,126 @@
+package mousio.etcd4j.transport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.responses.EtcdErrorCode;
+import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EtcdCoalescingClientTest {
+  private EtcdStandInServer server;
+  private EtcdCoalescingClient coalescingClient;
+  private EtcdClient etcd;
+  private long index;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new EtcdStandInServer().start();
+    coalescingClient = new EtcdCoalescingClient(new EtcdNettyClient(new EtcdNettyConfig(), server.endpoint()));
+    etcd = new EtcdClient(coalescingClient);
+    etcd.setRetryHandler(new RetryNTimes(20, 2));
+
+    index = etcd.put("/config/x", "bar").send().get().node.modifiedIndex;
+    server.resetRequestCount();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    etcd.close();
+    server.close();
+  }
+
+  @Test
+  public void testConcurrentGetsShareOneRequest() throws Exception {
+    server.latency(300, TimeUnit.MILLISECONDS);
+
+    final int callers = 20;
+    final CountDownLatch start = new CountDownLatch(1);
+    final ExecutorService threads = Executors.newFixedThreadPool(callers);
+    final List<Future<EtcdKeysResponse>> responses = new ArrayList<>();
+
+    try {
+      for (int i = 0; i < callers; i++) {
+        responses.add(threads.submit(() -> {
+          start.await();
+          return etcd.get("/config/x").send().get();
+        }));
+      }
+
+      start.countDown();
+
+      EtcdKeysResponse first = responses.get(0).get(10, TimeUnit.SECONDS);
+      for (Future<EtcdKeysResponse> response : responses) {
+        assertEquals("bar", response.get(10, TimeUnit.SECONDS).node.value);
+      }
+
+      assertTrue("Expected less requests than callers, got " + server.requestCount(), server.requestCount() < callers);
+      assertEquals(callers, coalescingClient.getRequestCount());
+      assertEquals(callers - server.requestCount(), coalescingClient.getCoalescedCount());
+      assertTrue(coalescingClient.getCoalesceRatio() > 0);
+      assertEquals("bar", first.node.value);
+    } finally {
+      threads.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testSequentialGetsAreNotCoalesced() throws Exception {
+    EtcdKeysResponse first = etcd.get("/config/x").send().get();
+    EtcdKeysResponse second = etcd.get("/config/x").send().get();
+
+    assertNotSame(first, second);
+    assertEquals(2, server.requestCount());
+    assertEquals(0, coalescingClient.getCoalescedCount());
+  }
+
+  @Test
+  public void testFailureIsShared() throws Exception {
+    server.latency(200, TimeUnit.MILLISECONDS);
+
+    EtcdResponsePromise<EtcdKeysResponse> leader = etcd.get("/config/missing").send();
+    EtcdResponsePromise<EtcdKeysResponse> follower = etcd.get("/config/missing").send();
+
+    for (EtcdResponsePromise<EtcdKeysResponse> promise : new EtcdResponsePromise[] { leader, follower }) {
+      try {
+        promise.get();
+        fail();
+      } catch (EtcdException e) {
+        assertTrue(e.isErrorCode(EtcdErrorCode.KeyNotFound));
+      }
+    }
+
+    assertSame(leader.getException(), follower.getException());
+    assertEquals(1, server.requestCount());
+  }
+
+  @Test
+  public void testWatchesAreNotCoalesced() throws Exception {
+    EtcdResponsePromise<EtcdKeysResponse> first = etcd.get("/config/x").waitForChange(index + 1).send();
+    EtcdResponsePromise<EtcdKeysResponse> second = etcd.get("/config/x").waitForChange(index + 1).send();
+
+    etcd.put("/config/x", "changed").send().get();
+
+    assertEquals("changed", first.get().node.value);
+    assertEquals("changed", second.get().node.value);
+    assertEquals(0, coalescingClient.getRequestCount());
+  }
+}
@@ -0,0 +1,172 @@
+package mousio.etcd4j.transport;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import mousio.client.retry.RetryNTimes;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.promises.EtcdCompletablePromise;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.requests.EtcdKeyGetRequest;
+import mousio.etcd4j.requests.EtcdRequest;
+import mousio.etcd4j.responses.EtcdErrorCode;
+import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+import mousio.etcd4j.support.EtcdStandInServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EtcdNegativeCachingClientTest {
+  private EtcdStandInServer server;
+  private EtcdNegativeCachingClient cachingClient;
+  private EtcdClient etcd;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new EtcdStandInServer().start();
+    cachingClient = new EtcdNegativeCachingClient(
+      new EtcdNettyClient(new EtcdNettyConfig(), server.endpoint()), 1, TimeUnit.MINUTES);
+    etcd = new EtcdClient(cachingClient);
+    etcd.setRetryHandler(new RetryNTimes(20, 2));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    etcd.close();
+    server.close();
+  }
+
+  @Test
+  public void testRepeatedMissIsAnsweredLocally() throws Exception {
+    EtcdException first = miss("/flags/feature-x");
+    EtcdException second = miss("/flags/feature-x");
+
+    assertSame(first, second);
+    assertEquals(1, server.requestCount());
+    assertEquals(1, cachingClient.getMissCount());
+    assertEquals(1, cachingClient.getHitCount());
+  }
+
+  @Test
+  public void testWriteInvalidatesMiss() throws Exception {
+    miss("/flags/feature-x");
+    etcd.put("/flags/feature-x", "on").send().get();
+
+    assertEquals("on", etcd.get("/flags/feature-x").send().get().node.value);
+  }
+
+  @Test
+  public void testWriteBelowInvalidatesDirectoryMiss() throws Exception {
+    miss("/flags");
+    etcd.put("/flags/feature-x", "on").send().get();
+
+    assertEquals(1, etcd.getDir("/flags").send().get().node.nodes.size());
+  }
+
+  @Test
+  public void testWatchEventInvalidatesMiss() throws Exception {
+    long index = etcd.put("/other", "value").send().get().node.modifiedIndex;
+
+    miss("/flags/feature-x");
+    EtcdResponsePromise<EtcdKeysResponse> watch = etcd.get("/flags").recursive().waitForChange(index + 1).send();
+
+    // Written by another client, only the watch tells this client about it
+    try (EtcdClient other = new EtcdClient(server.endpoint())) {
+      other.put("/flags/feature-x", "on").send().get();
+    }
+
+    watch.get();
+    assertEquals("on", etcd.get("/flags/feature-x").send().get().node.value);
+  }
+
+  @Test
+  public void testMissReadBeforeWriteIsNotCached() throws Exception {
+    EtcdNettyClient netty = new EtcdNettyClient(new EtcdNettyConfig(), server.endpoint());
+    CountDownLatch received = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    cachingClient = new EtcdNegativeCachingClient(new EtcdClientImpl() {
+      @Override
+      public <R> EtcdResponsePromise<R> send(EtcdRequest<R> request) throws IOException {
+        EtcdResponsePromise<R> promise = netty.send(request);
+        if (!(request instanceof EtcdKeyGetRequest) || release.getCount() == 0) {
+          return promise;
+        }
+
+        // Hold the response of the first GET until the write is done
+        EtcdCompletablePromise<R> held = new EtcdCompletablePromise<>();
+        promise.addListener(response -> {
+          received.countDown();
+          new Thread(() -> {
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            if (response.getException() == null) {
+              held.complete(response.getNow());
+            } else {
+              held.fail(response.getException());
+            }
+          }).start();
+        });
+        return held;
+      }
+
+      @Override
+      public void close() {
+        netty.close();
+      }
+    }, 1, TimeUnit.MINUTES);
+
+    try (EtcdClient client = new EtcdClient(cachingClient)) {
+      client.setRetryHandler(new RetryNTimes(20, 2));
+      EtcdResponsePromise<EtcdKeysResponse> read = client.get("/flags/feature-x").send();
+      assertTrue(received.await(5, TimeUnit.SECONDS));
+
+      client.put("/flags/feature-x", "on").send().get();
+      release.countDown();
+      assertNotFound(read);
+
+      assertEquals("on", client.get("/flags/feature-x").send().get().node.value);
+      assertEquals(0, cachingClient.getMissCount());
+    }
+  }
+
+  @Test
+  public void testMissExpires() throws Exception {
+    cachingClient = new EtcdNegativeCachingClient(
+      new EtcdNettyClient(new EtcdNettyConfig(), server.endpoint()), 50, TimeUnit.MILLISECONDS);
+
+    try (EtcdClient shortLived = new EtcdClient(cachingClient)) {
+      shortLived.setRetryHandler(new RetryNTimes(20, 2));
+      assertNotFound(shortLived.get("/flags/feature-x").send());
+      Thread.sleep(100);
+      assertNotFound(shortLived.get("/flags/feature-x").send());
+    }
+
+    assertEquals(2, server.requestCount());
+    assertEquals(0, cachingClient.getHitCount());
+  }
+
+  private EtcdException miss(String key) throws Exception {
+    return assertNotFound(etcd.get(key).send());
+  }
+
+  private static EtcdException assertNotFound(EtcdResponsePromise<EtcdKeysResponse> promise) throws Exception {
+    try {
+      promise.get();
+      fail("Expected KeyNotFound");
+      return null;
+    } catch (EtcdException e) {
+      assertTrue(e.isErrorCode(EtcdErrorCode.KeyNotFound));
+      return e;
+    }
+  }
+}